@@ -0,0 +1,108 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.context.ContextElements;
+import org.grouplens.grapht.context.ContextMatch;
+import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.context.Multiplicity;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.solver.InjectionContext;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for matching context patterns against deep injection contexts.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class ContextMatchBenchmark {
+    private static final Object[] INSTANCES = {
+            "hello", 42, 42L, 4.2, new Object()
+    };
+
+    @Param({"10", "50", "100"})
+    public int depth;
+
+    private ContextPattern pattern;
+    private InjectionContext leading;
+    private InjectionContext context;
+
+    @Setup
+    public void setup() {
+        // (String, .*, Integer, Long*, Double, .*), a typical shape for 'within' rules
+        pattern = ContextPattern.subsequence(String.class)
+                                .appendDotStar()
+                                .append(Integer.class)
+                                .append(ContextElements.matchType(Long.class), Multiplicity.ZERO_OR_MORE)
+                                .append(Double.class)
+                                .appendDotStar();
+        leading = buildContext(depth - 1);
+        context = extend(leading, depth - 1);
+    }
+
+    private static InjectionContext buildContext(int depth) {
+        InjectionContext ctx = InjectionContext.singleton(Satisfactions.instance(INSTANCES[0]));
+        for (int i = 1; i < depth; i++) {
+            ctx = extend(ctx, i);
+        }
+        return ctx;
+    }
+
+    private static InjectionContext extend(InjectionContext ctx, int i) {
+        Object obj = INSTANCES[i % INSTANCES.length];
+        return ctx.extend(Satisfactions.instance(obj),
+                          Desires.createInjectionPoint(null, obj.getClass(), false));
+    }
+
+    /**
+     * Build and match a context that has never been matched.
+     */
+    @Benchmark
+    public ContextMatch coldMatch() {
+        return pattern.matches(buildContext(depth));
+    }
+
+    /**
+     * Match a context whose prefix has already been matched, as the solver does when it descends
+     * one level in the graph.
+     */
+    @Benchmark
+    public ContextMatch incrementalMatch() {
+        pattern.matches(leading);
+        return pattern.matches(extend(leading, depth - 1));
+    }
+
+    /**
+     * Re-match a context that has already been matched.
+     */
+    @Benchmark
+    public ContextMatch repeatedMatch() {
+        return pattern.matches(context);
+    }
+}
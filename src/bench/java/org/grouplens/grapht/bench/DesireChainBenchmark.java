@@ -0,0 +1,58 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DesireChain;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link DesireChain#singleton(Desire)} when many threads create
+ * chains at once.  This runs with one thread per core; use JMH's {@code -t} option to see how
+ * throughput scales with the number of threads.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(Threads.MAX)
+@Fork(1)
+public class DesireChainBenchmark {
+    private Desire desire;
+
+    @Setup
+    public void setup() {
+        desire = Desires.create(null, String.class, false);
+    }
+
+    /**
+     * Create a chain for a single desire.
+     */
+    @Benchmark
+    public DesireChain singleton() {
+        return DesireChain.singleton(desire);
+    }
+}
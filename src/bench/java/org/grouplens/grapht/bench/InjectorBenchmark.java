@@ -0,0 +1,94 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionContainer;
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.Injector;
+import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.Instantiator;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.synthetic.SyntheticConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for getting instances from a warm injector and building instantiators.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InjectorBenchmark {
+    @Param({"MEMOIZE", "NEW_INSTANCE"})
+    public CachePolicy policy;
+
+    @Param({"100", "1000"})
+    public int size;
+
+    private Injector injector;
+    private Class<?> root;
+    private DAGNode<Component, Dependency> graph;
+
+    @Setup
+    public void setup() throws IOException, InjectionException {
+        SyntheticConfiguration synth = SyntheticConfiguration.generate(size, 42);
+        injector = InjectorBuilder.create(synth.getClassLoader(), synth)
+                                  .setDefaultCachePolicy(policy)
+                                  .build();
+        for (Class<?> r: synth.getRoots()) {
+            injector.getInstance(r);
+        }
+        root = synth.getRoots().get(0);
+        graph = ((DefaultInjector) injector).getSolver().getGraph();
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        injector.close();
+    }
+
+    /**
+     * Get an already-resolved root component.
+     */
+    @Benchmark
+    public Object warmGetInstance() throws InjectionException {
+        return injector.getInstance(root);
+    }
+
+    /**
+     * Build an instantiator for the whole resolved graph in a fresh container.
+     */
+    @Benchmark
+    public Instantiator makeInstantiator() {
+        InjectionContainer container = InjectionContainer.create(policy);
+        return container.makeInstantiator(graph);
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.InjectionException;
+import org.grouplens.grapht.Injector;
+import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.reflect.internal.types.InterfaceA;
+import org.grouplens.grapht.reflect.internal.types.TypeB;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the throughput of {@link Injector#getInstance(Class)} for an already-resolved
+ * component when many threads share the injector.  This runs with one thread per core; use
+ * JMH's {@code -t} option to see how throughput scales with the number of threads.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Threads(Threads.MAX)
+@Fork(1)
+public class InjectorThroughputBenchmark {
+    private Injector injector;
+
+    @Setup
+    public void setup() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(InterfaceA.class).shared().to(TypeB.class);
+        injector = b.build();
+        // resolve once so we only measure the warm path
+        injector.getInstance(InterfaceA.class);
+    }
+
+    @TearDown
+    public void tearDown() throws Exception {
+        injector.close();
+    }
+
+    /**
+     * Get an already-resolved shared component.
+     */
+    @Benchmark
+    public InterfaceA warmGetInstance() throws InjectionException {
+        return injector.getInstance(InterfaceA.class);
+    }
+}
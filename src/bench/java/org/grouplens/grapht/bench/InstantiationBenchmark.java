@@ -0,0 +1,119 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.ConstructionException;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionContainer;
+import org.grouplens.grapht.Instantiator;
+import org.grouplens.grapht.InstantiatorBackend;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.Satisfactions;
+import org.grouplens.grapht.solver.DesireChain;
+import org.openjdk.jmh.annotations.*;
+
+import javax.annotation.Nullable;
+import javax.inject.Inject;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for instantiating a tree of {@link CachePolicy#NEW_INSTANCE} components, where the
+ * cost is dominated by looking up dependency instantiators rather than by solving or caching.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 5)
+@Fork(1)
+public class InstantiationBenchmark {
+    private static final int TREE_SIZE = 50;
+
+    @Param({"REFLECTION", "METHOD_HANDLE"})
+    public InstantiatorBackend backend;
+
+    private DAGNode<Component, Dependency> tree;
+    private Instantiator instantiator;
+
+    @Setup
+    public void setup() {
+        Satisfaction sat = Satisfactions.type(Branch.class);
+        DAGNode<Component, Dependency> leaf =
+                DAGNode.singleton(Component.create(Satisfactions.nullOfType(Branch.class), CachePolicy.NEW_INSTANCE));
+        tree = buildTree(sat, leaf, TREE_SIZE);
+        instantiator = InjectionContainer.create(CachePolicy.NEW_INSTANCE, null, backend)
+                                         .makeInstantiator(tree);
+    }
+
+    /**
+     * Build a balanced tree of branches, whose missing children are null.
+     */
+    private static DAGNode<Component, Dependency> buildTree(Satisfaction sat, DAGNode<Component, Dependency> leaf,
+                                                            int size) {
+        if (size == 0) {
+            return leaf;
+        }
+        List<Desire> desires = sat.getDependencies();
+        int left = (size - 1) / 2;
+        DAGNodeBuilder<Component, Dependency> bld = DAGNode.newBuilder(Component.create(sat, CachePolicy.NEW_INSTANCE));
+        bld.addEdge(buildTree(sat, leaf, left),
+                    Dependency.create(DesireChain.singleton(desires.get(0)), Dependency.Flag.emptySet()));
+        bld.addEdge(buildTree(sat, leaf, size - 1 - left),
+                    Dependency.create(DesireChain.singleton(desires.get(1)), Dependency.Flag.emptySet()));
+        return bld.build();
+    }
+
+    /**
+     * Instantiate the tree with an instantiator that has been used before.
+     */
+    @Benchmark
+    public Object instantiateTree() throws ConstructionException {
+        return instantiator.instantiate();
+    }
+
+    /**
+     * Instantiate the tree in a fresh container, including wiring up its instantiators.
+     */
+    @Benchmark
+    public Object instantiateTreeInNewContainer() throws ConstructionException {
+        return InjectionContainer.create(CachePolicy.NEW_INSTANCE, null, backend)
+                                 .makeInstantiator(tree)
+                                 .instantiate();
+    }
+
+    public static class Branch {
+        private final Branch left;
+        private final Branch right;
+
+        @Inject
+        public Branch(@Nullable Branch left, @Nullable Branch right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -0,0 +1,110 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.bench;
+
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.ResolutionException;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.MergePool;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.synthetic.SyntheticConfiguration;
+import org.openjdk.jmh.annotations.*;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmarks for resolving, merging and rewriting synthetic configurations.
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3)
+@Measurement(iterations = 5)
+@Fork(1)
+public class SolverBenchmark {
+    @Param({"100", "1000", "10000"})
+    public int size;
+
+    private SyntheticConfiguration config;
+    private DAGNode<Component, Dependency> resolved;
+
+    @Setup
+    public void setup() throws IOException, ResolutionException {
+        config = SyntheticConfiguration.generate(size, 42);
+        resolved = solve().getGraph();
+    }
+
+    private DependencySolver solve() throws ResolutionException {
+        DependencySolver solver = config.newSolverBuilder().build();
+        for (Class<?> root: config.getRoots()) {
+            solver.resolve(Desires.create(null, root, false));
+        }
+        return solver;
+    }
+
+    /**
+     * Resolve all roots of the graph with a fresh solver.
+     */
+    @Benchmark
+    public DAGNode<Component, Dependency> coldSolve() throws ResolutionException {
+        return solve().getGraph();
+    }
+
+    /**
+     * Resolve all roots of the graph with a fresh solver in a single batch.
+     */
+    @Benchmark
+    public DAGNode<Component, Dependency> coldSolveBatch() throws ResolutionException {
+        DependencySolver solver = config.newSolverBuilder().build();
+        List<Desire> desires = new ArrayList<Desire>();
+        for (Class<?> root: config.getRoots()) {
+            desires.add(Desires.create(null, root, false));
+        }
+        solver.resolveAll(desires);
+        return solver.getGraph();
+    }
+
+    /**
+     * Merge the resolved graph into an empty pool.
+     */
+    @Benchmark
+    public DAGNode<Component, Dependency> merge() {
+        MergePool<Component, Dependency> pool = MergePool.create();
+        return pool.merge(resolved);
+    }
+
+    /**
+     * Rewrite the resolved graph with the configuration that produced it.  Nothing needs to be
+     * rewritten, so this measures the cost of checking the graph for rewrites.
+     */
+    @Benchmark
+    public DAGNode<Component, Dependency> rewrite() throws ResolutionException {
+        DependencySolver solver = config.newSolverBuilder().build();
+        return solver.rewrite(resolved);
+    }
+}
@@ -20,16 +20,25 @@
 package org.grouplens.grapht;
 
 import com.google.common.collect.ArrayListMultimap;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Multimap;
+import com.google.common.hash.HashCode;
+import com.google.common.hash.Hashing;
 import org.grouplens.grapht.context.ContextMatcher;
 import org.grouplens.grapht.solver.BindRule;
 import org.grouplens.grapht.solver.BindingFunction;
 import org.grouplens.grapht.solver.RuleBasedBindingFunction;
 
+import javax.annotation.Nullable;
+import java.io.ByteArrayOutputStream;
 import java.io.Externalizable;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
 
 /**
@@ -180,6 +189,43 @@ public class BindingFunctionBuilder implements Cloneable {
         return new RuleBasedBindingFunction(getMap(set));
     }
     
+    /**
+     * Compute a fingerprint of the bind rules in this builder.  Builders with the same rules
+     * have the same fingerprint, regardless of the order in which the rules were added.  The
+     * fingerprint is computed over the serialized rules, so it also covers the checksums of the
+     * classes they reference (see {@link org.grouplens.grapht.util.ClassProxy}); changing the
+     * injectable members of a bound class changes the fingerprint.
+     *
+     * @return The fingerprint, as a hexadecimal string, or {@code null} if some rule (e.g. one
+     *         binding to a non-serializable instance) cannot be serialized.
+     * @since 0.11
+     */
+    @Nullable
+    public String getFingerprint() {
+        List<HashCode> setHashes = Lists.newArrayList();
+        for (RuleSet set: RuleSet.values()) {
+            List<HashCode> ruleHashes = Lists.newArrayList();
+            for (Map.Entry<ContextMatcher, BindRule> entry: getMap(set).entries()) {
+                try {
+                    ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                    ObjectOutputStream out = new ObjectOutputStream(bytes);
+                    out.writeObject(entry.getKey());
+                    out.writeObject(entry.getValue());
+                    out.close();
+                    ruleHashes.add(Hashing.sha1().hashBytes(bytes.toByteArray()));
+                } catch (IOException e) {
+                    return null;
+                }
+            }
+            // rule sets are unordered, but the same rule in different sets is different
+            setHashes.add(Hashing.sha1().hashInt(set.ordinal()));
+            if (!ruleHashes.isEmpty()) {
+                setHashes.add(Hashing.combineUnordered(ruleHashes));
+            }
+        }
+        return Hashing.combineOrdered(setHashes).toString();
+    }
+
     void addBindRule(RuleSet set, ContextMatcher context, BindRule rule) {
         Multimap<ContextMatcher, BindRule> map = getMap(set);
         map.put(context, rule);
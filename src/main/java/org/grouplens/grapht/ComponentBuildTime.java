@@ -0,0 +1,81 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken to eagerly build a memoized component.
+ *
+ * @since 0.11
+ * @see InjectorBuilder#setEagerInitialization(boolean)
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class ComponentBuildTime {
+    private final Component component;
+    private final int level;
+    private final long nanos;
+
+    ComponentBuildTime(Component component, int level, long nanos) {
+        Preconditions.notNull("component", component);
+        this.component = component;
+        this.level = level;
+        this.nanos = nanos;
+    }
+
+    /**
+     * Get the component that was built.
+     * @return The component.
+     */
+    public Component getComponent() {
+        return component;
+    }
+
+    /**
+     * Get the topological level of the component in its graph.  Components with no dependencies
+     * are at level 0; every other component is one level above its deepest dependency.
+     * Components at the same level are built concurrently.
+     *
+     * @return The component's level.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the time taken to build the component.  This does not include the time to build its
+     * memoized dependencies, as they are built at earlier levels.
+     *
+     * @param unit The unit in which to express the time.
+     * @return The build time.
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (level %d): %.3f ms", component.getSatisfaction(), level, nanos / 1.0e6);
+    }
+}
@@ -0,0 +1,92 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.concurrent.Immutable;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The time taken to tear down a component when its lifecycle manager was closed.
+ *
+ * @since 0.11
+ * @see LifecycleManager#getTeardownTimes()
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class ComponentTeardownTime {
+    private final Class<?> type;
+    private final int level;
+    private final long nanos;
+    private final boolean timedOut;
+
+    ComponentTeardownTime(Class<?> type, int level, long nanos, boolean timedOut) {
+        Preconditions.notNull("type", type);
+        this.type = type;
+        this.level = level;
+        this.nanos = nanos;
+        this.timedOut = timedOut;
+    }
+
+    /**
+     * Get the class of the component that was torn down.
+     * @return The component's class.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Get the topological level of the component in its graph, as in
+     * {@link ComponentBuildTime#getLevel()}.  Components are torn down from the highest level to
+     * the lowest, and components at the same level are torn down concurrently.
+     *
+     * @return The component's level, or -1 if it was registered without one.
+     */
+    public int getLevel() {
+        return level;
+    }
+
+    /**
+     * Get the time taken to tear down the component.  If the teardown timed out, this is the time
+     * the manager waited for it.
+     *
+     * @param unit The unit in which to express the time.
+     * @return The teardown time.
+     */
+    public long getDuration(TimeUnit unit) {
+        return unit.convert(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * Query whether the teardown timed out.
+     * @return {@code true} if the manager stopped waiting for the component's teardown.
+     */
+    public boolean isTimedOut() {
+        return timedOut;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%s (level %d): %.3f ms%s", type.getName(), level, nanos / 1.0e6,
+                             timedOut ? " (timed out)" : "");
+    }
+}
@@ -19,23 +19,29 @@
  */
 package org.grouplens.grapht;
 
-import com.google.common.base.Function;
 import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableMap;
 import com.google.common.collect.ImmutableSet;
 import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.MapMaker;
 import com.google.common.collect.Maps;
 import com.google.common.collect.SetMultimap;
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.annotation.Nullable;
-import javax.annotation.PreDestroy;
-import java.lang.reflect.Method;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 
 /**
  * Container for dependency-injected components.  A container is the scope of memoization, so
@@ -49,8 +55,14 @@ public class InjectionContainer {
     private static final Logger logger = LoggerFactory.getLogger(InjectionContainer.class);
 
     private final CachePolicy defaultCachePolicy;
-    private final Map<DAGNode<Component, Dependency>, Instantiator> providerCache;
+    private final ConcurrentMap<DAGNode<Component, Dependency>, Instantiator> providerCache;
+    private final ConcurrentMap<DAGNode<Component, Dependency>, Integer> levels;
+    /**
+     * Memoized nodes claimed by {@link #initialize(DAGNode, SetMultimap, ExecutorService)}.
+     */
+    private final Set<DAGNode<Component, Dependency>> initialized;
     private final LifecycleManager manager;
+    private final InstantiatorBackend backend;
 
     /**
      * Create a new instantiator with a default policy of {@code MEMOIZE}.
@@ -66,7 +78,7 @@ public class InjectionContainer {
      * @return The instantiator.
      */
     public static InjectionContainer create(CachePolicy dft) {
-        return new InjectionContainer(dft, null);
+        return create(dft, null);
     }
 
     /**
@@ -76,13 +88,32 @@ public class InjectionContainer {
      * @return The instantiator.
      */
     public static InjectionContainer create(CachePolicy dft, LifecycleManager mgr) {
-        return new InjectionContainer(dft, mgr);
+        return create(dft, mgr, InstantiatorBackend.REFLECTION);
+    }
+
+    /**
+     * Create a new instantiator with a specific instantiator backend.
+     * @param dft The default cache policy.
+     * @param mgr The lifecycle manager.
+     * @param backend The backend for instantiating satisfactions.
+     * @return The instantiator.
+     * @since 0.11
+     */
+    public static InjectionContainer create(CachePolicy dft, LifecycleManager mgr,
+                                            InstantiatorBackend backend) {
+        Preconditions.notNull("backend", backend);
+        return new InjectionContainer(dft, mgr, backend);
     }
 
-    private InjectionContainer(CachePolicy dft, LifecycleManager mgr) {
+    private InjectionContainer(CachePolicy dft, LifecycleManager mgr, InstantiatorBackend backend) {
         defaultCachePolicy = dft;
-        providerCache = new WeakHashMap<DAGNode<Component, Dependency>, Instantiator>();
+        // weak keys are compared by identity, as graph nodes are
+        providerCache = new MapMaker().weakKeys().makeMap();
+        levels = new MapMaker().weakKeys().makeMap();
+        initialized = Collections.newSetFromMap(
+                new MapMaker().weakKeys().<DAGNode<Component, Dependency>, Boolean>makeMap());
         manager = mgr;
+        this.backend = backend;
     }
 
     /**
@@ -109,21 +140,17 @@ public class InjectionContainer {
      */
     public Instantiator makeInstantiator(DAGNode<Component, Dependency> node,
                                          SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
-        Instantiator cached;
-        synchronized (providerCache) {
-            cached = providerCache.get(node);
-        }
+        Instantiator cached = providerCache.get(node);
         if (cached == null) {
             logger.debug("Node has not been memoized, instantiating: {}", node.getLabel());
 
-            Map<Desire, Instantiator> depMap = makeDependencyMap(node, backEdges);
+            Map<Desire, Instantiator> depMap = new DependencySlots(node, backEdges);
 
-            Instantiator raw = node.getLabel().getSatisfaction().makeInstantiator(depMap, manager);
+            // register components at their level, so they are torn down in reverse dependency order
+            LifecycleManager mgr = manager == null ? null : manager.atLevel(getLevel(node));
+            Instantiator raw = backend.makeInstantiator(node.getLabel().getSatisfaction(), depMap, mgr);
 
-            CachePolicy policy = node.getLabel().getCachePolicy();
-            if (policy.equals(CachePolicy.NO_PREFERENCE)) {
-                policy = defaultCachePolicy;
-            }
+            CachePolicy policy = getEffectivePolicy(node.getLabel());
             if (policy.equals(CachePolicy.MEMOIZE)) {
                 // enforce memoization on providers for MEMOIZE policy
                 cached = Instantiators.memoize(raw);
@@ -133,32 +160,129 @@ public class InjectionContainer {
                 assert policy.equals(CachePolicy.NEW_INSTANCE);
                 cached = raw;
             }
-            synchronized (providerCache) {
-                if (!providerCache.containsKey(node)) {
-                    providerCache.put(node, cached);
-                } else {
-                    logger.debug("two threads built instantiator for {}, discarding 2nd build", node);
-                    cached = providerCache.get(node);
-                }
+            Instantiator existing = providerCache.putIfAbsent(node, cached);
+            if (existing != null) {
+                logger.debug("two threads built instantiator for {}, discarding 2nd build", node);
+                cached = existing;
             }
         }
         return cached;
     }
 
-    private Map<Desire, Instantiator> makeDependencyMap(DAGNode<Component, Dependency> node, SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
-        Set<DAGEdge<Component,Dependency>> edges = node.getOutgoingEdges();
-        if (backEdges.containsKey(node)) {
-            ImmutableSet.Builder<DAGEdge<Component,Dependency>> bld = ImmutableSet.builder();
-            edges = bld.addAll(edges)
-                       .addAll(backEdges.get(node))
-                       .build();
+    /**
+     * Eagerly instantiate the memoized components of a graph.  Components are grouped into
+     * topological levels, where each component is one level above its deepest dependency; the
+     * components of each level are instantiated concurrently once the level below it is complete.
+     * Since memoized instantiators are shared, later requests for these components return the
+     * instances built here.  Each component is only initialized once: components claimed by an
+     * earlier or concurrent call are skipped, and requests for a component still being built
+     * wait for it.
+     *
+     * @param node The graph to initialize.
+     * @param backEdges A multimap of back edges for cyclic dependencies.
+     * @param executor The executor for instantiating components, or {@code null} to instantiate
+     *                 them in the current thread.
+     * @return The time taken to build each memoized component, in the order they were built.
+     * @throws ConstructionException if a component cannot be instantiated.
+     * @since 0.11
+     */
+    public List<ComponentBuildTime> initialize(DAGNode<Component, Dependency> node,
+                                               SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges,
+                                               @Nullable ExecutorService executor) throws ConstructionException {
+        // group memoized nodes by level; sorted nodes come after all their dependencies
+        Map<DAGNode<Component, Dependency>, Integer> levels = Maps.newHashMap();
+        List<List<DAGNode<Component, Dependency>>> memoizedByLevel = Lists.newArrayList();
+        for (DAGNode<Component, Dependency> n: node.getSortedNodes()) {
+            int level = 0;
+            for (DAGNode<Component, Dependency> dep: n.getAdjacentNodes()) {
+                level = Math.max(level, levels.get(dep) + 1);
+            }
+            levels.put(n, level);
+            if (getEffectivePolicy(n.getLabel()).equals(CachePolicy.MEMOIZE) && initialized.add(n)) {
+                while (memoizedByLevel.size() <= level) {
+                    memoizedByLevel.add(new ArrayList<DAGNode<Component, Dependency>>());
+                }
+                memoizedByLevel.get(level).add(n);
+            }
+        }
+
+        List<ComponentBuildTime> times = Lists.newArrayList();
+        for (int level = 0; level < memoizedByLevel.size(); level++) {
+            List<BuildTask> tasks = Lists.newArrayList();
+            for (DAGNode<Component, Dependency> n: memoizedByLevel.get(level)) {
+                tasks.add(new BuildTask(n.getLabel(), level, makeInstantiator(n, backEdges)));
+            }
+            if (executor == null || tasks.size() <= 1) {
+                for (BuildTask task: tasks) {
+                    times.add(task.call());
+                }
+            } else {
+                List<Future<ComponentBuildTime>> results;
+                try {
+                    results = executor.invokeAll(tasks);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new ConstructionException("interrupted while initializing components", e);
+                }
+                for (Future<ComponentBuildTime> result: results) {
+                    try {
+                        times.add(result.get());
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new ConstructionException("interrupted while initializing components", e);
+                    } catch (ExecutionException e) {
+                        Throwables.propagateIfPossible(e.getCause(), ConstructionException.class);
+                        throw new ConstructionException("error initializing components", e.getCause());
+                    }
+                }
+            }
+        }
+        return times;
+    }
+
+    /**
+     * Get the topological level of a node: 0 if it has no dependencies, and otherwise one more
+     * than the level of its deepest dependency.  Back edges are ignored.  Levels are computed
+     * with an explicit stack and remembered, so each node's level is only computed once.
+     */
+    private int getLevel(DAGNode<Component, Dependency> node) {
+        Integer level = levels.get(node);
+        if (level != null) {
+            return level;
+        }
+        Deque<DAGNode<Component, Dependency>> stack = new ArrayDeque<DAGNode<Component, Dependency>>();
+        stack.push(node);
+        while (!stack.isEmpty()) {
+            DAGNode<Component, Dependency> n = stack.peek();
+            if (levels.containsKey(n)) {
+                stack.pop();
+                continue;
+            }
+            int lvl = 0;
+            boolean ready = true;
+            for (DAGNode<Component, Dependency> dep: n.getAdjacentNodes()) {
+                Integer depLevel = levels.get(dep);
+                if (depLevel == null) {
+                    stack.push(dep);
+                    ready = false;
+                } else {
+                    lvl = Math.max(lvl, depLevel + 1);
+                }
+            }
+            if (ready) {
+                levels.put(n, lvl);
+                stack.pop();
+            }
         }
+        return levels.get(node);
+    }
 
-        ImmutableSet.Builder<Desire> desires = ImmutableSet.builder();
-        for (DAGEdge<Component,Dependency> edge: edges) {
-            desires.add(edge.getLabel().getInitialDesire());
+    private CachePolicy getEffectivePolicy(Component component) {
+        CachePolicy policy = component.getCachePolicy();
+        if (policy.equals(CachePolicy.NO_PREFERENCE)) {
+            policy = defaultCachePolicy;
         }
-        return Maps.asMap(desires.build(), new DepLookup(edges, backEdges));
+        return policy;
     }
 
     /**
@@ -171,32 +295,109 @@ public class InjectionContainer {
     }
 
     /**
-     * Function to look up a desire in a set of dependency edges.
+     * Task to instantiate a memoized component and time it.
      */
-    private class DepLookup implements Function<Desire,Instantiator> {
-        private final Set<DAGEdge<Component, Dependency>> edges;
+    private static class BuildTask implements Callable<ComponentBuildTime> {
+        private final Component component;
+        private final int level;
+        private final Instantiator instantiator;
+
+        BuildTask(Component component, int level, Instantiator instantiator) {
+            this.component = component;
+            this.level = level;
+            this.instantiator = instantiator;
+        }
+
+        @Override
+        public ComponentBuildTime call() throws ConstructionException {
+            long start = System.nanoTime();
+            instantiator.instantiate();
+            ComponentBuildTime time = new ComponentBuildTime(component, level, System.nanoTime() - start);
+            logger.debug("built {}", time);
+            return time;
+        }
+    }
+
+    /**
+     * The dependency instantiators of a node, one slot per outgoing edge (and back edge).  Each
+     * slot's instantiator is looked up the first time it is requested and then kept, so repeated
+     * lookups do not search the edges or the provider cache.  Slots are resolved lazily because
+     * back edges make the instantiators of a graph cyclic.
+     */
+    private class DependencySlots extends AbstractMap<Desire, Instantiator> {
+        private final ImmutableMap<Desire, Integer> slots;
+        private final DAGNode<Component, Dependency>[] tails;
+        private final AtomicReferenceArray<Instantiator> instantiators;
         private final SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges;
 
         /**
-         * Construct a depenency lookup funciton.
-         * @param edges The set of edges to consult.
+         * Construct the dependency slots of a node.
+         * @param node The node.
          * @param backEdges The back edge map (to pass to {@link #makeInstantiator(DAGNode,SetMultimap)}).
          */
-        public DepLookup(Set<DAGEdge<Component,Dependency>> edges,
-                         SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
-            this.edges = edges;
+        @SuppressWarnings("unchecked")
+        DependencySlots(DAGNode<Component, Dependency> node,
+                        SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges) {
+            Collection<DAGEdge<Component, Dependency>> edges = node.getOutgoingEdges();
+            if (backEdges.containsKey(node)) {
+                edges = ImmutableSet.<DAGEdge<Component, Dependency>>builder()
+                                    .addAll(edges)
+                                    .addAll(backEdges.get(node))
+                                    .build();
+            }
+            Map<Desire, Integer> slotMap = Maps.newLinkedHashMap();
+            tails = new DAGNode[edges.size()];
+            for (DAGEdge<Component, Dependency> edge: edges) {
+                Desire desire = edge.getLabel().getInitialDesire();
+                if (!slotMap.containsKey(desire)) {
+                    tails[slotMap.size()] = edge.getTail();
+                    slotMap.put(desire, slotMap.size());
+                }
+            }
+            slots = ImmutableMap.copyOf(slotMap);
+            instantiators = new AtomicReferenceArray<Instantiator>(tails.length);
             this.backEdges = backEdges;
         }
 
+        private Instantiator getSlot(int i) {
+            Instantiator inst = instantiators.get(i);
+            if (inst == null) {
+                // the container caches instantiators, so racing threads find the same one
+                inst = makeInstantiator(tails[i], backEdges);
+                instantiators.set(i, inst);
+            }
+            return inst;
+        }
+
+        @Override
+        public int size() {
+            return slots.size();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return slots.containsKey(key);
+        }
+
+        @Override
+        public Set<Desire> keySet() {
+            return slots.keySet();
+        }
+
         @Nullable
         @Override
-        public Instantiator apply(@Nullable Desire input) {
-            for (DAGEdge<Component,Dependency> edge: edges) {
-                if (edge.getLabel().getInitialDesire().equals(input)) {
-                    return makeInstantiator(edge.getTail(), backEdges);
-                }
+        public Instantiator get(Object key) {
+            Integer slot = slots.get(key);
+            return slot == null ? null : getSlot(slot);
+        }
+
+        @Override
+        public Set<Entry<Desire, Instantiator>> entrySet() {
+            ImmutableMap.Builder<Desire, Instantiator> entries = ImmutableMap.builder();
+            for (Entry<Desire, Integer> slot: slots.entrySet()) {
+                entries.put(slot.getKey(), getSlot(slot.getValue()));
             }
-            return null;
+            return entries.build().entrySet();
         }
     }
 }
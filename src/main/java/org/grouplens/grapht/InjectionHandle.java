@@ -0,0 +1,81 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.util.Preconditions;
+
+import javax.annotation.Nonnull;
+import javax.annotation.concurrent.Immutable;
+
+/**
+ * A pre-resolved handle to a component.  A handle is bound to the instantiator of a component
+ * that an {@link Injector} has already resolved, so repeated calls to {@link #get()} do not need
+ * to build desires, search the dependency graph, or acquire the injector's lock.  This makes
+ * handles suitable for requesting components (particularly unshared ones) in hot loops.
+ *
+ * @param <T> The component type.
+ * @see Injector#getHandle(Class)
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class InjectionHandle<T> {
+    private final Class<T> type;
+    private final Instantiator instantiator;
+
+    /**
+     * Create a new injection handle.
+     *
+     * @param type The component type.
+     * @param instantiator The instantiator for the resolved component.
+     */
+    public InjectionHandle(@Nonnull Class<T> type, @Nonnull Instantiator instantiator) {
+        Preconditions.notNull("type", type);
+        Preconditions.notNull("instantiator", instantiator);
+        this.type = type;
+        this.instantiator = instantiator;
+    }
+
+    /**
+     * Get the type of component this handle produces.
+     * @return The component type.
+     */
+    public Class<T> getType() {
+        return type;
+    }
+
+    /**
+     * Get an instance of the component.  This is equivalent to calling
+     * {@link Injector#getInstance(java.lang.annotation.Annotation, Class)} with the handle's qualifier and type, and
+     * respects the component's cache policy: a shared component is returned each time, while an
+     * unshared component is created anew for each call.
+     *
+     * @return The component instance.
+     * @throws ConstructionException if the component cannot be instantiated.
+     */
+    public T get() throws ConstructionException {
+        return type.cast(instantiator.instantiate());
+    }
+
+    @Override
+    public String toString() {
+        return "InjectionHandle(" + type.getName() + ")";
+    }
+}
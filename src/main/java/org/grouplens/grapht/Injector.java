@@ -88,6 +88,31 @@ public interface Injector extends AutoCloseable {
     @Nullable
     <T> T tryGetInstance(Annotation qualifier, Class<T> type) throws InjectionException;
 
+    /**
+     * Get a pre-resolved handle to a component.  The component is resolved immediately, and the
+     * resulting handle can produce instances without further graph lookups or locking.
+     *
+     * @param <T> The component type.
+     * @param type The class type.
+     * @return A handle producing instances of type T.
+     * @throws ResolutionException if the component cannot be resolved.
+     */
+    @Nonnull
+    <T> InjectionHandle<T> getHandle(Class<T> type) throws InjectionException;
+
+    /**
+     * Get a pre-resolved handle to a component with the given {@link Qualifier} annotation.
+     *
+     * @param <T> The component type.
+     * @param qualifier The qualifier of the component, or {@code null} for an unqualified component.
+     * @param type The class type.
+     * @return A handle producing instances of type T.
+     * @throws ResolutionException if the component cannot be resolved.
+     * @see #getHandle(Class)
+     */
+    @Nonnull
+    <T> InjectionHandle<T> getHandle(Annotation qualifier, Class<T> type) throws InjectionException;
+
     /**
      * Close the injector, shutting down any instantiated components that require shutdown.
      */
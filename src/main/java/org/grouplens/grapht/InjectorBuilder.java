@@ -19,16 +19,26 @@
  */
 package org.grouplens.grapht;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hashing;
 import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
 import org.grouplens.grapht.solver.BindingFunction;
 import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
 import org.grouplens.grapht.solver.DefaultInjector;
+import org.grouplens.grapht.solver.GraphCache;
 import org.grouplens.grapht.solver.ProviderBindingFunction;
 import org.grouplens.grapht.context.ContextPattern;
 import org.grouplens.grapht.util.ClassLoaders;
+import org.grouplens.grapht.util.Preconditions;
 import org.grouplens.grapht.util.Types;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.io.File;
 import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
 
 /**
  * <p>
@@ -44,10 +54,19 @@ import java.lang.annotation.Annotation;
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
 public class InjectorBuilder extends AbstractContext {
+    private static final Logger logger = LoggerFactory.getLogger(InjectorBuilder.class);
+
     private final ClassLoader classLoader;
     private final BindingFunctionBuilder builder;
     private CachePolicy cachePolicy;
     private boolean enableProviderInjection;
+    private InstantiatorBackend instantiatorBackend;
+    private boolean eagerInitialization;
+    private int initializationThreads;
+    @Nullable
+    private File graphCacheDirectory;
+    private int shutdownThreads;
+    private long shutdownTimeoutNanos;
 
     /**
      * Create a new injector builder.
@@ -58,6 +77,11 @@ public class InjectorBuilder extends AbstractContext {
         builder = bld;
         cachePolicy = CachePolicy.MEMOIZE;
         enableProviderInjection = false;
+        instantiatorBackend = InstantiatorBackend.REFLECTION;
+        eagerInitialization = false;
+        initializationThreads = Runtime.getRuntime().availableProcessors();
+        shutdownThreads = 1;
+        shutdownTimeoutNanos = 0;
     }
 
     /**
@@ -129,6 +153,112 @@ public class InjectorBuilder extends AbstractContext {
         return this;
     }
     
+    /**
+     * Set the backend used to instantiate components in the built Injectors.
+     * The default is {@link InstantiatorBackend#REFLECTION}.
+     *
+     * @param backend The instantiator backend
+     * @return This builder
+     * @since 0.11
+     */
+    public InjectorBuilder setInstantiatorBackend(InstantiatorBackend backend) {
+        Preconditions.notNull("backend", backend);
+        instantiatorBackend = backend;
+        return this;
+    }
+
+    /**
+     * Set whether the built Injectors eagerly instantiate memoized components.
+     * If enabled, resolving a component will also instantiate every memoized
+     * component in its dependency graph, building independent components
+     * concurrently.  The build times are available from
+     * {@link DefaultInjector#getBuildTimes()}.
+     *
+     * @param enable True if memoized components should be built eagerly
+     * @return This builder
+     * @since 0.11
+     */
+    public InjectorBuilder setEagerInitialization(boolean enable) {
+        eagerInitialization = enable;
+        return this;
+    }
+
+    /**
+     * Set the number of threads used for eager initialization.  The default is
+     * the number of available processors.
+     *
+     * @param threads The number of threads
+     * @return This builder
+     * @throws IllegalArgumentException if threads is less than 1
+     * @see #setEagerInitialization(boolean)
+     * @since 0.11
+     */
+    public InjectorBuilder setInitializationThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("must have at least one thread");
+        }
+        initializationThreads = threads;
+        return this;
+    }
+
+    /**
+     * Set the number of threads used to tear down components when a built Injector is closed.
+     * Components are torn down in reverse dependency order; components that do not depend on
+     * each other are torn down concurrently.  The default is 1.
+     *
+     * @param threads The number of threads
+     * @return This builder
+     * @throws IllegalArgumentException if threads is less than 1
+     * @see LifecycleManager
+     * @since 0.11
+     */
+    public InjectorBuilder setShutdownThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("must have at least one thread");
+        }
+        shutdownThreads = threads;
+        return this;
+    }
+
+    /**
+     * Set the maximum time a built Injector waits for each component to be torn down when it is
+     * closed.  A component whose teardown takes longer is interrupted and abandoned, and closing
+     * the Injector fails once the other components have been torn down.  The teardown times are
+     * available from {@link DefaultInjector#getTeardownTimes()}.
+     *
+     * @param timeout The timeout, or 0 to wait as long as it takes (the default).
+     * @param unit The unit of {@code timeout}.
+     * @return This builder
+     * @throws IllegalArgumentException if timeout is negative
+     * @since 0.11
+     */
+    public InjectorBuilder setShutdownTimeout(long timeout, TimeUnit unit) {
+        Preconditions.notNull("unit", unit);
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        shutdownTimeoutNanos = unit.toNanos(timeout);
+        return this;
+    }
+
+    /**
+     * Set the directory in which the built Injectors cache their dependency graphs.  Graphs are
+     * cached under a fingerprint of this builder's configuration, so an Injector built from an
+     * unchanged configuration (and unchanged bound classes) loads the graph solved by a previous
+     * one instead of solving it again; if anything changed, it falls back to solving the graph.
+     * Configurations binding to instances that are not serializable are not cached.  The graph
+     * is written when the Injector is closed, or by {@link DefaultInjector#flushGraphCache()}.
+     *
+     * @param dir The cache directory, or {@code null} to disable graph caching (the default).
+     * @return This builder
+     * @see GraphCache
+     * @since 0.11
+     */
+    public InjectorBuilder setGraphCacheDirectory(@Nullable File dir) {
+        graphCacheDirectory = dir;
+        return this;
+    }
+
     @Override
     public <T> Binding<T> bind(Class<T> type) {
         return builder.getRootContext().bind(type);
@@ -205,6 +335,29 @@ public class InjectorBuilder extends AbstractContext {
             };
         }
         
-        return new DefaultInjector(cachePolicy, 100, functions);
+        return new DefaultInjector(cachePolicy, 100, instantiatorBackend,
+                                   eagerInitialization ? initializationThreads : 0,
+                                   makeGraphCache(),
+                                   new LifecycleManager(shutdownThreads, shutdownTimeoutNanos,
+                                                        TimeUnit.NANOSECONDS),
+                                   functions);
+    }
+
+    @Nullable
+    private GraphCache makeGraphCache() {
+        if (graphCacheDirectory == null) {
+            return null;
+        }
+        String rules = builder.getFingerprint();
+        if (rules == null) {
+            logger.info("configuration is not serializable, not caching graphs");
+            return null;
+        }
+        // the binding functions also depend on whether provider injection is enabled
+        String fingerprint = Hashing.sha1().newHasher()
+                                    .putString(rules, Charsets.UTF_8)
+                                    .putBoolean(enableProviderInjection)
+                                    .hash().toString();
+        return GraphCache.create(graphCacheDirectory, fingerprint, classLoader);
     }
 }
@@ -0,0 +1,91 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.reflect.AbstractSatisfactionVisitor;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.internal.MethodHandleInstantiator;
+
+import javax.annotation.Nullable;
+import java.util.Map;
+
+/**
+ * Strategies for instantiating components that are satisfied by classes.
+ *
+ * @since 0.11
+ * @see InjectorBuilder#setInstantiatorBackend(InstantiatorBackend)
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public enum InstantiatorBackend {
+    /**
+     * Use core reflection to invoke constructors and injection points.  This is the default.
+     */
+    REFLECTION {
+        @Override
+        public Instantiator makeInstantiator(Satisfaction sat, Map<Desire, Instantiator> dependencies,
+                                             @Nullable LifecycleManager manager) {
+            return sat.makeInstantiator(dependencies, manager);
+        }
+    },
+    /**
+     * Compile each class's injection plan into method handles once, so that constructing an
+     * instance costs little more than invoking its constructor and storing its fields.  Classes
+     * that cannot be accessed through method handles are instantiated reflectively.
+     */
+    METHOD_HANDLE {
+        @Override
+        public Instantiator makeInstantiator(Satisfaction sat, Map<Desire, Instantiator> dependencies,
+                                             @Nullable LifecycleManager manager) {
+            Class<?> type = sat.visit(ClassVisitor.INSTANCE);
+            if (type != null) {
+                Instantiator inst = MethodHandleInstantiator.create(type, dependencies, manager);
+                if (inst != null) {
+                    return inst;
+                }
+            }
+            return sat.makeInstantiator(dependencies, manager);
+        }
+    };
+
+    /**
+     * Create an instantiator for a satisfaction.
+     *
+     * @param sat The satisfaction.
+     * @param dependencies The instantiators for the satisfaction's dependencies.
+     * @param manager The lifecycle manager, if any.
+     * @return An instantiator for the satisfaction.
+     * @see Satisfaction#makeInstantiator(Map, LifecycleManager)
+     */
+    public abstract Instantiator makeInstantiator(Satisfaction sat, Map<Desire, Instantiator> dependencies,
+                                                  @Nullable LifecycleManager manager);
+
+    /**
+     * Visitor extracting the class of class satisfactions.
+     */
+    private static class ClassVisitor extends AbstractSatisfactionVisitor<Class<?>> {
+        static final ClassVisitor INSTANCE = new ClassVisitor();
+
+        @Override
+        public Class<?> visitClass(Class<?> clazz) {
+            return clazz;
+        }
+    }
+}
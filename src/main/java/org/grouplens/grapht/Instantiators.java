@@ -21,13 +21,16 @@ package org.grouplens.grapht;
 
 import com.google.common.base.Preconditions;
 import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
 import org.grouplens.grapht.util.LogContext;
 import org.grouplens.grapht.util.TypedProvider;
 import org.grouplens.grapht.util.Types;
 import javax.inject.Provider;
 import org.slf4j.LoggerFactory;
 import org.slf4j.Logger;
-import org.grouplens.grapht.util.LogContext;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Utilities and methods for building and working with {@link org.grouplens.grapht.Instantiator}s.
@@ -37,6 +40,7 @@ import org.grouplens.grapht.util.LogContext;
  */
 public final class Instantiators {
     private static final Logger logger = LoggerFactory.getLogger(Instantiators.class);
+    private static final String PROVIDER_KEY = "org.grouplens.grapht.currentProvider";
 
     private Instantiators() {}
 
@@ -139,6 +143,10 @@ public final class Instantiators {
 
     private static class ProviderInstantiator implements Instantiator {
         private final Instantiator providerInstantiator;
+        /**
+         * The provider label recorded in the MDC, built on first use.
+         */
+        private volatile String label;
         public ProviderInstantiator(Instantiator prov) {
             providerInstantiator = prov;
         }
@@ -146,15 +154,25 @@ public final class Instantiators {
         @Override
         public Object instantiate() throws ConstructionException {
             Provider<?> provider = (Provider) providerInstantiator.instantiate();
-            LogContext mdcContextProvider = LogContext.create();
             logger.trace("invoking provider {}",provider);
+            boolean logContext = LogContext.isEnabled();
+            String saved = null;
+            if (logContext) {
+                String l = label;
+                if (l == null) {
+                    l = providerInstantiator.getType().getName();
+                    label = l;
+                }
+                saved = LogContext.push(PROVIDER_KEY, l);
+            }
             try {
-                mdcContextProvider.put("org.grouplens.grapht.currentProvider", provider.toString());
                 return provider.get();
             } catch (Throwable th) {
                 throw new ConstructionException(getType(), "Error invoking provider " + providerInstantiator, th);
             } finally {
-                mdcContextProvider.finish();
+                if (logContext) {
+                    LogContext.pop(PROVIDER_KEY, saved);
+                }
             }
         }
         @SuppressWarnings("unchecked")
@@ -165,11 +183,14 @@ public final class Instantiators {
     }
 
 
+    /**
+     * Instantiator that builds its delegate's instance once.  The first thread to request the
+     * instance builds it; other threads park on a latch until it is ready rather than blocking
+     * on a monitor, so slow constructors do not pin the threads waiting on them.
+     */
     private static class MemoizingInstantiator implements Instantiator {
         private final Instantiator delegate;
-        private volatile boolean instantiated = false;
-        private Object instance = null;
-        private Throwable error = null;
+        private final AtomicReference<Construction> construction = new AtomicReference<Construction>();
 
         public MemoizingInstantiator(Instantiator inst) {
             delegate = inst;
@@ -177,25 +198,27 @@ public final class Instantiators {
 
         @Override
         public Object instantiate() throws ConstructionException {
-            if (!instantiated) {
-                synchronized (this) {
-                    if (!instantiated) {
-                        try {
-                            instance = delegate.instantiate();
-                        } catch (Throwable th) {
-                            error = th;
-                        }
-                        instantiated = true;
-                    }
+            Construction c = construction.get();
+            if (c == null) {
+                Construction mine = new Construction();
+                if (construction.compareAndSet(null, mine)) {
+                    mine.run(delegate);
+                    c = mine;
+                } else {
+                    c = construction.get();
                 }
+            } else if (c.isBuiltBy(Thread.currentThread())) {
+                // a cyclic request from the constructing thread; waiting would deadlock
+                return delegate.instantiate();
             }
 
+            Throwable error = c.await();
             if (error != null) {
                 Throwables.propagateIfPossible(error, ConstructionException.class);
                 // shouldn't happen, but hey.
                 throw Throwables.propagate(error);
             } else {
-                return instance;
+                return c.instance;
             }
         }
 
@@ -205,6 +228,42 @@ public final class Instantiators {
         }
     }
 
+    /**
+     * A memoized construction, claimed by the thread that runs it.
+     */
+    private static class Construction {
+        private final CountDownLatch done = new CountDownLatch(1);
+        private volatile Thread builder = Thread.currentThread();
+        private Object instance;
+        private Throwable error;
+
+        void run(Instantiator delegate) {
+            try {
+                instance = delegate.instantiate();
+            } catch (Throwable th) {
+                error = th;
+            } finally {
+                builder = null;
+                done.countDown();
+            }
+        }
+
+        boolean isBuiltBy(Thread thread) {
+            return builder == thread;
+        }
+
+        /**
+         * Wait for the construction to finish.
+         * @return The construction's error, or {@code null} if it succeeded.
+         */
+        Throwable await() {
+            if (done.getCount() > 0) {
+                Uninterruptibles.awaitUninterruptibly(done);
+            }
+            return error;
+        }
+    }
+
     private static class InstantiatorProvider implements TypedProvider {
         private final Instantiator instantiator;
 
@@ -19,21 +19,92 @@
  */
 package org.grouplens.grapht;
 
-import com.google.common.base.Throwables;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.Lists;
+import com.google.common.util.concurrent.ThreadFactoryBuilder;
 import com.google.common.util.concurrent.UncheckedExecutionException;
-import org.apache.commons.lang3.reflect.MethodUtils;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.grouplens.grapht.reflect.internal.LifecyclePlan;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.PreDestroy;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Method;
-import java.util.Deque;
-import java.util.LinkedList;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.util.*;
+import java.util.concurrent.*;
 
+/**
+ * Manages the lifecycle of injected components.  Components may be registered concurrently from
+ * multiple threads.
+ *
+ * <p>When the manager is closed, components are torn down in reverse dependency order.  Components
+ * registered through {@link #atLevel(int)} are torn down from the highest level to the lowest;
+ * since a component's dependencies are at lower levels than it, the components of a level are
+ * independent and are torn down concurrently, on up to the manager's number of threads.
+ * Components registered without a level are torn down first, one at a time, in reverse order of
+ * registration.  If the manager has a timeout, it stops waiting for a component's teardown when
+ * the timeout expires, interrupts it, and moves on.  The time spent on each component is
+ * available from {@link #getTeardownTimes()}.
+ */
+@ThreadSafe
 public class LifecycleManager implements AutoCloseable {
     private static final Logger logger = LoggerFactory.getLogger(LifecycleManager.class);
-    private Deque<TeardownAction> actions = new LinkedList<TeardownAction>();
+    /**
+     * The level of components registered without one.
+     */
+    public static final int NO_LEVEL = -1;
+
+    private final Registry registry;
+    private final int level;
+
+    /**
+     * Create a lifecycle manager that tears down components one at a time, without a timeout.
+     */
+    public LifecycleManager() {
+        this(1, 0, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Create a lifecycle manager.
+     *
+     * @param threads The maximum number of components to tear down concurrently.
+     * @param timeout The maximum time to wait for a component's teardown, or 0 to wait as long as
+     *                it takes.
+     * @param unit The unit of {@code timeout}.
+     * @throws IllegalArgumentException if {@code threads} is less than 1 or {@code timeout} is negative.
+     * @since 0.11
+     */
+    public LifecycleManager(int threads, long timeout, TimeUnit unit) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("must have at least one thread");
+        }
+        if (timeout < 0) {
+            throw new IllegalArgumentException("timeout cannot be negative");
+        }
+        registry = new Registry(threads, unit.toNanos(timeout));
+        level = NO_LEVEL;
+    }
+
+    private LifecycleManager(Registry reg, int lvl) {
+        registry = reg;
+        level = lvl;
+    }
+
+    /**
+     * Get a view of this manager that registers components at a topological level of their graph,
+     * as in {@link ComponentBuildTime#getLevel()}.  The view shares this manager's components;
+     * closing either closes both.
+     *
+     * @param level The level of components registered with the view.
+     * @return A lifecycle manager registering components at {@code level}.
+     * @since 0.11
+     */
+    public LifecycleManager atLevel(int level) {
+        if (level < 0) {
+            throw new IllegalArgumentException("level cannot be negative");
+        }
+        return new LifecycleManager(registry, level);
+    }
 
     /**
      * Register a component with the lifecycle manager.  The component will be torn down when the lifecycle manager
@@ -46,80 +117,282 @@ public class LifecycleManager implements AutoCloseable {
             return;
         }
 
-        if (instance instanceof AutoCloseable) {
-            actions.add(new CloseAction((AutoCloseable) instance));
-        }
-        for (Method m: MethodUtils.getMethodsListWithAnnotation(instance.getClass(), PreDestroy.class)) {
-            actions.add(new PreDestroyAction(instance, m));
+        LifecyclePlan plan = LifecyclePlan.forClass(instance.getClass());
+        if (!plan.hasTeardown()) {
+            // nothing to do, so don't take the lock
+            return;
         }
+        registry.add(new ComponentTeardown(instance, plan, level));
     }
 
     /**
-     * Close the lifecycle manager, shutting down all components it manages.
+     * Get the times taken to tear down components.
+     *
+     * @return The teardown times of components torn down so far, in the order their teardowns
+     *         finished (or timed out).
+     * @since 0.11
+     */
+    public List<ComponentTeardownTime> getTeardownTimes() {
+        return ImmutableList.copyOf(registry.times);
+    }
+
+    /**
+     * Close the lifecycle manager, shutting down all components it manages.  Every component is
+     * torn down even if some fail; the first failure is then rethrown, with the others suppressed.
+     *
+     * @throws UncheckedExecutionException if a component's teardown failed.
+     * @throws UncheckedTimeoutException if a component's teardown timed out (and none failed).
      */
     @Override
     public void close() {
-        Throwable error = null;
-        while (!actions.isEmpty()) {
-            TeardownAction action = actions.removeFirst();
-            try {
-                action.destroy();
-            } catch (Throwable th) {
-                if (error == null) {
-                    error = th;
-                } else {
-                    error.addSuppressed(th);
+        List<ComponentTeardown> actions = registry.drain();
+        if (actions.isEmpty()) {
+            return;
+        }
+
+        // group by level, highest first; unleveled components come before all others
+        SortedMap<Integer, List<ComponentTeardown>> levels =
+                new TreeMap<Integer, List<ComponentTeardown>>(Collections.reverseOrder());
+        // later registrations depend on earlier ones, so go in reverse
+        for (ComponentTeardown action: Lists.reverse(actions)) {
+            int key = action.level == NO_LEVEL ? Integer.MAX_VALUE : action.level;
+            List<ComponentTeardown> group = levels.get(key);
+            if (group == null) {
+                group = Lists.newArrayList();
+                levels.put(key, group);
+            }
+            group.add(action);
+        }
+
+        Teardown teardown = new Teardown(registry);
+        try {
+            for (Map.Entry<Integer, List<ComponentTeardown>> e: levels.entrySet()) {
+                boolean parallel = e.getKey() != Integer.MAX_VALUE;
+                if (!teardown.run(e.getValue(), parallel ? registry.threads : 1)) {
+                    break;
                 }
             }
+        } finally {
+            teardown.shutdown();
         }
+
+        RuntimeException error = teardown.error;
         if (error != null) {
-            throw Throwables.propagate(error);
+            throw error;
         }
     }
 
     /**
-     * Interface for actions that tear down components.
+     * The components and configuration shared by a manager and its views.
      */
-    interface TeardownAction {
-        void destroy();
+    private static class Registry {
+        final int threads;
+        final long timeoutNanos;
+        /**
+         * Teardown actions, in registration order.  Guarded by itself.
+         */
+        private final List<ComponentTeardown> actions = Lists.newArrayList();
+        final List<ComponentTeardownTime> times = new CopyOnWriteArrayList<ComponentTeardownTime>();
+
+        Registry(int threads, long timeout) {
+            this.threads = threads;
+            timeoutNanos = timeout;
+        }
+
+        void add(ComponentTeardown action) {
+            synchronized (actions) {
+                actions.add(action);
+            }
+        }
+
+        /**
+         * Remove all registered actions.  The lock is not held while actions run, so a
+         * component's teardown may safely interact with the manager.
+         */
+        List<ComponentTeardown> drain() {
+            synchronized (actions) {
+                List<ComponentTeardown> result = ImmutableList.copyOf(actions);
+                actions.clear();
+                return result;
+            }
+        }
     }
 
-    static class PreDestroyAction implements TeardownAction {
+    /**
+     * Tear down a component according to its class's lifecycle plan.
+     */
+    static class ComponentTeardown {
         private final Object instance;
-        private final Method method;
+        private final LifecyclePlan plan;
+        private final int level;
 
-        public PreDestroyAction(Object inst, Method m) {
+        ComponentTeardown(Object inst, LifecyclePlan plan, int level) {
             instance = inst;
-            method = m;
+            this.plan = plan;
+            this.level = level;
+        }
+
+        void destroy() {
+            try {
+                plan.tearDown(instance);
+            } catch (Exception e) {
+                throw new UncheckedExecutionException("Error destroying " + instance, e);
+            }
         }
 
         @Override
-        public void destroy() {
+        public String toString() {
+            return instance.toString();
+        }
+    }
+
+    /**
+     * A single close of the manager, which runs teardown actions and collects their times and
+     * errors.  Actions run in the closing thread unless they run concurrently or have a timeout.
+     */
+    private static class Teardown {
+        private final Registry registry;
+        private final BlockingQueue<Task> finished = new LinkedBlockingQueue<Task>();
+        @Nullable
+        private ExecutorService executor;
+        @Nullable
+        RuntimeException error;
+
+        Teardown(Registry reg) {
+            registry = reg;
+        }
+
+        /**
+         * Run a group of actions.
+         *
+         * @param actions The actions, in the order to start them.
+         * @param parallelism The number of actions to run at a time.
+         * @return {@code false} if the closing thread was interrupted.
+         */
+        boolean run(List<ComponentTeardown> actions, int parallelism) {
+            if (parallelism == 1 && registry.timeoutNanos == 0) {
+                for (ComponentTeardown action: actions) {
+                    Task task = new Task(action, null);
+                    task.run();
+                    record(task);
+                }
+                return true;
+            }
+
+            if (executor == null) {
+                // threads of timed-out actions are abandoned, so the pool cannot be fixed-size;
+                // we bound the number of running actions ourselves
+                executor = Executors.newCachedThreadPool(new ThreadFactoryBuilder().setDaemon(true)
+                                                                                   .setNameFormat("grapht-teardown-%d")
+                                                                                   .build());
+            }
+            Deque<ComponentTeardown> queue = new ArrayDeque<ComponentTeardown>(actions);
+            // running tasks, in order of their deadlines
+            Map<Task, Future<?>> running = new LinkedHashMap<Task, Future<?>>();
             try {
-                logger.debug("invoking pre-destroy method {} on {}", method, instance);
-                method.invoke(instance);
-            } catch (IllegalAccessException e) {
-                throw new RuntimeException("cannot access " + method, e);
-            } catch (InvocationTargetException e) {
-                throw new UncheckedExecutionException("error invoking " + method, e);
+                while (!queue.isEmpty() || !running.isEmpty()) {
+                    while (running.size() < parallelism && !queue.isEmpty()) {
+                        Task task = new Task(queue.poll(), finished);
+                        running.put(task, executor.submit(task));
+                    }
+                    Task done;
+                    if (registry.timeoutNanos == 0) {
+                        done = finished.take();
+                    } else {
+                        Task first = running.keySet().iterator().next();
+                        long wait = first.submitted + registry.timeoutNanos - System.nanoTime();
+                        done = finished.poll(Math.max(wait, 0), TimeUnit.NANOSECONDS);
+                        if (done == null) {
+                            running.remove(first).cancel(true);
+                            timedOut(first);
+                            continue;
+                        }
+                    }
+                    if (running.remove(done) != null) {
+                        record(done);
+                    }
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Future<?> f: running.values()) {
+                    f.cancel(true);
+                }
+                addError(new UncheckedExecutionException("interrupted while tearing down components", e));
+                return false;
+            }
+            return true;
+        }
+
+        private void record(Task task) {
+            registry.times.add(new ComponentTeardownTime(task.action.instance.getClass(), task.action.level,
+                                                         task.nanos, false));
+            if (task.error != null) {
+                addError(task.error);
+            }
+        }
+
+        private void timedOut(Task task) {
+            long nanos = System.nanoTime() - task.submitted;
+            logger.warn("teardown of {} timed out after {} ms", task.action, nanos / 1000000);
+            registry.times.add(new ComponentTeardownTime(task.action.instance.getClass(), task.action.level,
+                                                         nanos, true));
+            addError(new UncheckedTimeoutException("teardown of " + task.action + " timed out"));
+        }
+
+        private void addError(RuntimeException e) {
+            if (error == null) {
+                error = e;
+            } else if (error instanceof UncheckedTimeoutException
+                       && !(e instanceof UncheckedTimeoutException)) {
+                // failures take precedence over timeouts
+                e.addSuppressed(error);
+                error = e;
+            } else {
+                error.addSuppressed(e);
+            }
+        }
+
+        void shutdown() {
+            if (executor != null) {
+                executor.shutdown();
             }
         }
     }
 
-    static class CloseAction implements TeardownAction {
-        private final AutoCloseable instance;
+    /**
+     * A teardown action being run.
+     */
+    private static class Task implements Runnable {
+        final ComponentTeardown action;
+        final long submitted = System.nanoTime();
+        @Nullable
+        private final BlockingQueue<Task> finished;
+        volatile long nanos;
+        volatile RuntimeException error;
 
-        public CloseAction(AutoCloseable inst) {
-            instance = inst;
+        /**
+         * @param action The action to run.
+         * @param finished The queue to which the task adds itself when it finishes, if any.
+         */
+        Task(ComponentTeardown action, @Nullable BlockingQueue<Task> finished) {
+            this.action = action;
+            this.finished = finished;
         }
 
         @Override
-        public void destroy() {
+        public void run() {
+            long start = System.nanoTime();
             try {
-                logger.debug("closing {}", instance);
-                instance.close();
-            } catch (Exception e) {
-                throw new UncheckedExecutionException("Error destroying " + instance, e);
+                action.destroy();
+            } catch (RuntimeException e) {
+                error = e;
+            } catch (Error e) {
+                error = new UncheckedExecutionException("Error destroying " + action, e);
+            } finally {
+                nanos = System.nanoTime() - start;
+                if (finished != null) {
+                    finished.add(this);
+                }
             }
         }
     }
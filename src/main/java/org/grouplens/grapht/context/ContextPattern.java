@@ -19,21 +19,16 @@
  */
 package org.grouplens.grapht.context;
 
-import com.google.common.base.Preconditions;
 import com.google.common.collect.ImmutableList;
-import org.apache.commons.lang3.tuple.Pair;
-import org.grouplens.grapht.reflect.InjectionPoint;
-import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.solver.InjectionContext;
-import org.grouplens.grapht.util.AbstractChain;
 
-import javax.annotation.Nullable;
 import java.io.Serializable;
 import java.util.Collections;
 import java.util.List;
 
 /**
- * A regular pattern matching contexts.
+ * A regular pattern matching contexts.  Patterns are compiled into an automaton that matches
+ * contexts incrementally, caching its state on each {@link InjectionContext} node.
  *
  * @since 0.7
  * @author <a href="http://www.grouplens.org">GroupLens Research</a>
@@ -42,6 +37,7 @@ public class ContextPattern implements ContextMatcher, Serializable {
     private static final long serialVersionUID = 1L;
 
     private final List<Element> tokenChain;
+    private transient volatile PatternAutomaton automaton;
 
     private ContextPattern() {
         tokenChain = Collections.emptyList();
@@ -162,75 +158,31 @@ public class ContextPattern implements ContextMatcher, Serializable {
         return append(ContextElements.matchAny(), Multiplicity.ZERO_OR_MORE);
     }
 
+    /**
+     * Get the elements of this pattern.
+     * @return The pattern's elements, in order.
+     */
+    List<Element> getElements() {
+        return tokenChain;
+    }
+
     @Override
     public ContextMatch matches(InjectionContext context) {
-        List<MatchElement> result = recursiveMatch(tokenChain, ImmutableList.copyOf(context));
-        if (result == null) {
-            return null;
-        } else {
-            return ContextMatch.create(result);
-        }
+        return getAutomaton().matches(context);
     }
 
     /**
-     * Recursive matching routine.  Matches the pattern via backtracking.  Returns the matched
-     * elements.
-     *
-     * @param pattern The pattern.
-     * @param context The context.
-     * @return The chain of match elements (in reverse order).
+     * Get the compiled automaton for this pattern, compiling it if necessary.
+     * @return The pattern's automaton.
      */
-    private List<MatchElement> recursiveMatch(List<Element> pattern, List<Pair<Satisfaction, InjectionPoint>> context) {
-        if (pattern.isEmpty()) {
-            if (context.isEmpty()) {
-                return Collections.emptyList();
-            } else {
-                return null;
-            }
-        }
-
-        Element element = listHead(pattern);
-
-        // matching against the empty string with a nonempty pattern
-        if (context.isEmpty()) {
-            if (element.getMultiplicity().isOptional()) {
-                return recursiveMatch(pattern.subList(1, pattern.size()), context);
-            } else {
-                return null;
-            }
-        }
-        // non-empty pattern, non-empty context, go
-        Pair<Satisfaction,InjectionPoint> ctxElem = listHead(context);
-        MatchElement match = element.getMatcher().apply(ctxElem);
-        if (match == null) {
-            // no match, what do we do?
-            if (element.getMultiplicity().isOptional()) {
-                // skip this element, keep going
-                return recursiveMatch(listTail(pattern), context);
-            } else {
-                // oops, we must match
-                return null;
-            }
-        } else {
-            // we have a match, try recursion
-            List<Element> nextPat = pattern;
-            if (element.getMultiplicity().isConsumed()) {
-                nextPat = listTail(nextPat);
-            }
-            List<MatchElement> result = recursiveMatch(nextPat, listTail(context));
-            if (result == null && element.getMultiplicity().isOptional()) {
-                // recursive match failed, but element is optional. Try again without it.
-                return recursiveMatch(listTail(pattern), context);
-            }
-            if (result != null) {
-                return ImmutableList.<MatchElement>builder()
-                                    .add(match)
-                                    .addAll(result)
-                                    .build();
-            } else {
-                return result;
-            }
+    private PatternAutomaton getAutomaton() {
+        PatternAutomaton auto = automaton;
+        if (auto == null) {
+            // racing threads may each compile an automaton; any of them will do
+            auto = new PatternAutomaton(tokenChain);
+            automaton = auto;
         }
+        return auto;
     }
 
     @Override
@@ -318,14 +270,4 @@ public class ContextPattern implements ContextMatcher, Serializable {
             return sb.toString();
         }
     }
-
-    private static <E> E listHead(List<E> lst) {
-        Preconditions.checkArgument(!lst.isEmpty(), "list cannot be empty");
-        return lst.get(0);
-    }
-
-    private static <E> List<E> listTail(List<E> lst) {
-        Preconditions.checkArgument(!lst.isEmpty(), "list cannot be empty");
-        return lst.subList(1, lst.size());
-    }
 }
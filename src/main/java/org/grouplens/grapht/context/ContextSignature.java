@@ -0,0 +1,154 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.context;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.solver.InjectionContext;
+
+import javax.annotation.Nullable;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * The part of an injection context that a set of context matchers can distinguish.  Two contexts
+ * with the same signature with respect to a set of matchers produce equivalent matches (the same
+ * results and the same relative ordering of matches) for every matcher in the set, both on the
+ * contexts themselves and on any extension of them by the same elements.
+ *
+ * <p>The signature is the suffix of the context starting at the first element that some
+ * non-wildcard element matcher accepts; elements within that suffix that no element matcher
+ * accepts are recorded only as placeholders.  This is only sound for patterns that begin with
+ * a {@code .*} and whose only wildcards are {@code .*}, such as the patterns produced by
+ * {@code within} and {@code at}; other matchers have no signature.</p>
+ *
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public final class ContextSignature {
+    private static final ContextSignature EMPTY =
+            new ContextSignature(Collections.<Pair<Satisfaction,InjectionPoint>>emptyList());
+
+    private final List<Pair<Satisfaction,InjectionPoint>> elements;
+    private final int hashCode;
+
+    private ContextSignature(List<Pair<Satisfaction,InjectionPoint>> elems) {
+        elements = elems;
+        hashCode = elems.hashCode();
+    }
+
+    /**
+     * Compute the signature of a context with respect to some context matchers.
+     *
+     * @param context The context.
+     * @param matchers The context matchers.
+     * @return The signature of {@code context}, or {@code null} if some matcher is not a
+     *         context pattern whose matches can be described by a signature.
+     */
+    @Nullable
+    public static ContextSignature create(InjectionContext context,
+                                          Collection<? extends ContextMatcher> matchers) {
+        if (matchers.isEmpty()) {
+            return EMPTY;
+        }
+
+        List<ContextElementMatcher> elementMatchers = new ArrayList<ContextElementMatcher>();
+        for (ContextMatcher matcher: matchers) {
+            if (!(matcher instanceof ContextPattern)) {
+                return null;
+            }
+            List<ContextPattern.Element> pattern = ((ContextPattern) matcher).getElements();
+            if (pattern.isEmpty() || !isDotStar(pattern.get(0))) {
+                // the pattern is anchored at the start of the context
+                return null;
+            }
+            for (ContextPattern.Element elt: pattern) {
+                if (elt.getMatcher().equals(ContextElements.matchAny())) {
+                    if (!isDotStar(elt)) {
+                        // a single-element wildcard can see how long the context is
+                        return null;
+                    }
+                } else {
+                    elementMatchers.add(elt.getMatcher());
+                }
+            }
+        }
+
+        List<Pair<Satisfaction,InjectionPoint>> elems = new ArrayList<Pair<Satisfaction,InjectionPoint>>();
+        boolean found = false;
+        for (Pair<Satisfaction,InjectionPoint> elem: context) {
+            boolean relevant = false;
+            for (ContextElementMatcher em: elementMatchers) {
+                if (em.apply(elem) != null) {
+                    relevant = true;
+                    break;
+                }
+            }
+            if (relevant) {
+                found = true;
+                elems.add(elem);
+            } else if (found) {
+                // only wildcards can consume this element, so any other would do as well
+                elems.add(null);
+            }
+        }
+        return new ContextSignature(elems);
+    }
+
+    private static boolean isDotStar(ContextPattern.Element elt) {
+        return elt.getMatcher().equals(ContextElements.matchAny())
+               && elt.getMultiplicity().equals(Multiplicity.ZERO_OR_MORE);
+    }
+
+    /**
+     * Query whether this signature is empty.  An empty signature means that the matchers cannot
+     * distinguish the context from any other context.
+     *
+     * @return {@code true} if the signature is empty.
+     */
+    public boolean isEmpty() {
+        return elements.isEmpty();
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (o == this) {
+            return true;
+        } else if (o instanceof ContextSignature) {
+            ContextSignature os = (ContextSignature) o;
+            return hashCode == os.hashCode && elements.equals(os.elements);
+        } else {
+            return false;
+        }
+    }
+
+    @Override
+    public int hashCode() {
+        return hashCode;
+    }
+
+    @Override
+    public String toString() {
+        return "ContextSignature" + elements;
+    }
+}
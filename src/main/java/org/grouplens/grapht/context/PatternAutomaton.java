@@ -0,0 +1,225 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.context;
+
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.solver.InjectionContext;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A context pattern compiled into a nondeterministic automaton.  The automaton is simulated one
+ * context element at a time, keeping its live threads in priority order, so it finds the same match
+ * as a backtracking matcher that tries to consume an element before skipping an optional pattern
+ * element.  Its state after each element of a context is cached on the {@link InjectionContext}
+ * node, so matching an extended context only needs to advance the automaton by one element.
+ *
+ * @since 0.11
+ * @author <a href="http://www.grouplens.org">GroupLens Research</a>
+ */
+final class PatternAutomaton {
+    private final ContextElementMatcher[] matchers;
+    private final boolean[] optional;
+    private final boolean[] consumed;
+    /**
+     * The number of pattern elements; this is also the accepting state.
+     */
+    private final int size;
+    private final State initial;
+    private final State dead;
+
+    PatternAutomaton(List<ContextPattern.Element> elements) {
+        size = elements.size();
+        matchers = new ContextElementMatcher[size];
+        optional = new boolean[size];
+        consumed = new boolean[size];
+        for (int i = 0; i < size; i++) {
+            ContextPattern.Element elem = elements.get(i);
+            matchers[i] = elem.getMatcher();
+            optional[i] = elem.getMultiplicity().isOptional();
+            consumed[i] = elem.getMultiplicity().isConsumed();
+        }
+        dead = new State(new int[0], new History[0]);
+
+        StateBuilder bld = new StateBuilder();
+        bld.addClosure(0, null);
+        initial = bld.build();
+    }
+
+    /**
+     * Match a context.
+     *
+     * @param context The context to match.
+     * @return The match, or {@code null} if the pattern does not match the context.
+     */
+    ContextMatch matches(InjectionContext context) {
+        return stateFor(context).getMatch();
+    }
+
+    /**
+     * Get the automaton's state after consuming a context, advancing it from the deepest cached
+     * state of the context's prefixes.
+     */
+    private State stateFor(InjectionContext context) {
+        List<InjectionContext> pending = null;
+        State state = initial;
+        for (InjectionContext cur = context; cur != null; cur = cur.getLeading()) {
+            State cached = (State) cur.getMatcherState(this);
+            if (cached != null) {
+                state = cached;
+                break;
+            }
+            if (pending == null) {
+                pending = new ArrayList<InjectionContext>();
+            }
+            pending.add(cur);
+        }
+        if (pending != null) {
+            for (int i = pending.size() - 1; i >= 0; i--) {
+                InjectionContext node = pending.get(i);
+                state = step(state, node.getTailValue());
+                node.putMatcherState(this, state);
+            }
+        }
+        return state;
+    }
+
+    /**
+     * Advance the automaton by one context element.
+     */
+    private State step(State state, Pair<Satisfaction, InjectionPoint> elem) {
+        if (state == dead) {
+            return dead;
+        }
+        StateBuilder bld = new StateBuilder();
+        for (int i = 0; i < state.positions.length; i++) {
+            int pos = state.positions[i];
+            if (pos == size) {
+                // accepting threads cannot consume anything
+                continue;
+            }
+            MatchElement match = matchers[pos].apply(elem);
+            if (match != null) {
+                bld.addClosure(consumed[pos] ? pos + 1 : pos,
+                               new History(match, state.histories[i]));
+            }
+        }
+        return bld.isEmpty() ? dead : bld.build();
+    }
+
+    /**
+     * Accumulates the threads of a new state.
+     */
+    private class StateBuilder {
+        private final int[] positions = new int[size + 1];
+        private final History[] histories = new History[size + 1];
+        private final boolean[] seen = new boolean[size + 1];
+        private int count = 0;
+
+        /**
+         * Add a thread at a pattern position, along with the threads reachable by skipping
+         * optional elements.  Threads already present have higher priority, and share the same
+         * future, so they are not added again.
+         */
+        void addClosure(int pos, History history) {
+            while (!seen[pos]) {
+                seen[pos] = true;
+                positions[count] = pos;
+                histories[count] = history;
+                count++;
+                if (pos == size || !optional[pos]) {
+                    return;
+                }
+                pos += 1;
+            }
+        }
+
+        boolean isEmpty() {
+            return count == 0;
+        }
+
+        State build() {
+            return new State(Arrays.copyOf(positions, count), Arrays.copyOf(histories, count));
+        }
+    }
+
+    /**
+     * An automaton state: the live threads, in priority order, and their match histories.
+     */
+    private class State {
+        private final int[] positions;
+        private final History[] histories;
+        private final int accept;
+        private volatile ContextMatch match;
+
+        State(int[] pos, History[] hist) {
+            positions = pos;
+            histories = hist;
+            int acc = -1;
+            for (int i = 0; i < pos.length; i++) {
+                if (pos[i] == size) {
+                    acc = i;
+                    break;
+                }
+            }
+            accept = acc;
+        }
+
+        ContextMatch getMatch() {
+            if (accept < 0) {
+                return null;
+            }
+            ContextMatch m = match;
+            if (m == null) {
+                m = ContextMatch.create(histories[accept].toList());
+                match = m;
+            }
+            return m;
+        }
+    }
+
+    /**
+     * A persistent list of the match elements of a thread, most recent first.
+     */
+    private static final class History {
+        private final MatchElement element;
+        private final History previous;
+        private final int length;
+
+        History(MatchElement elem, History prev) {
+            element = elem;
+            previous = prev;
+            length = prev == null ? 1 : prev.length + 1;
+        }
+
+        List<MatchElement> toList() {
+            MatchElement[] elems = new MatchElement[length];
+            int i = length;
+            for (History h = this; h != null; h = h.previous) {
+                elems[--i] = h.element;
+            }
+            return Arrays.asList(elems);
+        }
+    }
+}
@@ -251,18 +251,32 @@ public class DAGNode<V,E> implements Serializable {
     /**
      * Helper mode for {@link #getSortedNodes()}, via {@link TopologicalSortSupplier}.  This method
      * does a depth-first traversal of the nodes, adding each to the {@code visited} set when it is
-     * left.  This results in {@code visited} being a topological sort.
+     * left.  This results in {@code visited} being a topological sort.  The traversal uses an
+     * explicit stack, so deep graphs do not exhaust the call stack.
      *
      * @param visited The set of nodes seen so far.
      */
     private void sortVisit(LinkedHashSet<DAGNode<V,E>> visited) {
-        if (!visited.contains(this)) {
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                nbr.getTail().sortVisit(visited);
+        if (visited.contains(this)) {
+            return;
+        }
+        Deque<Pair<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>> stack =
+                new ArrayDeque<Pair<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>>();
+        stack.push(Pair.<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>of(this, outgoingEdges.iterator()));
+        while (!stack.isEmpty()) {
+            Pair<DAGNode<V,E>,Iterator<DAGEdge<V,E>>> top = stack.peek();
+            Iterator<DAGEdge<V,E>> edges = top.getRight();
+            if (edges.hasNext()) {
+                DAGNode<V,E> tail = edges.next().getTail();
+                if (!visited.contains(tail)) {
+                    stack.push(Pair.<DAGNode<V,E>,Iterator<DAGEdge<V,E>>>of(tail, tail.outgoingEdges.iterator()));
+                }
+            } else {
+                stack.pop();
+                // neighbors won't have added this, or we have an impossible cycle
+                assert !visited.contains(top.getLeft());
+                visited.add(top.getLeft());
             }
-            // neighbors won't have added this, or we have an impossible cycle
-            assert !visited.contains(this);
-            visited.add(this);
         }
     }
 
@@ -285,29 +299,35 @@ public class DAGNode<V,E> implements Serializable {
      *               that has to be replaced with the node that replaces it.  This map should
      *               usually be empty on the initial call to this method.  In particular, it should
      *               not contain any reachable nodes on the initial call, or unexpected behavior
-     *               may arise.  Recursive calls of this method to itself do contain such nodes.
+     *               may arise.
      * @return The graph with the replaced node.
      */
     public DAGNode<V,E> replaceNode(DAGNode<V,E> node, DAGNode<V,E> replacement,
                                     Map<DAGNode<V,E>,DAGNode<V,E>> memory) {
-        if (this.equals(node)) {
-            memory.put(node, replacement);
-            return replacement;
-        } else if (memory.containsKey(this)) {
-            // we have already been replaced, reuse the replacement
-            return memory.get(this);
-        } else if (getReachableNodes().contains(node)) {
-            DAGNodeBuilder<V,E> bld = newBuilder(label);
-            for (DAGEdge<V,E> edge: outgoingEdges) {
-                DAGNode<V,E> newTail = edge.getTail().replaceNode(node, replacement, memory);
-                bld.addEdge(newTail, edge.getLabel());
+        // visit the nodes tails-first, so each node's replaced tails are known when we get to it
+        for (DAGNode<V,E> current: getSortedNodes()) {
+            if (current.equals(node)) {
+                memory.put(node, replacement);
+            } else if (!memory.containsKey(current)) {
+                DAGNodeBuilder<V,E> bld = null;
+                for (DAGEdge<V,E> edge: current.outgoingEdges) {
+                    if (memory.containsKey(edge.getTail())) {
+                        // a tail has been replaced, so this node must be too
+                        bld = newBuilder(current.label);
+                        break;
+                    }
+                }
+                if (bld != null) {
+                    for (DAGEdge<V,E> edge: current.outgoingEdges) {
+                        DAGNode<V,E> newTail = memory.get(edge.getTail());
+                        bld.addEdge(newTail == null ? edge.getTail() : newTail, edge.getLabel());
+                    }
+                    memory.put(current, bld.build());
+                }
             }
-            DAGNode<V,E> repl = bld.build();
-            memory.put(this, repl);
-            return repl;
-        } else {
-            return this;
         }
+        DAGNode<V,E> repl = memory.get(this);
+        return repl == null ? this : repl;
     }
 
     /**
@@ -387,13 +407,30 @@ public class DAGNode<V,E> implements Serializable {
      * @return The rewritten graph.
      */
     public DAGNode<V,E> transformEdges(Function<? super DAGEdge<V,E>, ? extends DAGEdge<V,E>> function) {
+        // transform nodes tails-first, so each node's transformed tails are known when we get to it
+        Map<DAGNode<V,E>,DAGNode<V,E>> transformed = Maps.newHashMap();
+        for (DAGNode<V,E> node: getSortedNodes()) {
+            transformed.put(node, node.transformOwnEdges(function, transformed));
+        }
+        return transformed.get(this);
+    }
+
+    /**
+     * Transform the outgoing edges of this node.  Helper method for {@link #transformEdges(Function)}.
+     *
+     * @param function The edge transformation function.
+     * @param transformed The transformed versions of all nodes reachable from this node.
+     * @return The transformed node.
+     */
+    private DAGNode<V,E> transformOwnEdges(Function<? super DAGEdge<V,E>, ? extends DAGEdge<V,E>> function,
+                                           Map<DAGNode<V,E>,DAGNode<V,E>> transformed) {
         // builder for new node
         DAGNodeBuilder<V,E> builder = null;
         // intact edges (unmodified edges)
         List<DAGEdge<V,E>> intact = Lists.newArrayListWithCapacity(outgoingEdges.size());
         for (DAGEdge<V,E> edge: outgoingEdges) {
             DAGNode<V,E> tail = edge.getTail();
-            DAGNode<V,E> transformedTail = tail.transformEdges(function);
+            DAGNode<V,E> transformedTail = transformed.get(tail);
             DAGEdge<V,E> toQuery = edge;
             if (transformedTail != tail) {
                 // the node changed, query with the updated edge
@@ -459,9 +496,10 @@ public class DAGNode<V,E> implements Serializable {
         @Override
         public SetMultimap<DAGNode<V, E>, DAGEdge<V, E>> get() {
             ImmutableSetMultimap.Builder<DAGNode<V,E>,DAGEdge<V,E>> bld = ImmutableSetMultimap.builder();
-            for (DAGEdge<V,E> nbr: outgoingEdges) {
-                bld.put(nbr.getTail(), nbr);
-                bld.putAll(nbr.getTail().getIncomingEdgeMap());
+            for (DAGNode<V,E> node: getSortedNodes()) {
+                for (DAGEdge<V,E> nbr: node.outgoingEdges) {
+                    bld.put(nbr.getTail(), nbr);
+                }
             }
             return bld.build();
         }
@@ -19,11 +19,10 @@
  */
 package org.grouplens.grapht.graph;
 
-import com.google.common.base.Functions;
-import com.google.common.collect.FluentIterable;
+import com.google.common.collect.ImmutableSet;
+import com.google.common.collect.Lists;
 import com.google.common.collect.Maps;
 import com.google.common.collect.Sets;
-import org.apache.commons.lang3.tuple.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -45,10 +44,19 @@ public class MergePool<V,E> {
     // TODO Allow arbitrary equivalence relations over graph nodes so this class is less specialized.
     private static final Logger logger = LoggerFactory.getLogger(MergePool.class);
 
+    /**
+     * The nodes in the pool, indexed by label and adjacent nodes.  This index is maintained
+     * across merges, so merging a graph only needs to examine that graph's nodes.
+     */
+    private final Map<MergeKey<V,E>, DAGNode<V,E>> nodeTable;
+    /**
+     * The nodes in the pool.  A node in the pool is its own merged version.
+     */
     private final Set<DAGNode<V,E>> pool;
 
     private MergePool() {
-        pool = Sets.newLinkedHashSet();
+        nodeTable = Maps.newHashMap();
+        pool = Sets.newHashSet();
     }
 
     /**
@@ -67,62 +75,92 @@ public class MergePool<V,E> {
      * outgoing edge destinations), and will prefer to use nodes from graphs seen previously.
      * This allows deduplication across multiple graphs.
      *
-     * <p><strong>Noteo:</strong> edge labels are ignored for the purpose of merging.</p>
+     * <p><strong>Note:</strong> edge labels are ignored for the purpose of merging.</p>
      *
      * @param graph The graph to simplify.
      * @return The new simplified, merged graph.
      */
     public DAGNode<V,E> merge(DAGNode<V, E> graph) {
-        List<DAGNode<V, E>> sorted = graph.getSortedNodes();
-
-        Map<Pair<V,Set<DAGNode<V,E>>>, DAGNode<V,E>> nodeTable = Maps.newHashMap();
-        for (DAGNode<V, E> node: pool) {
-            Pair<V, Set<DAGNode<V, E>>> key =
-                    Pair.of(node.getLabel(), node.getAdjacentNodes());
-            assert !nodeTable.containsKey(key);
-            nodeTable.put(key, node);
-        }
+        Map<DAGNode<V,E>, DAGNode<V,E>> mergedMap = Maps.newHashMap();
+        mergeNodes(graph.getSortedNodes(), mergedMap);
+        // now let's find our return value - what did we merge the graph root to?
+        // every node reachable from it has been added to the pool along the way
+        return mergedMap.get(graph);
+    }
 
-        // We want to map nodes to their previous merged versions
+    /**
+     * Merge and simplify several graphs in a single pass.  This is equivalent to merging each graph
+     * in turn, but nodes shared between the graphs are only examined once.
+     *
+     * @param graphs The graphs to simplify.
+     * @return The merged graphs, in the same order as {@code graphs}.
+     * @since 0.11
+     */
+    public List<DAGNode<V,E>> mergeAll(List<DAGNode<V,E>> graphs) {
         Map<DAGNode<V,E>, DAGNode<V,E>> mergedMap = Maps.newHashMap();
-        // Now start processing nodes
+        for (DAGNode<V,E> graph: graphs) {
+            if (!mergedMap.containsKey(graph)) {
+                mergeNodes(graph.getSortedNodes(), mergedMap);
+            }
+        }
+        List<DAGNode<V,E>> results = Lists.newArrayListWithCapacity(graphs.size());
+        for (DAGNode<V,E> graph: graphs) {
+            results.add(mergedMap.get(graph));
+        }
+        return results;
+    }
+
+    /**
+     * Merge a topologically sorted list of nodes into the pool.
+     *
+     * @param sorted The nodes to merge; each must come after its adjacent nodes.
+     * @param mergedMap The map of nodes to their merged versions, which this method updates.
+     *                  Nodes already in this map are skipped.
+     */
+    private void mergeNodes(List<DAGNode<V,E>> sorted, Map<DAGNode<V,E>, DAGNode<V,E>> mergedMap) {
         for (DAGNode<V, E> toMerge: sorted) {
+            if (mergedMap.containsKey(toMerge)) {
+                // already merged as part of another graph in this pass
+                continue;
+            }
+            if (pool.contains(toMerge)) {
+                // the node and everything it references have already been merged
+                mergedMap.put(toMerge, toMerge);
+                continue;
+            }
+
             V sat = toMerge.getLabel();
             // Resolve the merged neighbors of this node.  They have already been
             // merged, since we are going in topological order.
-            Set<DAGNode<V, E>> neighbors =
-                    FluentIterable.from(toMerge.getOutgoingEdges())
-                                  .transform(DAGEdge.<V,E>extractTail())
-                                  .transform(Functions.forMap(mergedMap))
-                                  .toSet();
+            ImmutableSet.Builder<DAGNode<V,E>> neighbors = ImmutableSet.builder();
+            boolean changed = false;
+            for (DAGEdge<V, E> edge: toMerge.getOutgoingEdges()) {
+                DAGNode<V, E> filtered = mergedMap.get(edge.getTail());
+                neighbors.add(filtered);
+                // have we made a change to this node?
+                changed |= !filtered.equals(edge.getTail());
+            }
+            MergeKey<V,E> key = new MergeKey<V, E>(sat, neighbors.build());
 
             // See if we have already created an equivalent to this node
-            DAGNode<V, E> newNode = nodeTable.get(Pair.of(sat, neighbors));
+            DAGNode<V, E> newNode = nodeTable.get(key);
             if (newNode == null) {
-                // No, let's start building one
-                DAGNodeBuilder<V,E> bld = DAGNode.newBuilder();
-
-                boolean changed = false;
-                bld.setLabel(sat);
                 logger.debug("Adding new node to merged graph for satisfaction: {}", sat);
 
-                for (DAGEdge<V, E> edge: toMerge.getOutgoingEdges()) {
-                    // create a new edge with the merged tail and same label
-                    DAGNode<V, E> filtered = mergedMap.get(edge.getTail());
-                    bld.addEdge(filtered, edge.getLabel());
-                    // have we made a change to this node?
-                    changed |= !filtered.equals(edge.getTail());
-                }
-
                 if (changed) {
                     // one of the node's neighbors has been replaced with merged version
-                    // so use the new node
+                    // so build a new node with the merged tails and same labels
+                    DAGNodeBuilder<V,E> bld = DAGNode.newBuilder(sat);
+                    for (DAGEdge<V, E> edge: toMerge.getOutgoingEdges()) {
+                        bld.addEdge(mergedMap.get(edge.getTail()), edge.getLabel());
+                    }
                     newNode = bld.build();
                 } else {
                     // no edges were changed, leave the node unmodified
                     newNode = toMerge;
                 }
-                nodeTable.put(Pair.of(sat, neighbors), newNode);
+                nodeTable.put(key, newNode);
+                pool.add(newNode);
             } else {
                 logger.debug("Node already in merged graph for satisfaction: {}", toMerge.getLabel());
             }
@@ -130,12 +168,41 @@ public class MergePool<V,E> {
             // update merge map so future equivalent nodes get replaced with this one
             mergedMap.put(toMerge, newNode);
         }
+    }
 
-        // now let's find our return value - what did we merge the graph root to?
-        DAGNode<V, E> newRoot = mergedMap.get(graph);
-        // remember all its nodes for future merge operations
-        pool.addAll(newRoot.getReachableNodes());
-        // and we're done
-        return newRoot;
+    /**
+     * Key for looking up equivalent nodes: a node label and a set of merged adjacent nodes.
+     * The hash code is computed once, since each key is hashed at least once and nodes
+     * hash by identity.
+     */
+    private static final class MergeKey<V,E> {
+        private final V label;
+        private final ImmutableSet<DAGNode<V,E>> neighbors;
+        private final int hashCode;
+
+        MergeKey(V label, ImmutableSet<DAGNode<V,E>> neighbors) {
+            this.label = label;
+            this.neighbors = neighbors;
+            hashCode = 31 * label.hashCode() + neighbors.hashCode();
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            } else if (o instanceof MergeKey) {
+                MergeKey<?,?> ok = (MergeKey<?,?>) o;
+                return hashCode == ok.hashCode
+                       && label.equals(ok.label)
+                       && neighbors.equals(ok.neighbors);
+            } else {
+                return false;
+            }
+        }
     }
 }
@@ -20,7 +20,6 @@
  */
 package org.grouplens.grapht.reflect.internal;
 
-import org.apache.commons.lang3.reflect.MethodUtils;
 import org.grouplens.grapht.ConstructionException;
 import org.grouplens.grapht.Instantiator;
 import org.grouplens.grapht.LifecycleManager;
@@ -32,7 +31,6 @@ import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import javax.annotation.PostConstruct;
 import java.lang.reflect.Constructor;
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -47,11 +45,22 @@ import java.util.Map;
  */
 public class ClassInstantiator implements Instantiator {
     private static final Logger logger = LoggerFactory.getLogger(ClassInstantiator.class);
+    static final String CLASS_KEY = "org.grouplens.grapht.class";
+    static final String INJECTION_POINT_KEY = "org.grouplens.grapht.injectionPoint";
 
     private final Class<?> type;
     private final List<Desire> desires;
-    private final Map<Desire, Instantiator> providers;
+    private final Map<Desire, Instantiator> providerMap;
     private final LifecycleManager manager;
+    /**
+     * The providers in desire order, looked up from the provider map on first use.  The map may be
+     * lazy (to allow cyclic dependencies), so we cannot consult it when the instantiator is built.
+     */
+    private volatile Instantiator[] providers;
+    /**
+     * The injection point labels recorded in the MDC, in desire order, built on first use.
+     */
+    private volatile String[] labels;
 
     /**
      * Create an ClassInstantiator that will provide instances of the given
@@ -71,7 +80,7 @@ public class ClassInstantiator implements Instantiator {
 
         this.type = type;
         this.desires = desires;
-        this.providers = providers;
+        providerMap = providers;
         this.manager = manager;
     }
 
@@ -85,32 +94,40 @@ public class ClassInstantiator implements Instantiator {
         // find constructor and build up necessary constructor arguments
 
         Constructor<?> ctor = getConstructor();
-        LogContext globalLogContext = LogContext.create();
+        Instantiator[] deps = getProviders();
+        boolean logContext = LogContext.isEnabled();
+        String[] ipLabels = logContext ? getLabels() : null;
+        String savedClass = null;
+        if (logContext) {
+            savedClass = LogContext.push(CLASS_KEY, type.getName());
+        }
         Object instance = null;
-        Method[] methods;
 
         try {
             // create the instance that we are injecting
             try {
-                globalLogContext.put("org.grouplens.grapht.class", ctor.getClass().toString());
                 Object[] ctorArgs = new Object[ctor.getParameterTypes().length];
-                for (Desire d : desires) {
-                    LogContext ipContext = LogContext.create();
+                for (int i = 0; i < deps.length; i++) {
+                    Desire d = desires.get(i);
                     if (d.getInjectionPoint() instanceof ConstructorParameterInjectionPoint) {
                         // this desire is a constructor argument so create it now
-                        Instantiator provider = providers.get(d);
+                        Instantiator provider = deps[i];
                         ConstructorParameterInjectionPoint cd = (ConstructorParameterInjectionPoint) d.getInjectionPoint();
                         logger.trace("Injection point satisfactions in progress {}", cd);
+                        String savedIP = null;
+                        if (logContext) {
+                            savedIP = LogContext.push(INJECTION_POINT_KEY, ipLabels[i]);
+                        }
                         try {
-                            ipContext.put("org.grouplens.grapht.injectionPoint", cd.toString());
+                            ctorArgs[cd.getParameterIndex()] = checkNull(cd, provider.instantiate());
                         } finally {
-                            ipContext.finish();
+                            if (logContext) {
+                                LogContext.pop(INJECTION_POINT_KEY, savedIP);
+                            }
                         }
-                        ctorArgs[cd.getParameterIndex()] = checkNull(cd, provider.instantiate());
                     }
                 }
                 logger.trace("Invoking constructor {} with arguments {}", ctor, ctorArgs);
-                ctor.setAccessible(true);
                 instance = ctor.newInstance(ctorArgs);
             } catch (InvocationTargetException e) {
                 throw new ConstructionException(ctor, "Constructor " + ctor + " failed", e);
@@ -123,60 +140,70 @@ public class ClassInstantiator implements Instantiator {
             // satisfy dependencies in the order of the list, which was
             // prepared to comply with JSR 330
             Map<Method, InjectionArgs> settersAndArguments = new HashMap<Method, InjectionArgs>();
-            for (Desire d : desires) {
-                LogContext ipContext = LogContext.create();
+            for (int i = 0; i < deps.length; i++) {
+                Desire d = desires.get(i);
+                String savedIP = null;
+                if (logContext) {
+                    savedIP = LogContext.push(INJECTION_POINT_KEY, ipLabels[i]);
+                }
                 try {
                     final InjectionStrategy injectionStrategy = InjectionStrategy.forInjectionPoint(d.getInjectionPoint());
-                    ipContext.put("org.grouplens.grapht.injectionPoint", d.getInjectionPoint().toString());
-                    injectionStrategy.inject(d.getInjectionPoint(), instance, providers.get(d), settersAndArguments);
+                    injectionStrategy.inject(d.getInjectionPoint(), instance, deps[i], settersAndArguments);
                 } finally {
-                    ipContext.finish();
+                    if (logContext) {
+                        LogContext.pop(INJECTION_POINT_KEY, savedIP);
+                    }
                 }
             }
         } finally {
-            globalLogContext.finish();
+            if (logContext) {
+                LogContext.pop(CLASS_KEY, savedClass);
+            }
         }
         if (manager != null) {
             manager.registerComponent(instance);
         }
 
-        methods = MethodUtils.getMethodsWithAnnotation(type, PostConstruct.class);
-        for(Method method:methods){
-            method.setAccessible(true);
-            try {
-                method.invoke(instance);
-            } catch (InvocationTargetException e) {
-                throw new ConstructionException("Exception throw by " + method, e);
-            } catch (IllegalAccessException e) {
-                throw new ConstructionException("Access violation invoking " + method, e);
-            }
-        }
+        ClassMetadata.forClass(type).getLifecyclePlan().postConstruct(instance);
 
         // the instance has been fully configured
         return instance;
     }
 
-    @SuppressWarnings("unchecked")
-    private Constructor<?> getConstructor() {
-        for (Desire d: desires) {
-            if (d.getInjectionPoint() instanceof ConstructorParameterInjectionPoint) {
-                // since we only allow one injectable constructor, any ConstructorParameterInjectionPoint
-                // will have the same constructor as all other constructor parameter injection points
-                Constructor<?> ctor = ((ConstructorParameterInjectionPoint) d.getInjectionPoint()).getMember();
-                logger.debug("Using constructor annotated with @Inject: {}", ctor);
-                return ctor;
+    private Instantiator[] getProviders() {
+        Instantiator[] ps = providers;
+        if (ps == null) {
+            ps = new Instantiator[desires.size()];
+            for (int i = 0; i < ps.length; i++) {
+                ps[i] = providerMap.get(desires.get(i));
             }
+            providers = ps;
         }
+        return ps;
+    }
 
-        try {
-            logger.debug("Using default constructor for {}", type);
-            return type.getDeclaredConstructor();
-        } catch (NoSuchMethodException e) {
-            // this constructor is being invoked for a ClassSatisfaction or a 
+    private String[] getLabels() {
+        String[] ls = labels;
+        if (ls == null) {
+            ls = new String[desires.size()];
+            for (int i = 0; i < ls.length; i++) {
+                ls[i] = desires.get(i).getInjectionPoint().toString();
+            }
+            labels = ls;
+        }
+        return ls;
+    }
+
+    private Constructor<?> getConstructor() {
+        Constructor<?> ctor = ClassMetadata.forClass(type).getConstructor();
+        if (ctor == null) {
+            // this constructor is being invoked for a ClassSatisfaction or a
             // ProviderClassSatisfaction, both of which assert that the type is
             // instantiable, so this should never happen
-            throw new RuntimeException("Unexpected exception", e);
+            throw new RuntimeException("Unexpected exception: no usable constructor for " + type);
         }
+        logger.debug("Using constructor {}", ctor);
+        return ctor;
     }
 
     static Object checkNull(InjectionPoint injectPoint, Object value) throws NullDependencyException {
@@ -0,0 +1,185 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.reflect.Desire;
+
+import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Method;
+import java.util.List;
+
+/**
+ * Cached injection metadata for a class: its dependency desires, the constructor used to
+ * instantiate it, and its lifecycle methods.  Metadata is computed once per class and shared by the
+ * solver, instantiators, and lifecycle manager.  It is stored with {@link ClassValue}, so it does
+ * not keep classes from being unloaded.
+ *
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class ClassMetadata {
+    private static final ClassValue<ClassMetadata> cache = new ClassValue<ClassMetadata>() {
+        @Override
+        protected ClassMetadata computeValue(Class<?> type) {
+            return new ClassMetadata(type);
+        }
+    };
+
+    private final Class<?> type;
+    private final LifecyclePlan lifecycle;
+    // Desires and constructors are computed on demand, since computing them can fail for classes
+    // that are never instantiated by injection (e.g. classes of pre-built instances).
+    private volatile List<Desire> desires;
+    private volatile Constructor<?> constructor;
+    private volatile boolean planCompiled;
+    private volatile InjectionPlan plan;
+
+    private ClassMetadata(Class<?> type) {
+        this.type = type;
+        lifecycle = LifecyclePlan.create(type);
+    }
+
+    /**
+     * Get the metadata for a class.
+     *
+     * @param type The class.
+     * @return The injection metadata for {@code type}.
+     */
+    @Nonnull
+    public static ClassMetadata forClass(@Nonnull Class<?> type) {
+        return cache.get(type);
+    }
+
+    /**
+     * Get the class this metadata describes.
+     * @return The class.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Get the desires that must be satisfied to instantiate the class.
+     *
+     * @return The dependency desires, in injection order.
+     * @throws org.grouplens.grapht.InvalidBindingException if the class has invalid injection points.
+     * @see ReflectionDesire#getDesires(Class)
+     */
+    @Nonnull
+    public List<Desire> getDesires() {
+        List<Desire> ds = desires;
+        if (ds == null) {
+            ds = ReflectionDesire.computeDesires(type);
+            desires = ds;
+        }
+        return ds;
+    }
+
+    /**
+     * Get the constructor used to instantiate the class.  This is the constructor annotated with
+     * {@link javax.inject.Inject}, if there is one, and the default constructor otherwise.  The
+     * constructor has been made accessible.
+     *
+     * @return The constructor, or {@code null} if the class has no usable constructor.
+     */
+    @Nullable
+    public Constructor<?> getConstructor() {
+        Constructor<?> ctor = constructor;
+        if (ctor == null) {
+            ctor = findConstructor();
+            if (ctor != null) {
+                ctor.setAccessible(true);
+                constructor = ctor;
+            }
+        }
+        return ctor;
+    }
+
+    /**
+     * Get the class's injection plan, compiling it if necessary.
+     *
+     * @return The injection plan, or {@code null} if the class cannot be injected with method
+     *         handles.
+     */
+    @Nullable
+    InjectionPlan getInjectionPlan() {
+        if (!planCompiled) {
+            // racing threads may each compile a plan; any of them will do
+            plan = InjectionPlan.compile(this);
+            planCompiled = true;
+        }
+        return plan;
+    }
+
+    private Constructor<?> findConstructor() {
+        for (Desire d: getDesires()) {
+            if (d.getInjectionPoint() instanceof ConstructorParameterInjectionPoint) {
+                // since we only allow one injectable constructor, any ConstructorParameterInjectionPoint
+                // will have the same constructor as all other constructor parameter injection points
+                return ((ConstructorParameterInjectionPoint) d.getInjectionPoint()).getMember();
+            }
+        }
+        try {
+            return type.getDeclaredConstructor();
+        } catch (NoSuchMethodException e) {
+            return null;
+        }
+    }
+
+    /**
+     * Get the class's lifecycle plan.
+     * @return The post-construct and teardown callbacks of the class.
+     */
+    @Nonnull
+    public LifecyclePlan getLifecyclePlan() {
+        return lifecycle;
+    }
+
+    /**
+     * Get the public methods annotated with {@link javax.annotation.PostConstruct}.  The methods
+     * have been made accessible.
+     * @return The post-construct methods, in invocation order.
+     * @see LifecyclePlan#getPostConstructMethods()
+     */
+    @Nonnull
+    public List<Method> getPostConstructMethods() {
+        return lifecycle.getPostConstructMethods();
+    }
+
+    /**
+     * Get the public methods annotated with {@link javax.annotation.PreDestroy}.  The methods
+     * have been made accessible.
+     * @return The pre-destroy methods, in invocation order.
+     * @see LifecyclePlan#getPreDestroyMethods()
+     */
+    @Nonnull
+    public List<Method> getPreDestroyMethods() {
+        return lifecycle.getPreDestroyMethods();
+    }
+
+    @Override
+    public String toString() {
+        return "ClassMetadata(" + type.getName() + ")";
+    }
+}
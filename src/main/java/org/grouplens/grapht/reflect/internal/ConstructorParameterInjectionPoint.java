@@ -47,6 +47,7 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
     private final transient Constructor<?> constructor;
     private final transient int paramIndex;
     private final transient AnnotationHelper annotations;
+    private final transient boolean nullable;
 
     /**
      * Create a ConstructorParameterInjectionPoint that wraps the given parameter index for the
@@ -65,6 +66,7 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
         constructor = ctor;
         paramIndex = pIndex;
         annotations = new AnnotationHelper(ctor.getParameterAnnotations()[pIndex]);
+        nullable = Types.hasNullableAnnotation(ctor.getParameterAnnotations()[pIndex]);
     }
 
     /**
@@ -85,7 +87,7 @@ public class ConstructorParameterInjectionPoint implements InjectionPoint, Seria
 
     @Override
     public boolean isNullable() {
-        return Types.hasNullableAnnotation(constructor.getParameterAnnotations()[paramIndex]);
+        return nullable;
     }
 
     @Override
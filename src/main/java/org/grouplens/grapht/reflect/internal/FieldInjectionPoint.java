@@ -44,6 +44,7 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
     // transient because we use a serialization proxy
     private final transient Field field;
     private final transient AnnotationHelper annotations;
+    private final transient boolean nullable;
 
     /**
      * Create an injection point wrapping the given field
@@ -55,6 +56,7 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
         Preconditions.notNull("field", field);
         this.field = field;
         annotations = new AnnotationHelper(field.getAnnotations());
+        nullable = Types.hasNullableAnnotation(field.getAnnotations());
     }
 
     @Override
@@ -92,7 +94,7 @@ public final class FieldInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean isNullable() {
-        return Types.hasNullableAnnotation(field.getAnnotations());
+        return nullable;
     }
 
     @Override
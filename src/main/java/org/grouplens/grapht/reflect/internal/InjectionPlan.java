@@ -0,0 +1,323 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.ConstructionException;
+import org.grouplens.grapht.Instantiator;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.util.LogContext;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * A class's injection plan compiled into method handles.  The plan is built once per class, and
+ * converts the class's constructor and injectable fields and methods into method handles with
+ * erased signatures, so that instantiating the class does no reflective lookup or access checking.
+ * Post-construct methods are invoked through the class's {@link LifecyclePlan}.
+ *
+ * @since 0.11
+ * @see MethodHandleInstantiator
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+final class InjectionPlan {
+    private static final Logger logger = LoggerFactory.getLogger(InjectionPlan.class);
+    private static final Object[] NO_ARGS = new Object[0];
+
+    private final Class<?> type;
+    private final List<Desire> desires;
+    private final Constructor<?> constructor;
+    /**
+     * The constructor, with signature {@code (Object[])Object}.
+     */
+    private final MethodHandle constructorHandle;
+    private final int constructorArity;
+    private final Step[] steps;
+    private final int setterCount;
+    private final LifecyclePlan lifecycle;
+
+    private InjectionPlan(Class<?> type, List<Desire> desires, Constructor<?> ctor,
+                          MethodHandle ctorHandle, Step[] steps, int setterCount,
+                          LifecyclePlan lifecycle) {
+        this.type = type;
+        this.desires = desires;
+        constructor = ctor;
+        constructorHandle = ctorHandle;
+        constructorArity = ctor.getParameterTypes().length;
+        this.steps = steps;
+        this.setterCount = setterCount;
+        this.lifecycle = lifecycle;
+    }
+
+    /**
+     * Compile the injection plan for a class.
+     *
+     * @param metadata The class's metadata.
+     * @return The injection plan, or {@code null} if the class cannot be injected with method
+     *         handles (in which case it must be instantiated reflectively).
+     */
+    @Nullable
+    static InjectionPlan compile(ClassMetadata metadata) {
+        Class<?> type = metadata.getType();
+        Constructor<?> ctor = metadata.getConstructor();
+        if (ctor == null) {
+            return null;
+        }
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        try {
+            int arity = ctor.getParameterTypes().length;
+            MethodHandle ctorHandle = lookup.unreflectConstructor(ctor)
+                                            .asType(MethodType.genericMethodType(arity))
+                                            .asSpreader(Object[].class, arity);
+
+            List<Desire> desires = metadata.getDesires();
+            Step[] steps = new Step[desires.size()];
+            Map<Method, Step> setters = new HashMap<Method, Step>();
+            int setterCount = 0;
+            for (int i = 0; i < steps.length; i++) {
+                InjectionPoint ip = desires.get(i).getInjectionPoint();
+                if (ip instanceof ConstructorParameterInjectionPoint) {
+                    int idx = ((ConstructorParameterInjectionPoint) ip).getParameterIndex();
+                    steps[i] = new Step(StepKind.CONSTRUCTOR, ip, idx, null, null);
+                } else if (ip instanceof FieldInjectionPoint) {
+                    Field field = ((FieldInjectionPoint) ip).getMember();
+                    field.setAccessible(true);
+                    MethodHandle h = lookup.unreflectSetter(field)
+                                           .asType(MethodType.methodType(void.class, Object.class, Object.class));
+                    steps[i] = new Step(StepKind.FIELD, ip, 0, h, field);
+                } else if (ip instanceof SetterInjectionPoint) {
+                    SetterInjectionPoint sip = (SetterInjectionPoint) ip;
+                    Method setter = sip.getMember();
+                    Step first = setters.get(setter);
+                    MethodHandle h;
+                    int slot;
+                    if (first == null) {
+                        int n = setter.getParameterTypes().length;
+                        setter.setAccessible(true);
+                        h = lookup.unreflect(setter)
+                                  .asType(MethodType.genericMethodType(n + 1).changeReturnType(void.class))
+                                  .asSpreader(Object[].class, n);
+                        slot = setterCount++;
+                    } else {
+                        h = first.handle;
+                        slot = first.index;
+                    }
+                    Step step = new Step(StepKind.SETTER, ip, slot, h, setter);
+                    step.parameter = sip.getParameterIndex();
+                    if (first == null) {
+                        setters.put(setter, step);
+                    }
+                    steps[i] = step;
+                } else if (ip instanceof NoArgumentInjectionPoint) {
+                    Method method = ((NoArgumentInjectionPoint) ip).getMember();
+                    method.setAccessible(true);
+                    MethodHandle h = lookup.unreflect(method)
+                                           .asType(MethodType.methodType(void.class, Object.class));
+                    steps[i] = new Step(StepKind.NO_ARGUMENT, ip, 0, h, method);
+                } else {
+                    steps[i] = new Step(StepKind.NONE, ip, 0, null, null);
+                }
+            }
+            // a setter is invoked by the last of its parameters' steps
+            Set<Method> seen = new HashSet<Method>();
+            for (int i = steps.length - 1; i >= 0; i--) {
+                Step step = steps[i];
+                if (step.kind == StepKind.SETTER && seen.add((Method) step.member)) {
+                    step.invokes = true;
+                }
+            }
+
+            return new InjectionPlan(type, desires, ctor, ctorHandle, steps, setterCount,
+                                     metadata.getLifecyclePlan());
+        } catch (IllegalAccessException e) {
+            logger.debug("cannot compile injection plan for {}, using reflection: {}", type, e);
+            return null;
+        } catch (SecurityException e) {
+            logger.debug("cannot compile injection plan for {}, using reflection: {}", type, e);
+            return null;
+        }
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    List<Desire> getDesires() {
+        return desires;
+    }
+
+    /**
+     * Execute the plan to create an instance.
+     *
+     * @param providers The instantiators for the plan's desires, in desire order.
+     * @param logContext Whether to record each injection point in the MDC while it is injected.
+     * @return The new instance.  Post-construct methods have not yet been invoked.
+     * @throws ConstructionException if there is an error creating or injecting the instance.
+     */
+    Object instantiate(Instantiator[] providers, boolean logContext) throws ConstructionException {
+        Object[] ctorArgs = constructorArity == 0 ? NO_ARGS : new Object[constructorArity];
+        for (int i = 0; i < steps.length; i++) {
+            Step step = steps[i];
+            if (step.kind == StepKind.CONSTRUCTOR) {
+                String saved = null;
+                if (logContext) {
+                    saved = LogContext.push(ClassInstantiator.INJECTION_POINT_KEY, step.label);
+                }
+                try {
+                    ctorArgs[step.index] = ClassInstantiator.checkNull(step.injectionPoint,
+                                                                       providers[i].instantiate());
+                } finally {
+                    if (logContext) {
+                        LogContext.pop(ClassInstantiator.INJECTION_POINT_KEY, saved);
+                    }
+                }
+            }
+        }
+
+        Object instance;
+        try {
+            instance = (Object) constructorHandle.invokeExact(ctorArgs);
+        } catch (Throwable th) {
+            throw new ConstructionException(constructor, "Constructor " + constructor + " failed", th);
+        }
+
+        Object[][] setterArgs = setterCount == 0 ? null : new Object[setterCount][];
+        for (int i = 0; i < steps.length; i++) {
+            Step step = steps[i];
+            if (logContext && step.kind != StepKind.CONSTRUCTOR && step.kind != StepKind.NONE) {
+                String saved = LogContext.push(ClassInstantiator.INJECTION_POINT_KEY, step.label);
+                try {
+                    inject(instance, step, providers[i], setterArgs);
+                } finally {
+                    LogContext.pop(ClassInstantiator.INJECTION_POINT_KEY, saved);
+                }
+            } else {
+                inject(instance, step, providers[i], setterArgs);
+            }
+        }
+        return instance;
+    }
+
+    /**
+     * Inject a field, setter or no-argument method step into an instance.
+     */
+    private static void inject(Object instance, Step step, Instantiator provider,
+                               Object[][] setterArgs) throws ConstructionException {
+        switch (step.kind) {
+        case FIELD: {
+            Object value = ClassInstantiator.checkNull(step.injectionPoint, provider.instantiate());
+            try {
+                step.handle.invokeExact(instance, value);
+            } catch (Throwable th) {
+                throw new ConstructionException(step.injectionPoint, th);
+            }
+            break;
+        }
+        case SETTER: {
+            Object[] args = setterArgs[step.index];
+            if (args == null) {
+                args = new Object[((Method) step.member).getParameterTypes().length];
+                setterArgs[step.index] = args;
+            }
+            args[step.parameter] = ClassInstantiator.checkNull(step.injectionPoint,
+                                                               provider.instantiate());
+            if (step.invokes) {
+                try {
+                    step.handle.invokeExact(instance, args);
+                } catch (Throwable th) {
+                    String target = args.length == 1 ? step.injectionPoint.toString() : step.member.toString();
+                    throw new ConstructionException(step.injectionPoint, "Exception thrown by " + target, th);
+                }
+            }
+            break;
+        }
+        case NO_ARGUMENT:
+            try {
+                step.handle.invokeExact(instance);
+            } catch (Throwable th) {
+                throw new ConstructionException(step.injectionPoint, "Exception throw by " + step.member, th);
+            }
+            break;
+        default:
+            break;
+        }
+    }
+
+    /**
+     * Invoke the post-construct methods on an instance.
+     * @param instance The instance.
+     * @throws ConstructionException if a post-construct method fails.
+     */
+    void postConstruct(Object instance) throws ConstructionException {
+        lifecycle.postConstruct(instance);
+    }
+
+    private static enum StepKind {
+        CONSTRUCTOR, FIELD, SETTER, NO_ARGUMENT, NONE
+    }
+
+    /**
+     * A step of the plan, injecting one desire.
+     */
+    private static final class Step {
+        final StepKind kind;
+        final InjectionPoint injectionPoint;
+        /**
+         * The injection point's label, recorded in the MDC.
+         */
+        final String label;
+        /**
+         * The constructor argument index, or the argument slot for setters.
+         */
+        final int index;
+        final MethodHandle handle;
+        final Object member;
+        /**
+         * The setter parameter this step fills in.
+         */
+        int parameter;
+        /**
+         * Whether this step fills the last parameter of its setter, and so invokes it.
+         */
+        boolean invokes;
+
+        Step(StepKind kind, InjectionPoint ip, int index, MethodHandle handle, Object member) {
+            this.kind = kind;
+            injectionPoint = ip;
+            label = ip.toString();
+            this.index = index;
+            this.handle = handle;
+            this.member = member;
+        }
+    }
+}
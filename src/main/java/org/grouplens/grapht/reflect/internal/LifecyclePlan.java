@@ -0,0 +1,266 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.apache.commons.lang3.reflect.MethodUtils;
+import org.grouplens.grapht.ConstructionException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nonnull;
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.annotation.concurrent.Immutable;
+import java.lang.annotation.Annotation;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.*;
+
+/**
+ * A class's lifecycle callbacks: its {@link PostConstruct} and {@link PreDestroy} methods, and
+ * whether it is {@link AutoCloseable}.  The plan is computed once per class (see
+ * {@link ClassMetadata#getLifecyclePlan()}), so creating and registering components does no
+ * reflective scan of the class hierarchy.  Callbacks are invoked through method handles.
+ *
+ * <p>Post-construct methods are invoked in superclass-first order, so a class's setup can rely
+ * on its superclass's; pre-destroy methods are invoked subclass-first.  Methods declared by the
+ * same class are ordered by name.
+ *
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@Immutable
+public final class LifecyclePlan {
+    private static final Logger logger = LoggerFactory.getLogger(LifecyclePlan.class);
+    private static final MethodType CALLBACK_TYPE = MethodType.methodType(void.class, Object.class);
+
+    private final Class<?> type;
+    private final List<Method> postConstructMethods;
+    private final MethodHandle[] postConstructHandles;
+    private final List<Method> preDestroyMethods;
+    private final MethodHandle[] preDestroyHandles;
+    private final boolean closeable;
+
+    private LifecyclePlan(Class<?> type) {
+        this.type = type;
+        postConstructMethods = findMethods(type, PostConstruct.class, false);
+        postConstructHandles = makeHandles(postConstructMethods);
+        preDestroyMethods = findMethods(type, PreDestroy.class, true);
+        preDestroyHandles = makeHandles(preDestroyMethods);
+        closeable = AutoCloseable.class.isAssignableFrom(type);
+    }
+
+    /**
+     * Compute the lifecycle plan of a class.  Use {@link ClassMetadata#getLifecyclePlan()} to get
+     * the cached plan.
+     *
+     * @param type The class.
+     * @return The lifecycle plan.
+     */
+    static LifecyclePlan create(Class<?> type) {
+        return new LifecyclePlan(type);
+    }
+
+    /**
+     * Get the plan for a class.
+     *
+     * @param type The class.
+     * @return The class's cached lifecycle plan.
+     */
+    @Nonnull
+    public static LifecyclePlan forClass(@Nonnull Class<?> type) {
+        return ClassMetadata.forClass(type).getLifecyclePlan();
+    }
+
+    /**
+     * Get the class this plan describes.
+     * @return The class.
+     */
+    public Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * Get the post-construct methods.  They are public and have been made accessible.
+     * @return The post-construct methods, in invocation order.
+     */
+    @Nonnull
+    public List<Method> getPostConstructMethods() {
+        return postConstructMethods;
+    }
+
+    /**
+     * Get the pre-destroy methods.  They are public and have been made accessible.
+     * @return The pre-destroy methods, in invocation order.
+     */
+    @Nonnull
+    public List<Method> getPreDestroyMethods() {
+        return preDestroyMethods;
+    }
+
+    /**
+     * Query whether instances of the class are {@link AutoCloseable}.
+     * @return {@code true} if instances should be closed when they are torn down.
+     */
+    public boolean isAutoCloseable() {
+        return closeable;
+    }
+
+    /**
+     * Query whether instances of the class need any teardown.  Components that do not need not
+     * be registered for teardown at all.
+     *
+     * @return {@code true} if the class is {@link AutoCloseable} or has pre-destroy methods.
+     */
+    public boolean hasTeardown() {
+        return closeable || preDestroyHandles.length > 0;
+    }
+
+    /**
+     * Invoke the post-construct methods on an instance.
+     *
+     * @param instance The instance.
+     * @throws ConstructionException if a post-construct method fails.
+     */
+    public void postConstruct(Object instance) throws ConstructionException {
+        for (int i = 0; i < postConstructHandles.length; i++) {
+            try {
+                invoke(postConstructHandles[i], postConstructMethods.get(i), instance);
+            } catch (Throwable th) {
+                throw new ConstructionException("Exception throw by " + postConstructMethods.get(i), th);
+            }
+        }
+    }
+
+    /**
+     * Tear down an instance: close it, if it is {@link AutoCloseable}, and invoke its pre-destroy
+     * methods.  Every step is attempted even if earlier ones fail.
+     *
+     * @param instance The instance.
+     * @throws Exception the first failure, with any later failures suppressed.
+     */
+    public void tearDown(Object instance) throws Exception {
+        Exception error = null;
+        if (closeable) {
+            try {
+                logger.debug("closing {}", instance);
+                ((AutoCloseable) instance).close();
+            } catch (Exception e) {
+                error = e;
+            }
+        }
+        for (int i = 0; i < preDestroyHandles.length; i++) {
+            Method method = preDestroyMethods.get(i);
+            try {
+                logger.debug("invoking pre-destroy method {} on {}", method, instance);
+                invoke(preDestroyHandles[i], method, instance);
+            } catch (Throwable th) {
+                Exception ex = new InvocationTargetException(th, "error invoking " + method);
+                if (error == null) {
+                    error = ex;
+                } else {
+                    error.addSuppressed(ex);
+                }
+            }
+        }
+        if (error != null) {
+            throw error;
+        }
+    }
+
+    private static void invoke(MethodHandle handle, Method method, Object instance) throws Throwable {
+        if (handle != null) {
+            handle.invokeExact(instance);
+        } else {
+            try {
+                method.invoke(instance);
+            } catch (InvocationTargetException e) {
+                throw e.getCause();
+            }
+        }
+    }
+
+    private static List<Method> findMethods(Class<?> type, Class<? extends Annotation> annot,
+                                            boolean subclassFirst) {
+        Method[] methods = MethodUtils.getMethodsWithAnnotation(type, annot);
+        if (methods.length == 0) {
+            return Collections.emptyList();
+        }
+        List<Method> list = new ArrayList<Method>(Arrays.asList(methods));
+        Collections.sort(list, new MethodOrder(subclassFirst));
+        for (Method m: list) {
+            m.setAccessible(true);
+        }
+        return Collections.unmodifiableList(list);
+    }
+
+    /**
+     * Make method handles of signature {@code (Object)void} for callbacks.
+     *
+     * @return The method handles; a handle is {@code null} if its method cannot be unreflected,
+     *         in which case it is invoked reflectively.
+     */
+    private static MethodHandle[] makeHandles(List<Method> methods) {
+        MethodHandles.Lookup lookup = MethodHandles.lookup();
+        MethodHandle[] handles = new MethodHandle[methods.size()];
+        for (int i = 0; i < handles.length; i++) {
+            try {
+                handles[i] = lookup.unreflect(methods.get(i)).asType(CALLBACK_TYPE);
+            } catch (IllegalAccessException e) {
+                logger.debug("cannot make handle for {}, using reflection: {}", methods.get(i), e);
+            }
+        }
+        return handles;
+    }
+
+    /**
+     * Orders methods by the depth of their declaring class, then by name.
+     */
+    private static class MethodOrder implements Comparator<Method> {
+        private final boolean subclassFirst;
+
+        MethodOrder(boolean subclassFirst) {
+            this.subclassFirst = subclassFirst;
+        }
+
+        @Override
+        public int compare(Method m1, Method m2) {
+            int cmp = depth(m1.getDeclaringClass()) - depth(m2.getDeclaringClass());
+            if (subclassFirst) {
+                cmp = -cmp;
+            }
+            if (cmp == 0) {
+                cmp = m1.getName().compareTo(m2.getName());
+            }
+            return cmp;
+        }
+
+        private static int depth(Class<?> cls) {
+            int depth = 0;
+            for (Class<?> c = cls.getSuperclass(); c != null; c = c.getSuperclass()) {
+                depth++;
+            }
+            return depth;
+        }
+    }
+}
@@ -53,8 +53,19 @@ public class ReflectionDesire implements Desire, Serializable {
      * @param type The class type whose dependencies will be queried
      * @return The dependency desires for the given type
      * @throws NullPointerException if the type is null
+     * @see ClassMetadata#getDesires()
      */
     public static List<Desire> getDesires(Class<?> type) {
+        return ClassMetadata.forClass(type).getDesires();
+    }
+
+    /**
+     * Scan a type for its desires.  This is uncached; use {@link #getDesires(Class)}.
+     *
+     * @param type The class type whose dependency desires will be computed.
+     * @return The dependency desires for the given type.
+     */
+    static List<Desire> computeDesires(Class<?> type) {
         List<Desire> desires = Lists.newArrayList();
 
         boolean ctorFound = false;
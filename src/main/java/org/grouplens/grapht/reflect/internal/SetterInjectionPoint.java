@@ -46,6 +46,7 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
     private final transient Method setter;
     private final transient int parameter;
     private final transient AnnotationHelper annotations;
+    private final transient boolean nullable;
 
     /**
      * Create a SetterInjectionPoint that wraps the given setter method.
@@ -58,6 +59,9 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
         Preconditions.inRange(parameter, 0, setter.getParameterTypes().length);
 
         this.annotations = new AnnotationHelper(setter.getParameterAnnotations()[parameter]);
+        // we'll check both setter and parameter annotations
+        nullable = Types.hasNullableAnnotation(setter.getAnnotations()) ||
+                   Types.hasNullableAnnotation(setter.getParameterAnnotations()[parameter]);
         this.setter = setter;
         this.parameter = parameter;
     }
@@ -80,9 +84,7 @@ public class SetterInjectionPoint implements InjectionPoint, Serializable {
 
     @Override
     public boolean isNullable() {
-        // we'll check both setter and parameter annotations
-        return Types.hasNullableAnnotation(setter.getAnnotations()) ||
-               Types.hasNullableAnnotation(setter.getParameterAnnotations()[parameter]);
+        return nullable;
     }
 
     @Override
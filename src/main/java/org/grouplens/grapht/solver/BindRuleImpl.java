@@ -122,6 +122,15 @@ final class BindRuleImpl implements BindRule, Serializable {
         Preconditions.isAssignable(this.depType, this.implType);
     }
 
+    /**
+     * Get the dependency type this rule matches.
+     *
+     * @return The (boxed) type of desires matched by this bind rule.
+     */
+    public Class<?> getDependencyType() {
+        return depType;
+    }
+
     /**
      * Get the rule's qualifier matcher.
      *
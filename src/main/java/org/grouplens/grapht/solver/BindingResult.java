@@ -23,6 +23,7 @@ import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.util.Preconditions;
 
+import javax.annotation.Nullable;
 import java.util.EnumSet;
 
 /**
@@ -36,21 +37,25 @@ public class BindingResult {
     private final Desire desire;
     private final CachePolicy policy;
     private final EnumSet<BindingFlag> flags;
+    @Nullable
+    private final BindRule rule;
 
     /**
      * Create a new result that wraps the given Desire.
      * 
      * @param desire The resultant desire from a BindingFunction
      * @param policy The CachePolicy for this binding
+     * @param rule The bind rule that produced the binding, if any
      * @throws NullPointerException if desire or policy is null
      */
-    BindingResult(Desire desire, CachePolicy policy, EnumSet<BindingFlag> flags) {
+    BindingResult(Desire desire, CachePolicy policy, EnumSet<BindingFlag> flags, @Nullable BindRule rule) {
         Preconditions.notNull("desire", desire);
         Preconditions.notNull("policy", policy);
         
         this.policy = policy;
         this.desire = desire;
         this.flags = flags.clone();
+        this.rule = rule;
     }
 
     public static Builder newBuilder() {
@@ -77,6 +82,16 @@ public class BindingResult {
         return policy;
     }
 
+    /**
+     * Get the bind rule that produced this result.
+     * @return The bind rule that produced this binding, or {@code null} if it was not produced
+     *         by a bind rule.
+     */
+    @Nullable
+    public BindRule getBindRule() {
+        return rule;
+    }
+
     /**
      * Query if the binding result is fixed.
      * @return {@code true} if the resulting satisfaction should refuse to be rewritten.
@@ -113,6 +128,7 @@ public class BindingResult {
         private Desire desire;
         private CachePolicy policy;
         private EnumSet<BindingFlag> flags = BindingFlag.emptySet();
+        private BindRule rule;
 
         private Builder() {}
 
@@ -136,10 +152,15 @@ public class BindingResult {
             return this;
         }
 
+        public Builder setBindRule(BindRule rule) {
+            this.rule = rule;
+            return this;
+        }
+
         public BindingResult build() {
             com.google.common.base.Preconditions.checkState(desire != null, "no desire set");
             com.google.common.base.Preconditions.checkState(policy != null, "no policy set");
-            return new BindingResult(desire, policy, flags);
+            return new BindingResult(desire, policy, flags, rule);
         }
     }
 }
@@ -0,0 +1,48 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import org.grouplens.grapht.context.ContextMatcher;
+
+import javax.annotation.Nullable;
+import java.util.Collection;
+
+/**
+ * A binding function that can report how its bindings depend on the injection context.  The
+ * dependency solver uses this to reuse the resolution of a dependency subtree in every context
+ * that the binding functions cannot tell apart.  Binding functions that do not implement this
+ * interface are assumed to depend arbitrarily on the context.
+ *
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public interface ContextAwareBindingFunction extends BindingFunction {
+    /**
+     * Get the context matchers whose results on the context can affect the binding of a desire.
+     * The result of {@link #bind(InjectionContext, DesireChain)} for {@code desire} must depend
+     * on the context only through the matches these matchers produce.
+     *
+     * @param desire The desire chain to be bound.
+     * @return The context matchers, empty if the binding does not depend on the context, or
+     *         {@code null} if the binding depends on the context in some other way.
+     */
+    @Nullable
+    Collection<? extends ContextMatcher> getContextMatchers(DesireChain desire);
+}
@@ -19,9 +19,13 @@
  */
 package org.grouplens.grapht.solver;
 
+import com.google.common.base.Charsets;
+import com.google.common.hash.Hasher;
+import com.google.common.io.ByteStreams;
 import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.ResolutionException;
 import org.grouplens.grapht.annotation.*;
+import org.grouplens.grapht.context.ContextMatcher;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.Qualifiers;
 import org.grouplens.grapht.reflect.Satisfaction;
@@ -36,7 +40,11 @@ import java.io.IOException;
 import java.io.InputStream;
 import java.lang.annotation.Annotation;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
@@ -48,7 +56,7 @@ import java.util.Properties;
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
-public class DefaultDesireBindingFunction implements BindingFunction {
+public class DefaultDesireBindingFunction implements ContextAwareBindingFunction, ThreadSafeBindingFunction {
     private static final String META_INF_DEFAULTS = "META-INF/grapht/defaults/";
     private final Logger logger = LoggerFactory.getLogger(DefaultDesireBindingFunction.class);
     private final ClassLoader classLoader;
@@ -75,6 +83,15 @@ public class DefaultDesireBindingFunction implements BindingFunction {
         return create(null);
     }
     
+    /**
+     * {@inheritDoc}
+     * <p>This function does not consult the context, so there are no matchers.</p>
+     */
+    @Override
+    public Collection<? extends ContextMatcher> getContextMatchers(DesireChain desire) {
+        return Collections.emptyList();
+    }
+
     @Override
     public BindingResult bind(InjectionContext context, DesireChain dchain) throws ResolutionException {
         Desire desire = dchain.getCurrentDesire();
@@ -279,4 +296,38 @@ public class DefaultDesireBindingFunction implements BindingFunction {
         }
         return result;
     }
+
+    /**
+     * Add the inputs this function consults to bind a type to a hash: the type's annotations
+     * (such as {@link DefaultImplementation}, or {@link AllowUnqualifiedMatch} on a qualifier)
+     * and its {@code META-INF/grapht/defaults} resource.  If these change, so may the type's
+     * default binding.
+     *
+     * @param type The type.
+     * @param loader The class loader to search for the defaults resource.
+     * @param hasher The hasher to add the inputs to.
+     * @throws IOException if the defaults resource cannot be read.
+     */
+    static void hashDefaults(Class<?> type, ClassLoader loader, Hasher hasher) throws IOException {
+        hasher.putString(type.getName(), Charsets.UTF_8);
+        List<String> annotations = new ArrayList<String>();
+        for (Annotation annot: type.getAnnotations()) {
+            annotations.add(annot.toString());
+        }
+        Collections.sort(annotations);
+        for (String annot: annotations) {
+            hasher.putInt(annot.length()).putString(annot, Charsets.UTF_8);
+        }
+        String name = type.getCanonicalName();
+        URL url = name == null ? null : loader.getResource(META_INF_DEFAULTS + name + ".properties");
+        if (url != null) {
+            InputStream istr = url.openStream();
+            try {
+                hasher.putBytes(ByteStreams.toByteArray(istr));
+            } finally {
+                istr.close();
+            }
+        }
+        hasher.putInt(0);
+    }
 }
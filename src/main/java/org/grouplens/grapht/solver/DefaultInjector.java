@@ -20,11 +20,15 @@
 package org.grouplens.grapht.solver;
 
 import com.google.common.base.Predicate;
+import com.google.common.collect.ImmutableList;
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.*;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -32,6 +36,14 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import javax.annotation.concurrent.ThreadSafe;
 import java.lang.annotation.Annotation;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * <p>
@@ -50,6 +62,32 @@ public class DefaultInjector implements Injector {
     private final DependencySolver solver;
     private final InjectionContainer instantiator;
     private final LifecycleManager manager;
+    /**
+     * Instantiators for desires that have already been resolved (and, with eager
+     * initialization, whose components have been built).  Reads of this map are lock-free.
+     */
+    private final ConcurrentMap<Desire, Instantiator> resolvedInstantiators =
+            new ConcurrentHashMap<Desire, Instantiator>();
+    /**
+     * Lock guarding the solver.
+     */
+    private final Lock resolveLock = new ReentrantLock();
+    private final boolean eagerInitialization;
+    @Nullable
+    private final ExecutorService initExecutor;
+    private final List<ComponentBuildTime> buildTimes =
+            new CopyOnWriteArrayList<ComponentBuildTime>();
+    @Nullable
+    private final GraphCache graphCache;
+    /**
+     * Whether the solver's graph has changed since it was last stored in the graph cache.
+     * Guarded by {@link #resolveLock}.
+     */
+    private boolean graphCacheDirty;
+    /**
+     * Lock serializing graph cache writes, so an older graph never replaces a newer one.
+     */
+    private final Lock flushLock = new ReentrantLock();
 
     /**
      * <p>
@@ -103,18 +141,145 @@ public class DefaultInjector implements Injector {
      * @throws NullPointerException if spi or functions are null
      */
     public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, InstantiatorBackend.REFLECTION, functions);
+    }
+
+    /**
+     * Create a new DefaultInjector with a specific instantiator backend.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate class satisfactions
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, or if
+     *             defaultPolicy is NO_PREFERENCE
+     * @see #DefaultInjector(CachePolicy, int, BindingFunction...)
+     * @since 0.11
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiatorBackend backend,
+                           BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, backend, 0, functions);
+    }
+
+    /**
+     * Create a new DefaultInjector that eagerly initializes memoized components.  When a desire
+     * is first resolved, all memoized components in its graph are instantiated before it is
+     * returned, with independent components built concurrently.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate class satisfactions
+     * @param initThreads The number of threads for eager initialization.  If 0, components are
+     *                    instantiated lazily; if 1, eager initialization runs in the thread
+     *                    resolving the desire.
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, initThreads is negative, or
+     *             defaultPolicy is NO_PREFERENCE
+     * @see #getBuildTimes()
+     * @since 0.11
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiatorBackend backend,
+                           int initThreads, BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, backend, initThreads, null, functions);
+    }
+
+    /**
+     * Create a new DefaultInjector that caches its dependency graph on disk.  If the cache holds
+     * a usable graph, the injector starts with that graph, and only solves desires that it does
+     * not already contain; whenever the injector solves a desire, it stores the updated graph in
+     * the cache.  The cache's fingerprint must identify the binding functions, since the injector
+     * trusts any graph it loads.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate class satisfactions
+     * @param initThreads The number of threads for eager initialization.
+     * @param cache The graph cache, or {@code null} to always solve graphs from scratch.  The
+     *              solved graph is stored in it by {@link #flushGraphCache()} and {@link #close()}.
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, initThreads is negative, or
+     *             defaultPolicy is NO_PREFERENCE
+     * @see #DefaultInjector(CachePolicy, int, InstantiatorBackend, int, BindingFunction...)
+     * @since 0.11
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiatorBackend backend,
+                           int initThreads, @Nullable GraphCache cache,
+                           BindingFunction... functions) {
+        this(defaultPolicy, maxDepth, backend, initThreads, cache, new LifecycleManager(), functions);
+    }
+
+    /**
+     * Create a new DefaultInjector with a specific lifecycle manager, which tears down the
+     * injector's components when it is closed.
+     *
+     * @param defaultPolicy The CachePolicy used in place of NO_PREFERENCE
+     * @param maxDepth The maximum depth of the dependency hierarchy
+     * @param backend The backend used to instantiate class satisfactions
+     * @param initThreads The number of threads for eager initialization.
+     * @param cache The graph cache, or {@code null} to always solve graphs from scratch.  The
+     *              solved graph is stored in it by {@link #flushGraphCache()} and {@link #close()}.
+     * @param manager The lifecycle manager for the injector's components.
+     * @param functions The BindingFunctions to use, ordered with highest
+     *            priority functions first
+     * @throws IllegalArgumentException if maxDepth is less than 1, initThreads is negative, or
+     *             defaultPolicy is NO_PREFERENCE
+     * @see #getTeardownTimes()
+     * @since 0.11
+     */
+    public DefaultInjector(CachePolicy defaultPolicy, int maxDepth, InstantiatorBackend backend,
+                           int initThreads, @Nullable GraphCache cache, LifecycleManager manager,
+                           BindingFunction... functions) {
+        Preconditions.notNull("lifecycle manager", manager);
+        if (initThreads < 0) {
+            throw new IllegalArgumentException("initialization thread count cannot be negative");
+        }
         if (defaultPolicy.equals(CachePolicy.NO_PREFERENCE)) {
             throw new IllegalArgumentException("Default CachePolicy cannot be NO_PREFERENCE");
         }
 
-        solver = DependencySolver.newBuilder()
-                                 .addBindingFunctions(functions)
-                                 .setMaxDepth(maxDepth)
-                                 .build();
-        manager = new LifecycleManager();
-        instantiator = InjectionContainer.create(defaultPolicy, manager);
+        DependencySolverBuilder bld = DependencySolver.newBuilder()
+                                                      .addBindingFunctions(functions)
+                                                      .setMaxDepth(maxDepth);
+        if (cache != null) {
+            Pair<DAGNode<Component,Dependency>,
+                 SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> cached = cache.load();
+            if (cached != null) {
+                bld.setInitialGraph(cached.getLeft(), cached.getRight());
+            }
+        }
+        solver = bld.build();
+        graphCache = cache;
+        this.manager = manager;
+        instantiator = InjectionContainer.create(defaultPolicy, manager, backend);
+        eagerInitialization = initThreads > 0;
+        initExecutor = initThreads > 1 ? new ForkJoinPool(initThreads) : null;
     }
     
+    /**
+     * Get the build times of components that have been eagerly initialized.
+     *
+     * @return The build times of eagerly-initialized components, in the order they were built.
+     *         This is empty unless eager initialization is enabled.
+     * @since 0.11
+     */
+    public List<ComponentBuildTime> getBuildTimes() {
+        return ImmutableList.copyOf(buildTimes);
+    }
+
+    /**
+     * Get the teardown times of components that have been torn down.
+     *
+     * @return The teardown times of the injector's components; empty until the injector is closed.
+     * @see LifecycleManager#getTeardownTimes()
+     * @since 0.11
+     */
+    public List<ComponentTeardownTime> getTeardownTimes() {
+        return manager.getTeardownTimes();
+    }
+
     /**
      * @return The DependencySolver backing this injector
      */
@@ -144,11 +309,54 @@ public class DefaultInjector implements Injector {
         return type.cast(obj);
     }
 
+    @Nonnull
+    @Override
+    public <T> InjectionHandle<T> getHandle(Class<T> type) throws InjectionException {
+        return getHandle(null, type);
+    }
+
+    @Nonnull
+    @Override
+    public <T> InjectionHandle<T> getHandle(Annotation qualifier, Class<T> type) throws InjectionException {
+        Desire desire = Desires.create(qualifier, type, false);
+        Instantiator inst = resolvedInstantiators.get(desire);
+        if (inst == null) {
+            inst = resolveInstantiator(desire);
+        }
+        return new InjectionHandle<T>(type, inst);
+    }
+
     private Object getInstance(Desire desire) throws InjectionException {
-        // All Provider cache access, graph resolution, etc. occur
-        // within this exclusive lock so we know everything is thread safe
-        // albeit in a non-optimal way.
-        synchronized(this) {
+        // Once a desire has been resolved, its instantiator is immutable and thread-safe, so
+        // the common case of re-requesting a component does not need the injector's lock.
+        Instantiator inst = resolvedInstantiators.get(desire);
+        if (inst == null) {
+            inst = resolveInstantiator(desire);
+        }
+        return inst.instantiate();
+    }
+
+    /**
+     * Resolve a desire and build its instantiator.  Graph resolution occurs within an exclusive
+     * lock, since the solver is not safe for concurrent use; the instantiator is built, and
+     * eagerly initialized, outside it, so slow constructors do not hold up other resolutions.
+     *
+     * @param desire The desire to resolve.
+     * @return The instantiator for the desire.
+     * @throws ResolutionException if the desire cannot be resolved.
+     * @throws ConstructionException if eager initialization fails.
+     */
+    private Instantiator resolveInstantiator(Desire desire) throws InjectionException {
+        DAGNode<Component, Dependency> resolvedNode;
+        SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges;
+        resolveLock.lock();
+        try {
+            // another thread may have resolved it while we were waiting for the lock
+            Instantiator inst = resolvedInstantiators.get(desire);
+            if (inst != null) {
+                return inst;
+            }
+
             Predicate<Dependency> pred = Dependency.hasInitialDesire(desire);
 
             // check if the desire is already in the graph
@@ -162,18 +370,81 @@ public class DefaultInjector implements Injector {
                 logger.info("Must resolve desire: {}", desire);
                 solver.resolve(desire);
                 resolved = solver.getGraph().getOutgoingEdgeWithLabel(pred);
+                // the graph is written to the cache on flush or close, not after every root
+                graphCacheDirty = graphCache != null;
             }
+            resolvedNode = resolved.getTail();
+            backEdges = solver.getBackEdges();
+        } finally {
+            resolveLock.unlock();
+        }
 
-            // Check if the provider for the resolved node is in our cache
-            DAGNode<Component, Dependency> resolvedNode = resolved.getTail();
-            return instantiator.makeInstantiator(resolvedNode, solver.getBackEdges()).instantiate();
+        // The container shares instantiators by node, so threads racing to resolve the same
+        // desire get the same instantiator, and memoized components are built only once.
+        Instantiator inst = instantiator.makeInstantiator(resolvedNode, backEdges);
+        if (eagerInitialization) {
+            buildTimes.addAll(instantiator.initialize(resolvedNode, backEdges, initExecutor));
+        }
+        Instantiator existing = resolvedInstantiators.putIfAbsent(desire, inst);
+        return existing == null ? inst : existing;
+    }
+
+    /**
+     * Store the dependency graph solved so far in the graph cache, if there is one and the graph
+     * has changed since it was last stored.  The graph is written outside the solver lock, so
+     * other threads can keep resolving while it is written.  This is done automatically when the
+     * injector is closed; call it earlier to save the graph once startup is complete.
+     *
+     * @return {@code true} if the graph was stored.
+     * @since 0.11
+     */
+    public boolean flushGraphCache() {
+        if (graphCache == null) {
+            return false;
+        }
+        flushLock.lock();
+        try {
+            DAGNode<Component, Dependency> graph;
+            SetMultimap<DAGNode<Component, Dependency>, DAGEdge<Component, Dependency>> backEdges;
+            resolveLock.lock();
+            try {
+                if (!graphCacheDirty) {
+                    return false;
+                }
+                graph = solver.getGraph();
+                backEdges = solver.getBackEdges();
+                graphCacheDirty = false;
+            } finally {
+                resolveLock.unlock();
+            }
+            if (graphCache.store(graph, backEdges)) {
+                return true;
+            }
+            // try again at the next flush
+            resolveLock.lock();
+            try {
+                graphCacheDirty = true;
+            } finally {
+                resolveLock.unlock();
+            }
+            return false;
+        } finally {
+            flushLock.unlock();
         }
     }
 
     @Override
     public void close() {
-        if (manager != null) {
-            manager.close();
+        if (initExecutor != null) {
+            initExecutor.shutdown();
+        }
+        try {
+            solver.close();
+            flushGraphCache();
+        } finally {
+            if (manager != null) {
+                manager.close();
+            }
         }
     }
 }
@@ -27,6 +27,8 @@ import org.grouplens.grapht.CachePolicy;
 import org.grouplens.grapht.Component;
 import org.grouplens.grapht.Dependency;
 import org.grouplens.grapht.ResolutionException;
+import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextSignature;
 import org.grouplens.grapht.graph.DAGEdge;
 import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.graph.DAGNodeBuilder;
@@ -38,7 +40,10 @@ import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import javax.annotation.Nullable;
+import java.io.Closeable;
 import java.util.*;
+import java.util.concurrent.*;
 
 /**
  * <p>
@@ -52,15 +57,26 @@ import java.util.*;
  * the list are used first, which makes it easy to provide custom functions that
  * override default behaviors.
  * <p>
- * This solver does not support cyclic dependencies because of the possibility
- * that a context later on might activate a bind rule that breaks the cycle. To
- * ensure termination, it has a maximum context depth that is configurable.
+ * This solver does not support cyclic dependencies. It fails as soon as it
+ * resolves a desire to a satisfaction that is already being resolved for the same
+ * desire further up the current path, unless a context-sensitive bind rule (or a
+ * skippable binding) in between could break the cycle on a later pass.  To ensure
+ * termination in those remaining cases, it also has a maximum context depth that is
+ * configurable.
+ * <p>
+ * A solver built with a {@linkplain DependencySolverBuilder#setParallelism(int) parallelism}
+ * greater than 1 owns a pool of worker threads; {@linkplain #close() close} it when it is no
+ * longer needed.
  * 
  * @see DefaultInjector
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
-public class DependencySolver {
+public class DependencySolver implements Closeable {
     private static final Logger logger = LoggerFactory.getLogger(DependencySolver.class);
+    /**
+     * The maximum number of subtrees to remember for a single desire.
+     */
+    private static final int MAX_CACHED_SUBTREES = 8;
     public static final Component ROOT_SATISFACTION =
             Component.create(new NullSatisfaction(Void.TYPE), CachePolicy.NO_PREFERENCE);
 
@@ -89,6 +105,16 @@ public class DependencySolver {
     private DAGNode<Component,Dependency> graph;
     private SetMultimap<DAGNode<Component,Dependency>, DAGEdge<Component,Dependency>> backEdges;
     private MergePool<Component,Dependency> mergePool;
+    /**
+     * Resolved subtrees available for reuse, indexed by the desire they resolve.
+     */
+    private final ConcurrentMap<Desire, List<Subtree>> subtreeCache;
+    /**
+     * The pool for resolving dependencies in parallel, or {@code null} to resolve sequentially.
+     * It is only replaced (by {@link #close()}) while no resolution is running.
+     */
+    @Nullable
+    private ForkJoinPool pool;
 
     /**
      * Create a DependencySolver that uses the given functions, and max
@@ -97,12 +123,18 @@ public class DependencySolver {
      * @param bindFunctions The binding functions that control desire bindings
      * @param maxDepth A maximum depth of the graph before it's determined that
      *            a cycle exists
+     * @param parallelism The number of threads to resolve dependencies with.
+     * @param initialGraph The initial graph, or {@code null} to start with an empty graph.
+     * @param initialBackEdges The back edges of the initial graph.
      * @throws IllegalArgumentException if maxDepth is less than 1
      * @throws NullPointerException if bindFunctions is null
      */
     DependencySolver(List<BindingFunction> bindFunctions,
                      List<BindingFunction> triggers,
-                     CachePolicy defaultPolicy, int maxDepth) {
+                     CachePolicy defaultPolicy, int maxDepth,
+                     int parallelism,
+                     @Nullable DAGNode<Component,Dependency> initialGraph,
+                     SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> initialBackEdges) {
         Preconditions.notNull("bindFunctions", bindFunctions);
         Preconditions.notNull("defaultPolicy", defaultPolicy);
         if (maxDepth <= 0) {
@@ -114,9 +146,27 @@ public class DependencySolver {
         this.maxDepth = maxDepth;
         this.defaultPolicy = defaultPolicy;
         
-        graph = DAGNode.singleton(ROOT_SATISFACTION);
-        backEdges = HashMultimap.create();
         mergePool = MergePool.create();
+        if (initialGraph == null) {
+            graph = DAGNode.singleton(ROOT_SATISFACTION);
+        } else {
+            // pool the initial graph's nodes, so newly-resolved graphs share them
+            graph = initialGraph;
+            mergePool.merge(graph);
+        }
+        backEdges = HashMultimap.create(initialBackEdges);
+        subtreeCache = Maps.newConcurrentMap();
+
+        boolean threadSafe = true;
+        for (BindingFunction bf: functions) {
+            if (!(bf instanceof ThreadSafeBindingFunction)) {
+                threadSafe = false;
+            }
+        }
+        if (parallelism > 1 && !threadSafe) {
+            logger.warn("binding functions are not all thread-safe, resolving sequentially");
+        }
+        pool = parallelism > 1 && threadSafe ? new ForkJoinPool(parallelism) : null;
 
         logger.info("DependencySolver created, max depth: {}", maxDepth);
     }
@@ -167,6 +217,20 @@ public class DependencySolver {
                              .orNull();
     }
 
+    /**
+     * Shut down the solver's worker threads, if it has any.  The solver remains usable, but
+     * resolves dependencies sequentially from then on.
+     *
+     * @since 0.11
+     */
+    @Override
+    public synchronized void close() {
+        if (pool != null) {
+            pool.shutdown();
+            pool = null;
+        }
+    }
+
     /**
      * Get the root node.
      * @deprecated Use {@link #getGraph()} instead.
@@ -185,7 +249,28 @@ public class DependencySolver {
      */
     public synchronized void resolve(Desire desire) throws ResolutionException {
         logger.info("Resolving desire: {}", desire);
+        doResolve(Collections.singletonList(desire));
+    }
+
+    /**
+     * Update the dependency graph to include several desires.  This is equivalent to resolving
+     * each desire in turn, but the resolved graphs are merged into the global graph in a single
+     * pass, so resolving many desires takes time linear in their number.
+     *
+     * @param desires The desires to include in the graph.
+     * @throws ResolutionException if any desire cannot be resolved.  If one of the desires
+     *                             themselves fails to resolve, none of them are added to the
+     *                             graph; if a deferred dependency (from provider injection) fails,
+     *                             the desires have already been added, as with
+     *                             {@link #resolve(Desire)}.
+     * @since 0.11
+     */
+    public synchronized void resolveAll(Collection<? extends Desire> desires) throws ResolutionException {
+        logger.info("Resolving {} desires", desires.size());
+        doResolve(desires);
+    }
 
+    private void doResolve(Collection<? extends Desire> desires) throws ResolutionException {
         Queue<Deferral> deferralQueue = new ArrayDeque<Deferral>();
 
         // before any deferred nodes are processed, we use a synthetic root
@@ -199,13 +284,20 @@ public class DependencySolver {
             assert parent.getOutgoingEdges().isEmpty();
 
             if (current.node.getLabel().equals(ROOT_SATISFACTION)) {
-                Pair<DAGNode<Component, Dependency>, Dependency> rootNode =
-                        resolveFully(desire, current.context, deferralQueue);
-                // add this to the global graph
-                graph = DAGNode.copyBuilder(graph)
-                               .addEdge(mergePool.merge(rootNode.getLeft()),
-                                        rootNode.getRight())
-                               .build();
+                List<DAGNode<Component, Dependency>> nodes = Lists.newArrayListWithCapacity(desires.size());
+                List<Dependency> deps = Lists.newArrayListWithCapacity(desires.size());
+                for (Desire desire: desires) {
+                    Subtree rootNode = resolveFully(desire, current.context, deferralQueue);
+                    nodes.add(rootNode.node);
+                    deps.add(rootNode.dependency);
+                }
+                // add them all to the global graph
+                List<DAGNode<Component, Dependency>> merged = mergePool.mergeAll(nodes);
+                DAGNodeBuilder<Component, Dependency> bld = DAGNode.copyBuilder(graph);
+                for (int i = 0; i < merged.size(); i++) {
+                    bld.addEdge(merged.get(i), deps.get(i));
+                }
+                graph = bld.build();
             } else if (graph.getReachableNodes().contains(parent)) {
                 // the node needs to be re-scanned.  This means that it was not consolidated by
                 // a previous merge operation.  This branch only arises with provider injection.
@@ -213,22 +305,21 @@ public class DependencySolver {
                 for (Desire d: sat.getDependencies()) {
                     logger.debug("Attempting to resolve deferred dependency {} of {}", d, sat);
                     // resolve the dependency
-                    Pair<DAGNode<Component, Dependency>, Dependency> result =
-                            resolveFully(d, current.context, deferralQueue);
+                    Subtree result = resolveFully(d, current.context, deferralQueue);
                     // merge it in
-                    DAGNode<Component, Dependency> merged = mergePool.merge(result.getLeft());
+                    DAGNode<Component, Dependency> merged = mergePool.merge(result.node);
                     // now see if there's a real cycle
                     if (merged.getReachableNodes().contains(parent)) {
                         // parent node is referenced from merged, we have a circle!
                         // that means we need a back edge
-                        backEdges.put(parent, DAGEdge.create(parent, merged, result.getRight()));
+                        backEdges.put(parent, DAGEdge.create(parent, merged, result.dependency));
                     } else {
                         // an edge from parent to merged does not add a cycle
                         // we have to update graph right away so it's available to merge the next
                         // dependency
                         DAGNode<Component, Dependency> newP =
                                 DAGNode.copyBuilder(parent)
-                                       .addEdge(merged, result.getRight())
+                                       .addEdge(merged, result.dependency)
                                        .build();
                         replaceNode(parent, newP);
                         parent = newP;
@@ -281,7 +372,7 @@ public class DependencySolver {
      * @param graph The graph to rewrite.
      * @return A rewritten version of the graph.
      */
-    public DAGNode<Component,Dependency> rewrite(DAGNode<Component,Dependency> graph) throws ResolutionException {
+    public synchronized DAGNode<Component,Dependency> rewrite(DAGNode<Component,Dependency> graph) throws ResolutionException {
         if (!graph.getLabel().getSatisfaction().getErasedType().equals(Void.TYPE)) {
             throw new IllegalArgumentException("only full dependency graphs can be rewritten");
         }
@@ -306,7 +397,8 @@ public class DependencySolver {
     }
 
     /**
-     * Walk the graph, looking for replacements.
+     * Walk the graph, looking for replacements.  The walk is depth-first, using an explicit stack
+     * of the nodes being walked.
      * @param root The node to walk.
      * @param context The context leading to this node.
      * @param replacements The map of replacements to build. This maps edges to their replacement
@@ -316,19 +408,29 @@ public class DependencySolver {
     private void walkGraphForReplacements(DAGNode<Component, Dependency> root,
                                           InjectionContext context,
                                           Map<DAGEdge<Component, Dependency>, DAGEdge<Component, Dependency>> replacements) throws ResolutionException {
+        Deque<Pair<InjectionContext, Iterator<DAGEdge<Component, Dependency>>>> stack =
+                new ArrayDeque<Pair<InjectionContext, Iterator<DAGEdge<Component, Dependency>>>>();
         assert context.getTailValue().getLeft().equals(root.getLabel().getSatisfaction());
-        for (DAGEdge<Component, Dependency> edge: root.getOutgoingEdges()) {
+        stack.push(Pair.of(context, root.getOutgoingEdges().iterator()));
+        while (!stack.isEmpty()) {
+            Pair<InjectionContext, Iterator<DAGEdge<Component, Dependency>>> top = stack.peek();
+            if (!top.getRight().hasNext()) {
+                stack.pop();
+                continue;
+            }
+            InjectionContext ctx = top.getLeft();
+            DAGEdge<Component, Dependency> edge = top.getRight().next();
             logger.debug("considering {} for replacement", edge.getTail().getLabel());
             Desire desire = edge.getLabel().getDesireChain().getInitialDesire();
             DesireChain chain = DesireChain.singleton(desire);
-            Pair<DAGNode<Component, Dependency>, Dependency> repl = null;
+            Subtree repl = null;
             if (!edge.getLabel().isFixed()) {
                 for (BindingFunction bf: triggerFunctions) {
-                    BindingResult result = bf.bind(context, chain);
+                    BindingResult result = bf.bind(ctx, chain);
                     if (result != null) {
                         // resolve the node
                         // we could reuse the resolution, but perf savings isn't worth complexity
-                        repl = resolveFully(desire, context, null);
+                        repl = resolveFully(desire, ctx, null);
                         break;
                     }
                 }
@@ -337,94 +439,270 @@ public class DependencySolver {
             }
             if (repl == null) {
                 // no trigger bindings, walk the node's children
-                InjectionContext next = context.extend(edge.getTail()
-                                                           .getLabel()
-                                                           .getSatisfaction(),
-                                                       edge.getLabel()
-                                                           .getDesireChain()
-                                                           .getInitialDesire()
-                                                           .getInjectionPoint());
-                walkGraphForReplacements(edge.getTail(), next, replacements);
+                InjectionContext next = ctx.extend(edge.getTail()
+                                                       .getLabel()
+                                                       .getSatisfaction(),
+                                                   edge.getLabel()
+                                                       .getDesireChain()
+                                                       .getInitialDesire()
+                                                       .getInjectionPoint());
+                stack.push(Pair.of(next, edge.getTail().getOutgoingEdges().iterator()));
             } else {
                 // trigger binding, add a replacement
                 logger.info("replacing {} with {}",
                             edge.getTail().getLabel(),
-                            repl.getLeft().getLabel());
-                replacements.put(edge, DAGEdge.create(root, repl.getLeft(), repl.getRight()));
+                            repl.node.getLabel());
+                replacements.put(edge, DAGEdge.create(edge.getHead(), repl.node, repl.dependency));
             }
         }
     }
 
     /**
-     * Resolve a desire and its dependencies, inserting them into the graph.
+     * Resolve a desire and its dependencies, inserting them into the graph.  If the desire has
+     * already been resolved in a context that the binding functions cannot distinguish from
+     * {@code context}, the previously-resolved subtree is reused.
+     *
+     * <p>Resolution works through the graph depth-first, keeping the nodes being resolved on an
+     * explicit stack of {@link ResolutionFrame}s rather than the call stack, so deep graphs do
+     * not overflow the call stack.  In parallel mode, the dependencies of a node with several
+     * dependencies are each resolved as a separate fork-join task.</p>
+     *
+     * @param desire The desire to resolve.
+     * @param context The context of {@code parent}.
+     * @param deferQueue The queue of node deferrals.
+     * @throws ResolutionException if there is an error resolving the nodes.
+     */
+    private Subtree resolveFully(Desire desire, InjectionContext context,
+                                 Queue<Deferral> deferQueue) throws ResolutionException {
+        return resolveFully(desire, context, deferQueue, new ResolutionPath());
+    }
+
+    /**
+     * Resolve a desire and its dependencies below a path of resolutions in progress.
      *
      * @param desire The desire to resolve.
      * @param context The context of {@code parent}.
      * @param deferQueue The queue of node deferrals.
+     * @param path The resolutions in progress leading to {@code context}.  Resolving the desire
+     *             leaves it unchanged.
      * @throws ResolutionException if there is an error resolving the nodes.
      */
-    private Pair<DAGNode<Component,Dependency>,Dependency>
-    resolveFully(Desire desire, InjectionContext context, Queue<Deferral> deferQueue) throws ResolutionException {
+    private Subtree resolveFully(Desire desire, InjectionContext context,
+                                 Queue<Deferral> deferQueue, ResolutionPath path) throws ResolutionException {
+        Deque<ResolutionFrame> stack = new ArrayDeque<ResolutionFrame>();
+        Subtree done = startResolution(desire, context, deferQueue, path, stack);
+        while (!stack.isEmpty()) {
+            ResolutionFrame frame = stack.peek();
+            if (done != null) {
+                // we just finished resolving a dependency of the frame
+                frame.addDependency(done);
+                done = null;
+            }
+            if (pool != null && !frame.started && frame.dependencyCount() > 1) {
+                resolveInParallel(frame, deferQueue, path, stack);
+            } else if (frame.hasNextDependency()) {
+                // complete the sub graph for the next dependency
+                Desire d = frame.nextDependency();
+                logger.debug("Attempting to satisfy dependency {} of {}", d, frame.result.satisfaction);
+                try {
+                    done = startResolution(d, frame.newContext, deferQueue, path, stack);
+                } catch (UnresolvableDependencyException ex) {
+                    recoverFromFailure(ex, path, stack);
+                }
+            } else {
+                stack.pop();
+                path.pop();
+                done = frame.finish();
+                rememberSubtree(frame.desire, frame.context, done);
+            }
+        }
+        return done;
+    }
+
+    /**
+     * Resolve all dependencies of a frame in parallel.  The results are added to the frame in
+     * order, exactly as if they had been resolved sequentially: the first failing dependency is
+     * handled as a sequential failure would be, and the results of the dependencies after it
+     * are discarded.
+     *
+     * @param frame The frame whose dependencies should be resolved.
+     * @param deferQueue The queue of node deferrals.
+     * @param path The resolutions in progress, including the frame's.
+     * @param stack The stack of frames being resolved.
+     * @throws ResolutionException if there is an error resolving the dependencies.
+     */
+    private void resolveInParallel(ResolutionFrame frame, Queue<Deferral> deferQueue,
+                                   ResolutionPath path, Deque<ResolutionFrame> stack) throws ResolutionException {
+        final List<SubtreeTask> tasks = Lists.newArrayListWithCapacity(frame.dependencyCount());
+        for (Desire d: frame.result.satisfaction.getDependencies()) {
+            logger.debug("Forking resolution of dependency {} of {}", d, frame.result.satisfaction);
+            tasks.add(new SubtreeTask(d, frame.newContext,
+                                      deferQueue == null ? null : new ArrayDeque<Deferral>(),
+                                      new ResolutionPath(path)));
+        }
+        assert pool != null;
+        if (ForkJoinTask.getPool() == pool) {
+            ForkJoinTask.invokeAll(tasks);
+        } else {
+            pool.invoke(new RecursiveAction() {
+                @Override
+                protected void compute() {
+                    invokeAll(tasks);
+                }
+            });
+        }
+
+        for (SubtreeTask task: tasks) {
+            frame.nextDependency();
+            if (task.failure instanceof UnresolvableDependencyException) {
+                recoverFromFailure((UnresolvableDependencyException) task.failure, path, stack);
+                return;
+            } else if (task.failure != null) {
+                throw task.failure;
+            }
+            if (deferQueue != null) {
+                deferQueue.addAll(task.deferrals);
+            }
+            frame.addDependency(task.result);
+        }
+    }
+
+    /**
+     * Start resolving a desire.  If the desire's subtree is available without resolving its
+     * dependencies, it is returned; otherwise, a frame for resolving the dependencies is pushed
+     * on the stack.
+     *
+     * @param desire The desire to resolve.
+     * @param context The context of the desire's parent.
+     * @param deferQueue The queue of node deferrals.
+     * @param path The resolutions in progress.
+     * @param stack The stack of frames being resolved.
+     * @return The resolved subtree, or {@code null} if a frame was pushed to resolve it.
+     * @throws ResolutionException if there is an error resolving the desire.
+     */
+    private Subtree startResolution(Desire desire, InjectionContext context, Queue<Deferral> deferQueue,
+                                    ResolutionPath path, Deque<ResolutionFrame> stack) throws ResolutionException {
         // check context depth against max to detect likely dependency cycles
         if (context.size() > maxDepth) {
             throw new CyclicDependencyException(desire, "Maximum context depth of " + maxDepth + " was reached");
         }
+
+        Subtree cached = findSubtree(desire, context);
+        if (cached != null) {
+            logger.debug("Reusing resolved subtree for {}", desire);
+            return cached;
+        }
         
         // resolve the current node
         Resolution result = resolve(desire, context);
 
         InjectionContext newContext = context.extend(result.satisfaction, desire.getInjectionPoint());
 
-        DAGNode<Component, Dependency> node;
         if (result.deferDependencies) {
             // extend node onto deferred queue and skip its dependencies for now
             logger.debug("Deferring dependencies of {}", result.satisfaction);
-            node = DAGNode.singleton(result.makeSatisfaction());
+            DAGNode<Component, Dependency> node = DAGNode.singleton(result.makeSatisfaction());
             // FIXME Deferred and skippable bindings do not interact well
             deferQueue.add(new Deferral(node, newContext));
-            return Pair.of(node, result.makeDependency());
+            // the deferred dependencies are resolved later, so the subtree cannot be reused
+            return new Subtree(node, result.makeDependency(), null, 1);
         } else {
-            return resolveDepsAndMakeNode(deferQueue, result, newContext);
+            path.push(desire, result);
+            stack.push(new ResolutionFrame(desire, context, result, newContext));
+            return null;
         }
     }
 
-    private Pair<DAGNode<Component, Dependency>,Dependency> resolveDepsAndMakeNode(Queue<Deferral> deferQueue,
-                                                                                   Resolution result,
-                                                                                   InjectionContext newContext) throws ResolutionException {
-        DAGNode<Component, Dependency> node;// build up a node with its outgoing edges
-        DAGNodeBuilder<Component,Dependency> nodeBuilder = DAGNode.newBuilder();
-        nodeBuilder.setLabel(result.makeSatisfaction());
-        for (Desire d: result.satisfaction.getDependencies()) {
-            // complete the sub graph for the given desire
-            // - the call to resolveFully() is responsible for adding the dependency edges
-            //   so we don't need to process the returned node
-            logger.debug("Attempting to satisfy dependency {} of {}", d, result.satisfaction);
-            Pair<DAGNode<Component, Dependency>, Dependency> dep;
-            try {
-                dep = resolveFully(d, newContext, deferQueue);
-            } catch (UnresolvableDependencyException ex) {
-                if (!d.equals(ex.getDesireChain().getInitialDesire())) {
-                    // this is for some other (deeper) desire, fail
-                    throw ex;
-                }
+    /**
+     * Recover from a failure to resolve the current dependency of the top frame.  Frames are
+     * popped until one can backtrack to skip the binding that led to the failure; if none can,
+     * the failure is thrown.
+     *
+     * @param failure The resolution failure.
+     * @param path The resolutions in progress.
+     * @param stack The stack of frames being resolved.
+     * @throws UnresolvableDependencyException if the failure cannot be recovered from.
+     */
+    private void recoverFromFailure(UnresolvableDependencyException failure,
+                                    ResolutionPath path,
+                                    Deque<ResolutionFrame> stack) throws UnresolvableDependencyException {
+        while (!stack.isEmpty()) {
+            ResolutionFrame frame = stack.peek();
+            Resolution result = frame.result;
+            if (frame.currentDependency.equals(failure.getDesireChain().getInitialDesire())) {
                 // whoops, try to backtrack
                 Resolution back = result.skippable ? result.backtrack() : null;
                 if (back != null) {
-                    InjectionContext popped = newContext.getLeading();
+                    InjectionContext popped = frame.newContext.getLeading();
                     InjectionContext forked = InjectionContext.extend(popped, back.satisfaction,
                                                                       back.desires.getInitialDesire().getInjectionPoint());
-                    return resolveDepsAndMakeNode(deferQueue, back, forked);
+                    path.replaceTop(back);
+                    frame.restart(back, forked);
+                    return;
                 } else if (result.backtracked || result.skippable) {
                     // the result is the result of backtracking, or could be, so make an error at this dependency
-                    throw new UnresolvableDependencyException(result.desires, newContext.getLeading(), ex);
-                } else {
-                    throw ex;
+                    failure = new UnresolvableDependencyException(result.desires, frame.newContext.getLeading(), failure);
                 }
             }
-            nodeBuilder.addEdge(dep);
+            // otherwise, this is for some other (deeper) desire, so the frame fails
+            stack.pop();
+            path.pop();
+        }
+        throw failure;
+    }
+
+    /**
+     * Find a previously-resolved subtree for a desire that can be reused in a context.
+     *
+     * @param desire The desire.
+     * @param context The context in which the desire is being resolved.
+     * @return The subtree, or {@code null} if there is no reusable subtree.
+     */
+    private Subtree findSubtree(Desire desire, InjectionContext context) {
+        List<Subtree> candidates = subtreeCache.get(desire);
+        if (candidates == null) {
+            return null;
+        }
+        for (Subtree tree: candidates) {
+            // a subtree too deep for this context would have hit the depth limit, so resolve
+            // it again to report the (probable) cycle
+            if (context.size() + tree.height - 1 <= maxDepth
+                    && tree.signature.equals(ContextSignature.create(context, tree.matchers))) {
+                return tree;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Remember a resolved subtree for reuse, if its resolution can be described by a context
+     * signature.
+     *
+     * @param desire The desire the subtree resolves.
+     * @param context The context in which the desire was resolved.
+     * @param tree The resolved subtree.
+     */
+    private void rememberSubtree(Desire desire, InjectionContext context, Subtree tree) {
+        if (tree.matchers == null) {
+            return;
+        }
+        ContextSignature sig = ContextSignature.create(context, tree.matchers);
+        if (sig == null) {
+            return;
+        }
+        List<Subtree> trees = subtreeCache.get(desire);
+        if (trees == null) {
+            List<Subtree> fresh = new CopyOnWriteArrayList<Subtree>();
+            trees = subtreeCache.putIfAbsent(desire, fresh);
+            if (trees == null) {
+                trees = fresh;
+            }
+        }
+        // parallel resolution may add a few extra trees, which is harmless
+        if (trees.size() < MAX_CACHED_SUBTREES) {
+            tree.signature = sig;
+            trees.add(tree);
         }
-        node = nodeBuilder.build();
-        return Pair.of(node, result.makeDependency());
     }
 
     private Resolution resolve(Desire desire, InjectionContext context) throws ResolutionException {
@@ -433,16 +711,22 @@ public class DependencySolver {
         CachePolicy policy = CachePolicy.NO_PREFERENCE;
         boolean fixed = false;
         boolean skippable = false;
+        // the context matchers consulted so far, or null if a function can't report them
+        Set<ContextMatcher> matchers = Sets.newHashSet();
 
         while(true) {
             logger.debug("Current desire: {}", chain.getCurrentDesire());
             
             BindingResult binding = null;
             for (BindingFunction bf: functions) {
+                matchers = addContextMatchers(matchers, bf, chain);
                 binding = bf.bind(context, chain);
                 if (binding != null && !chain.getPreviousDesires().contains(binding.getDesire())) {
                     // found a binding that hasn't been used before
                     break;
+                } else if (binding != null && binding.getBindRule() != null) {
+                    // remember the rejected rule so it is not considered again for this chain
+                    chain = chain.withAppliedRule(binding.getBindRule());
                 }
             }
             
@@ -450,7 +734,7 @@ public class DependencySolver {
             boolean terminate = true; // so we stop if there is no binding
             if (binding != null) {
                 // update the desire chain
-                chain = chain.extend(binding.getDesire());
+                chain = chain.extend(binding.getDesire(), binding.getBindRule());
 
                 terminate = binding.terminates(); // binding decides if we stop
                 defer = binding.isDeferred();
@@ -474,7 +758,8 @@ public class DependencySolver {
                     }
                 }
                 
-                return new Resolution(chain.getCurrentDesire().getSatisfaction(), policy, chain, fixed, defer, skippable, false);
+                return new Resolution(chain.getCurrentDesire().getSatisfaction(), policy, chain, fixed, defer, skippable, false,
+                                      matchers);
             } else if (binding == null) {
                 // no more desires to process, it cannot be satisfied
                 throw new UnresolvableDependencyException(chain, context);
@@ -482,6 +767,30 @@ public class DependencySolver {
         }
     }
     
+    /**
+     * Record the context matchers that a binding function consults for a desire chain.
+     *
+     * @param matchers The matchers recorded so far, or {@code null} if they are unknown.
+     * @param bf The binding function.
+     * @param chain The desire chain being bound.
+     * @return The updated matchers, or {@code null} if they are unknown.
+     */
+    private static Set<ContextMatcher> addContextMatchers(Set<ContextMatcher> matchers,
+                                                          BindingFunction bf, DesireChain chain) {
+        if (matchers == null) {
+            return null;
+        }
+        Collection<? extends ContextMatcher> found = null;
+        if (bf instanceof ContextAwareBindingFunction) {
+            found = ((ContextAwareBindingFunction) bf).getContextMatchers(chain);
+        }
+        if (found == null) {
+            return null;
+        }
+        matchers.addAll(found);
+        return matchers;
+    }
+
     /*
      * Result tuple for resolve(Desire, InjectionContext)
      */
@@ -493,12 +802,14 @@ public class DependencySolver {
         private final boolean deferDependencies;
         private final boolean skippable;
         private final boolean backtracked;
+        private final Set<ContextMatcher> matchers;
 
         public Resolution(Satisfaction satisfaction, CachePolicy policy, 
                           DesireChain desires, boolean fixed,
                           boolean deferDependencies,
                           boolean skippable,
-                          boolean backtracked) {
+                          boolean backtracked,
+                          Set<ContextMatcher> matchers) {
             this.satisfaction = satisfaction;
             this.policy = policy;
             this.desires = desires;
@@ -506,12 +817,22 @@ public class DependencySolver {
             this.deferDependencies = deferDependencies;
             this.skippable = skippable;
             this.backtracked = backtracked;
+            this.matchers = matchers;
         }
 
         public Component makeSatisfaction() {
             return Component.create(satisfaction, policy);
         }
 
+        /**
+         * Query whether this resolution would be the same in any context and cannot be
+         * backtracked.
+         * @return {@code true} if the resolution is independent of its context.
+         */
+        public boolean isContextFree() {
+            return matchers != null && matchers.isEmpty() && !skippable;
+        }
+
         public Dependency makeDependency() {
             EnumSet<Dependency.Flag> flags = Dependency.Flag.emptySet();
             if (fixed) {
@@ -542,7 +863,8 @@ public class DependencySolver {
                                       shrunk,
                                       fixed,  // FIXME If we allow skippability on non-default bindings, this is wrong
                                       deferDependencies, // FIXME same here
-                                      false, true);
+                                      false, true,
+                                      null); // backtracked trees are not reused
             } else {
                 return null;
             }
@@ -554,6 +876,233 @@ public class DependencySolver {
         }
     }
     
+    /*
+     * Result tuple for resolveFully(Desire, InjectionContext, Queue)
+     */
+    private static class Subtree {
+        private final DAGNode<Component, Dependency> node;
+        private final Dependency dependency;
+        private final Set<ContextMatcher> matchers;
+        private final int height;
+        private ContextSignature signature;
+
+        public Subtree(DAGNode<Component, Dependency> node, Dependency dependency,
+                       Set<ContextMatcher> matchers, int height) {
+            this.node = node;
+            this.dependency = dependency;
+            this.matchers = matchers;
+            this.height = height;
+        }
+    }
+
+    /*
+     * A node whose dependencies are being resolved, for resolveFully(Desire, InjectionContext, Queue)
+     */
+    private static class ResolutionFrame {
+        private final Desire desire;
+        private final InjectionContext context;
+        private Resolution result;
+        private InjectionContext newContext;
+        private DAGNodeBuilder<Component, Dependency> nodeBuilder;
+        // the context matchers the subtree depends on, or null if we cannot tell
+        private Set<ContextMatcher> matchers;
+        private int height;
+        private Iterator<Desire> dependencies;
+        private Desire currentDependency;
+        // whether any dependency has been resolved since the frame was (re)started
+        private boolean started;
+
+        public ResolutionFrame(Desire desire, InjectionContext context,
+                               Resolution result, InjectionContext newContext) {
+            this.desire = desire;
+            this.context = context;
+            restart(result, newContext);
+        }
+
+        /**
+         * Start resolving this frame's dependencies from scratch.
+         * @param res The resolution of the frame's desire.
+         * @param ctx The context of the frame's node.
+         */
+        public void restart(Resolution res, InjectionContext ctx) {
+            result = res;
+            newContext = ctx;
+            // build up a node with its outgoing edges
+            nodeBuilder = DAGNode.newBuilder(res.makeSatisfaction());
+            matchers = res.matchers == null ? null : Sets.newHashSet(res.matchers);
+            height = 1;
+            dependencies = res.satisfaction.getDependencies().iterator();
+            currentDependency = null;
+            started = false;
+        }
+
+        public int dependencyCount() {
+            return result.satisfaction.getDependencies().size();
+        }
+
+        public boolean hasNextDependency() {
+            return dependencies.hasNext();
+        }
+
+        public Desire nextDependency() {
+            started = true;
+            currentDependency = dependencies.next();
+            return currentDependency;
+        }
+
+        /**
+         * Add the resolved subtree for the current dependency.
+         * @param dep The subtree.
+         */
+        public void addDependency(Subtree dep) {
+            nodeBuilder.addEdge(dep.node, dep.dependency);
+            if (matchers != null && dep.matchers != null) {
+                matchers.addAll(dep.matchers);
+            } else {
+                matchers = null;
+            }
+            height = Math.max(height, dep.height + 1);
+        }
+
+        /**
+         * Finish resolving this frame.
+         * @return The resolved subtree.
+         */
+        public Subtree finish() {
+            return new Subtree(nodeBuilder.build(), result.makeDependency(), matchers, height);
+        }
+    }
+
+    /**
+     * Task resolving a dependency subtree in parallel.  Failures are captured, so the forking
+     * frame can handle them in order.
+     */
+    private class SubtreeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final Desire desire;
+        private final InjectionContext context;
+        private final Queue<Deferral> deferrals;
+        private final ResolutionPath path;
+        private Subtree result;
+        private ResolutionException failure;
+
+        public SubtreeTask(Desire desire, InjectionContext context,
+                           @Nullable Queue<Deferral> deferrals, ResolutionPath path) {
+            this.desire = desire;
+            this.context = context;
+            this.deferrals = deferrals;
+            this.path = path;
+        }
+
+        @Override
+        protected void compute() {
+            try {
+                result = resolveFully(desire, context, deferrals, path);
+            } catch (ResolutionException e) {
+                failure = e;
+            }
+        }
+    }
+
+    /**
+     * The resolutions in progress on the current path through the graph, used to detect cycles.
+     * A cycle is certain when a desire is resolved to the same satisfaction as an ancestor
+     * resolution of that desire, and no resolution from the ancestor down was influenced by the
+     * context or could be backtracked: the solver would then repeat the same resolutions forever.
+     */
+    private static class ResolutionPath {
+        private final List<PathEntry> entries;
+        /**
+         * The index of the most recent entry for each desire and satisfaction on the path.
+         */
+        private final Map<Pair<Desire,Satisfaction>, Integer> index;
+
+        public ResolutionPath() {
+            entries = Lists.newArrayList();
+            index = Maps.newHashMap();
+        }
+
+        /**
+         * Copy a resolution path.
+         * @param path The path to copy.
+         */
+        public ResolutionPath(ResolutionPath path) {
+            entries = Lists.newArrayList(path.entries);
+            index = Maps.newHashMap(path.index);
+        }
+
+        /**
+         * Push a resolution onto the path.
+         *
+         * @param desire The desire being resolved.
+         * @param result The resolution of the desire.
+         * @throws CyclicDependencyException if the resolution certainly repeats an ancestor.
+         */
+        public void push(Desire desire, Resolution result) throws CyclicDependencyException {
+            Pair<Desire,Satisfaction> key = Pair.of(desire, result.satisfaction);
+            int pos = entries.size();
+            int lastSensitive = pos == 0 ? -1 : entries.get(pos - 1).lastSensitive;
+            if (!result.isContextFree()) {
+                lastSensitive = pos;
+            }
+            Integer previous = index.get(key);
+            if (previous != null && previous >= lastSensitive) {
+                StringBuilder msg = new StringBuilder("Dependency cycle: ");
+                for (PathEntry e: entries.subList(previous, pos)) {
+                    msg.append(e.key.getRight()).append(" -> ");
+                }
+                msg.append(result.satisfaction);
+                throw new CyclicDependencyException(desire, msg.toString());
+            }
+            entries.add(new PathEntry(key, previous, lastSensitive));
+            index.put(key, pos);
+        }
+
+        /**
+         * Replace the most recent resolution with its backtracked version.  The backtracked
+         * resolution may have been influenced by resolutions below it, so it is treated as
+         * context-sensitive.
+         *
+         * @param result The backtracked resolution.
+         */
+        public void replaceTop(Resolution result) {
+            pop();
+            Pair<Desire,Satisfaction> key = Pair.of(result.desires.getInitialDesire(), result.satisfaction);
+            int pos = entries.size();
+            Integer previous = index.get(key);
+            entries.add(new PathEntry(key, previous, pos));
+            index.put(key, pos);
+        }
+
+        /**
+         * Pop the most recent resolution from the path.
+         */
+        public void pop() {
+            PathEntry top = entries.remove(entries.size() - 1);
+            if (top.previous == null) {
+                index.remove(top.key);
+            } else {
+                index.put(top.key, top.previous);
+            }
+        }
+    }
+
+    /*
+     * Entry in the resolution path
+     */
+    private static class PathEntry {
+        private final Pair<Desire,Satisfaction> key;
+        private final Integer previous;
+        private final int lastSensitive;
+
+        public PathEntry(Pair<Desire,Satisfaction> key, Integer previous, int lastSensitive) {
+            this.key = key;
+            this.previous = previous;
+            this.lastSensitive = lastSensitive;
+        }
+    }
+
     /*
      * Deferred results tuple
      */
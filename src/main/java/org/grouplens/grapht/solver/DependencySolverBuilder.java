@@ -19,10 +19,17 @@
  */
 package org.grouplens.grapht.solver;
 
+import com.google.common.collect.ImmutableSetMultimap;
+import com.google.common.collect.SetMultimap;
 import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
 import org.grouplens.grapht.util.Preconditions;
 
 import javax.annotation.Nonnull;
+import javax.annotation.Nullable;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
@@ -40,6 +47,11 @@ public class DependencySolverBuilder {
     private List<BindingFunction> triggerFunctions = new LinkedList<BindingFunction>();
     private CachePolicy defaultPolicy = CachePolicy.NO_PREFERENCE;
     private int maxDepth = 100;
+    private int parallelism = 1;
+    @Nullable
+    private DAGNode<Component,Dependency> initialGraph;
+    private SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> initialBackEdges =
+            ImmutableSetMultimap.of();
 
     /**
      * Get the current list of binding functions.
@@ -140,7 +152,8 @@ public class DependencySolverBuilder {
     }
 
     /**
-     * Set the maximum object graph depth, for cycle detection.
+     * Set the maximum object graph depth, for cycle detection.  Cycles that no context-sensitive
+     * binding can break are detected as soon as they repeat; this limit catches the rest.
      * @param depth The maximum object graph depth that the solver is allowed to produce.
      * @return The builder (for chaining).
      */
@@ -152,11 +165,71 @@ public class DependencySolverBuilder {
         return this;
     }
 
+    /**
+     * Get the number of threads used to resolve dependencies.
+     * @return The solver's parallelism.
+     */
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * Set the number of threads used to resolve dependencies.  If greater than 1, the solver
+     * resolves the dependencies of each component as parallel fork-join tasks.  The resulting
+     * graphs and errors are the same as when resolving sequentially.  Parallel resolution is only
+     * used if every binding function is a {@link ThreadSafeBindingFunction}; otherwise, the solver
+     * resolves sequentially.  The default is 1 (sequential resolution).
+     *
+     * @param threads The number of threads to use.
+     * @return The builder (for chaining).
+     * @since 0.11
+     */
+    public DependencySolverBuilder setParallelism(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("parallelism must be at least 1");
+        }
+        parallelism = threads;
+        return this;
+    }
+
+    /**
+     * Get the initial graph.
+     * @return The graph the solver will start with, or {@code null} to start with an empty graph.
+     */
+    @Nullable
+    public DAGNode<Component,Dependency> getInitialGraph() {
+        return initialGraph;
+    }
+
+    /**
+     * Set the graph the solver starts with, such as a graph previously solved with the same
+     * binding functions and loaded from a {@link GraphCache}.  Desires already resolved in this
+     * graph do not need to be resolved again.  The graph is trusted: the solver does not check
+     * that its binding functions would have produced it.
+     *
+     * @param graph The initial graph, whose root must be {@link DependencySolver#ROOT_SATISFACTION};
+     *              {@code null} to start with an empty graph.
+     * @param backEdges The back edges of the initial graph.
+     * @return The builder (for chaining).
+     * @since 0.11
+     */
+    public DependencySolverBuilder setInitialGraph(@Nullable DAGNode<Component,Dependency> graph,
+                                                   @Nonnull SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges) {
+        Preconditions.notNull("back edges", backEdges);
+        if (graph != null && !graph.getLabel().equals(DependencySolver.ROOT_SATISFACTION)) {
+            throw new IllegalArgumentException("initial graph must have the solver's root");
+        }
+        initialGraph = graph;
+        initialBackEdges = ImmutableSetMultimap.copyOf(backEdges);
+        return this;
+    }
+
     /**
      * Build a dependency solver.
      * @return The dependency solver.
      */
     public DependencySolver build() {
-        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth);
+        return new DependencySolver(bindingFunctions, triggerFunctions, defaultPolicy, maxDepth,
+                                    parallelism, initialGraph, initialBackEdges);
     }
 }
@@ -27,7 +27,6 @@ import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
 import java.util.Collections;
 import java.util.List;
-import java.util.UUID;
 
 /**
  * A sequence of desires.  When one desire is resolved, that resolution can be a desire that needs
@@ -44,21 +43,38 @@ import java.util.UUID;
 public class DesireChain extends AbstractChain<Desire> {
     @Nonnull
     private final Desire initialDesire;
-    private final UUID key;
+    /**
+     * The first node of this chain, which holds the chain's key.
+     */
+    @Nonnull
+    private final DesireChain root;
+    /**
+     * The chain's key, created on demand.  Only used on the root node.
+     */
+    private transient volatile Object key;
+    /**
+     * The bind rules that have been applied in building this chain.  This is resolution state, and
+     * is shared with the chains this one was built from, so it is not serialized.
+     */
+    @Nullable
+    private final transient AppliedRule appliedRules;
 
     public static DesireChain singleton(Desire desire) {
-        return new DesireChain(null, desire);
+        return new DesireChain(null, desire, null, null);
     }
 
     /**
      * Create a new desire chain.
      * @param prev The previous chain.
      * @param d The desire.
+     * @param root The root of the chain, or {@code null} to make this node the root.
+     * @param rules The rules applied so far.
      */
-    private DesireChain(DesireChain prev, @Nonnull Desire d) {
+    private DesireChain(DesireChain prev, @Nonnull Desire d, DesireChain root, AppliedRule rules) {
         super(prev, d);
-        key = prev == null ? UUID.randomUUID() : prev.key;
+        this.root = root == null ? this : root;
         initialDesire = prev == null ? d : prev.getInitialDesire();
+        appliedRules = rules;
     }
 
     public static Predicate<DesireChain> hasInitialDesire(final Desire d) {
@@ -107,14 +123,27 @@ public class DesireChain extends AbstractChain<Desire> {
     }
 
     /**
-     * Get this chain's key. Each chain has a key, a unique object that is created when the chain
-     * is created (via {@link #singleton(org.grouplens.grapht.reflect.Desire)}), and preserved through
-     * {@link #extend(org.grouplens.grapht.reflect.Desire)} operations.  It can be used to remember
+     * Get this chain's key. Each chain has a key, a unique object that belongs to the chain started
+     * by {@link #singleton(org.grouplens.grapht.reflect.Desire)} and is preserved through
+     * {@link #extend(org.grouplens.grapht.reflect.Desire)} operations.  Keys compare by identity.
+     * The key is created the first time it is requested.  It can be used to remember
      * state across invocations of a binding function as a desire chain is built up.
      * @return The chain's key.
      */
     public Object getKey() {
-        return key;
+        // Keys are rarely needed, so we create them lazily instead of paying for one on every chain
+        DesireChain r = root;
+        Object k = r.key;
+        if (k == null) {
+            synchronized (r) {
+                k = r.key;
+                if (k == null) {
+                    k = new Object();
+                    r.key = k;
+                }
+            }
+        }
+        return k;
     }
 
     /**
@@ -126,6 +155,61 @@ public class DesireChain extends AbstractChain<Desire> {
      */
     @Nonnull
     public DesireChain extend(@Nonnull Desire d) {
-        return new DesireChain(this, d);
+        return new DesireChain(this, d, root, appliedRules);
+    }
+
+    /**
+     * Extend this chain with a new desire produced by a bind rule.  The rule is remembered as
+     * having been applied in the new chain.
+     *
+     * @param d The new current desire.
+     * @param rule The rule that produced {@code d}, or {@code null} if it was not produced by a rule.
+     * @return The new desire chain.
+     * @see #hasAppliedRule(BindRule)
+     */
+    @Nonnull
+    public DesireChain extend(@Nonnull Desire d, @Nullable BindRule rule) {
+        return new DesireChain(this, d, root, rule == null ? appliedRules : new AppliedRule(rule, appliedRules));
+    }
+
+    /**
+     * Create a copy of this chain that additionally remembers a rule as applied, without changing
+     * its desires.  The solver uses this to record rules whose bindings it has rejected.
+     *
+     * @param rule The rule to remember.
+     * @return A chain with the same desires as this chain, with {@code rule} marked as applied.
+     */
+    @Nonnull
+    public DesireChain withAppliedRule(@Nonnull BindRule rule) {
+        return new DesireChain((DesireChain) previous, tailValue, root, new AppliedRule(rule, appliedRules));
+    }
+
+    /**
+     * Query whether a rule has been applied in building this chain.  Binding functions use this to
+     * avoid applying the same rule twice to a desire chain.
+     *
+     * @param rule The rule.
+     * @return {@code true} if {@code rule} has been applied in this chain.
+     */
+    public boolean hasAppliedRule(BindRule rule) {
+        for (AppliedRule ar = appliedRules; ar != null; ar = ar.next) {
+            if (ar.rule.equals(rule)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * A persistent list of applied rules, shared between chains built from one another.
+     */
+    private static final class AppliedRule {
+        private final BindRule rule;
+        private final AppliedRule next;
+
+        AppliedRule(BindRule rule, AppliedRule next) {
+            this.rule = rule;
+            this.next = next;
+        }
     }
 }
@@ -0,0 +1,259 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.SetMultimap;
+import com.google.common.hash.Hasher;
+import com.google.common.hash.Hashing;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An on-disk cache of a solved dependency graph and its back edges.  The graph is stored in a
+ * cache directory, in a file named by a fingerprint of the configuration that produced it (see
+ * {@link org.grouplens.grapht.BindingFunctionBuilder#getFingerprint()}), so a process that
+ * starts with an unchanged configuration can load the graph instead of solving it again.
+ *
+ * <p>Graphs are stored with {@link GraphCodec}.  Loading a graph checks the checksums of the
+ * classes it references; it also checks the inputs to default bindings (see
+ * {@link DefaultDesireBindingFunction}), namely the annotations and {@code META-INF/grapht/defaults}
+ * resources of every type and qualifier the graph's dependencies were resolved for.  If any of
+ * these have changed, or the file is missing or unreadable, {@link #load()} returns
+ * {@code null} and the graph must be solved from scratch.</p>
+ *
+ * @see DependencySolverBuilder#setInitialGraph(DAGNode, SetMultimap)
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class GraphCache {
+    private static final Logger logger = LoggerFactory.getLogger(GraphCache.class);
+
+    private final File directory;
+    private final String fingerprint;
+    private final ClassLoader classLoader;
+
+    private GraphCache(File dir, String fp, ClassLoader loader) {
+        directory = dir;
+        fingerprint = fp;
+        classLoader = loader;
+    }
+
+    /**
+     * Create a graph cache.
+     *
+     * @param directory The cache directory.  It is created when a graph is first stored.
+     * @param fingerprint The fingerprint of the configuration whose graph is cached.
+     * @return The graph cache.
+     */
+    public static GraphCache create(File directory, String fingerprint) {
+        return create(directory, fingerprint, null);
+    }
+
+    /**
+     * Create a graph cache.
+     *
+     * @param directory The cache directory.  It is created when a graph is first stored.
+     * @param fingerprint The fingerprint of the configuration whose graph is cached.
+     * @param loader The class loader in which to look up {@code META-INF/grapht/defaults}
+     *               resources; this should be the loader of the default binding function.  If
+     *               {@code null}, the thread's context class loader is used.
+     * @return The graph cache.
+     */
+    public static GraphCache create(File directory, String fingerprint, @Nullable ClassLoader loader) {
+        Preconditions.notNull("directory", directory);
+        Preconditions.notNull("fingerprint", fingerprint);
+        if (loader == null) {
+            loader = Thread.currentThread().getContextClassLoader();
+        }
+        if (loader == null) {
+            loader = GraphCache.class.getClassLoader();
+        }
+        return new GraphCache(directory, fingerprint, loader);
+    }
+
+    /**
+     * Get the fingerprint of the cached configuration.
+     * @return The configuration fingerprint.
+     */
+    public String getFingerprint() {
+        return fingerprint;
+    }
+
+    /**
+     * Get the file in which the graph is cached.
+     * @return The cache file.
+     */
+    public File getFile() {
+        return new File(directory, fingerprint + ".graph");
+    }
+
+    /**
+     * Load the cached graph.
+     *
+     * @return The cached graph and its back edges, or {@code null} if there is no usable graph in
+     *         the cache.
+     */
+    @Nullable
+    public Pair<DAGNode<Component,Dependency>,
+                SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> load() {
+        File file = getFile();
+        if (!file.exists()) {
+            logger.debug("no cached graph for {}", fingerprint);
+            return null;
+        }
+        try {
+            InputStream in = new BufferedInputStream(new FileInputStream(file));
+            try {
+                DataInputStream data = new DataInputStream(in);
+                String fp = data.readUTF();
+                if (!fingerprint.equals(fp)) {
+                    logger.warn("{} contains graph for {}, ignoring", file, fp);
+                    return null;
+                }
+                String defaults = data.readUTF();
+                Pair<DAGNode<Component,Dependency>,
+                     SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> graph =
+                        GraphCodec.read(in);
+                if (!defaults.equals(digestDefaults(graph.getLeft(), graph.getRight()))) {
+                    logger.info("default bindings used by {} have changed, ignoring", file);
+                    return null;
+                }
+                logger.info("loaded cached graph from {}", file);
+                return graph;
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            // this includes class checksum mismatches, reported as invalid objects
+            logger.info("cannot load cached graph from {}: {}", file, e.toString());
+            return null;
+        } catch (RuntimeException e) {
+            logger.warn("{} does not contain a valid graph: {}", file, e.toString());
+            return null;
+        }
+    }
+
+    /**
+     * Store a graph in the cache, replacing any previously-cached graph.  The graph is written to
+     * a temporary file that then replaces the cache file, so concurrent readers and writers never
+     * see a partially-written graph; of concurrent stores, the last to finish wins.  Failures are
+     * logged and otherwise ignored, since the cache is only an optimization.
+     *
+     * @param graph The graph to store.
+     * @param backEdges The graph's back edges.
+     * @return {@code true} if the graph was stored.
+     */
+    public boolean store(DAGNode<Component,Dependency> graph,
+                         SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges) {
+        File file = getFile();
+        File tmp = null;
+        try {
+            if (!directory.isDirectory() && !directory.mkdirs()) {
+                logger.warn("cannot create graph cache directory {}", directory);
+                return false;
+            }
+            tmp = File.createTempFile(fingerprint, ".tmp", directory);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(tmp));
+            try {
+                DataOutputStream data = new DataOutputStream(out);
+                data.writeUTF(fingerprint);
+                data.writeUTF(digestDefaults(graph, backEdges));
+                data.flush();
+                GraphCodec.write(graph, backEdges, out);
+            } finally {
+                out.close();
+            }
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+            tmp = null;
+            logger.debug("stored graph in {}", file);
+            return true;
+        } catch (IOException e) {
+            // typically a non-serializable instance binding
+            logger.warn("cannot store graph in {}: {}", file, e.toString());
+            return false;
+        } catch (RuntimeException e) {
+            logger.warn("cannot store graph in {}: {}", file, e.toString());
+            return false;
+        } finally {
+            if (tmp != null && tmp.exists() && !tmp.delete()) {
+                logger.warn("cannot delete temporary file {}", tmp);
+            }
+        }
+    }
+
+    /**
+     * Compute a digest of the inputs to the default bindings a graph may have used: the defaults
+     * of every type and qualifier type its dependencies were resolved for.
+     *
+     * @param graph The graph.
+     * @param backEdges The graph's back edges.
+     * @return The digest of the graph's default binding inputs.
+     * @throws IOException if a defaults resource cannot be read.
+     */
+    private String digestDefaults(DAGNode<Component,Dependency> graph,
+                                  SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges) throws IOException {
+        Map<String,Class<?>> types = new TreeMap<String, Class<?>>();
+        for (DAGNode<Component,Dependency> node: graph.getReachableNodes()) {
+            for (DAGEdge<Component,Dependency> edge: node.getOutgoingEdges()) {
+                addDesiredTypes(edge.getLabel(), types);
+            }
+        }
+        for (DAGEdge<Component,Dependency> edge: backEdges.values()) {
+            addDesiredTypes(edge.getLabel(), types);
+        }
+        Hasher hasher = Hashing.sha1().newHasher();
+        for (Class<?> type: types.values()) {
+            DefaultDesireBindingFunction.hashDefaults(type, classLoader, hasher);
+        }
+        return hasher.hash().toString();
+    }
+
+    private static void addDesiredTypes(Dependency dep, Map<String,Class<?>> types) {
+        for (Desire desire: dep.getDesireChain()) {
+            types.put(desire.getDesiredType().getName(), desire.getDesiredType());
+            Annotation qualifier = desire.getInjectionPoint().getQualifier();
+            if (qualifier != null) {
+                types.put(qualifier.annotationType().getName(), qualifier.annotationType());
+            }
+        }
+    }
+}
@@ -0,0 +1,891 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Lists;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.io.ByteStreams;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.DAGNodeBuilder;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.reflect.internal.*;
+import org.grouplens.grapht.util.ClassProxy;
+
+import javax.annotation.Nullable;
+import javax.inject.Provider;
+import java.io.*;
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Member;
+import java.lang.reflect.Method;
+import java.util.EnumSet;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A compact binary format for dependency graphs.  Unlike Java serialization, which writes the
+ * class names, checksums and reflective metadata of a graph's labels again for every node, this
+ * format writes each class, member, qualifier, injection point, satisfaction and desire once, in
+ * a table, and refers to it by index.  The nodes follow in topological order, so each edge refers
+ * to its tail by the index of a node that has already been read.  Indexes and counts are written
+ * as variable-length integers.
+ *
+ * <p>The satisfactions, injection points and desires created by Grapht's reflection backend are
+ * written field by field; other labels, instance satisfactions and qualifiers are written with
+ * Java serialization, in a single table of objects.  Classes are checked against their checksums
+ * (see {@link ClassProxy}) when the graph is read, just as when it is deserialized.
+ *
+ * @see MappedGraph
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public final class GraphCodec {
+    private static final int MAGIC = 0x47524146; // "GRAF"
+    private static final int VERSION = 1;
+
+    // tags for table entries; OBJECT entries refer to the table of serialized objects
+    private static final int OBJECT = 0;
+    private static final int CONSTRUCTOR = 1;
+    private static final int METHOD = 2;
+    private static final int FIELD = 3;
+    private static final int CONSTRUCTOR_PARAMETER = 1;
+    private static final int SETTER = 2;
+    private static final int FIELD_INJECTION = 3;
+    private static final int NO_ARGUMENT = 4;
+    private static final int SIMPLE = 5;
+    private static final int CLASS_SATISFACTION = 1;
+    private static final int NULL_SATISFACTION = 2;
+    private static final int PROVIDER_CLASS_SATISFACTION = 3;
+    private static final int REFLECTION_DESIRE = 1;
+
+    /**
+     * The largest count of entries in a table, or of items in an entry, that we will read.
+     */
+    static final int MAX_COUNT = 1 << 24;
+    /**
+     * The largest number of parameters a method can have.
+     */
+    private static final int MAX_PARAMETERS = 255;
+
+    private static final CachePolicy[] POLICIES = CachePolicy.values();
+    private static final Dependency.Flag[] FLAGS = Dependency.Flag.values();
+
+    private GraphCodec() {}
+
+    /**
+     * Write a graph.
+     *
+     * @param graph The graph to write.
+     * @param backEdges The graph's back edges.
+     * @param output The output stream.  It is flushed, but not closed.
+     * @throws IOException if there is an error writing the graph, or some object in it that must
+     *                     be written with Java serialization is not serializable.
+     */
+    public static void write(DAGNode<Component,Dependency> graph,
+                             SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges,
+                             OutputStream output) throws IOException {
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(output));
+        new Encoder(graph, backEdges).write(out);
+        out.flush();
+    }
+
+    /**
+     * Read a graph written by {@link #write(DAGNode, SetMultimap, OutputStream)}.
+     *
+     * @param input The input stream.  It is not closed.
+     * @return The graph and its back edges.
+     * @throws InvalidObjectException if the graph refers to classes or members that cannot be
+     *                                found, or to classes whose checksums have changed.
+     * @throws IOException if there is an error reading the graph.
+     */
+    public static Pair<DAGNode<Component,Dependency>,
+                       SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> read(InputStream input) throws IOException {
+        return new StreamDecoder().read(new DataInputStream(new BufferedInputStream(input)));
+    }
+
+    /**
+     * A table of distinct values, which assigns each value the index of its first appearance.
+     */
+    static final class Table<T> {
+        private final Map<T,Integer> indexes = Maps.newHashMap();
+        private final List<T> values = Lists.newArrayList();
+
+        /**
+         * Add a value to the table.
+         * @return {@code true} if the value is new.
+         */
+        boolean add(T value) {
+            if (indexes.containsKey(value)) {
+                return false;
+            }
+            indexes.put(value, values.size());
+            values.add(value);
+            return true;
+        }
+
+        boolean contains(T value) {
+            return indexes.containsKey(value);
+        }
+
+        int indexOf(T value) {
+            Integer idx = indexes.get(value);
+            assert idx != null;
+            return idx;
+        }
+
+        int size() {
+            return values.size();
+        }
+
+        List<T> values() {
+            return values;
+        }
+    }
+
+    /**
+     * Collects the tables of a graph and writes their entries.  Each table only refers to
+     * entries of the tables before it, and each node only to the nodes before it.
+     */
+    static class Encoder {
+        final Table<String> strings = new Table<String>();
+        final Table<Class<?>> classes = new Table<Class<?>>();
+        final Table<Object> objects = new Table<Object>();
+        final Table<Member> members = new Table<Member>();
+        final Table<InjectionPoint> injectionPoints = new Table<InjectionPoint>();
+        final Table<Satisfaction> satisfactions = new Table<Satisfaction>();
+        final Table<Desire> desires = new Table<Desire>();
+        final Table<DAGNode<Component,Dependency>> nodes = new Table<DAGNode<Component, Dependency>>();
+        final DAGNode<Component,Dependency> graph;
+        final List<DAGEdge<Component,Dependency>> backEdges;
+
+        Encoder(DAGNode<Component,Dependency> graph,
+                SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges) {
+            this.graph = graph;
+            this.backEdges = Lists.newArrayList(backEdges.values());
+            addNodes(graph);
+            for (DAGEdge<Component,Dependency> edge: this.backEdges) {
+                // back edges normally connect nodes of the graph, but they need not
+                addNodes(edge.getHead());
+                addNodes(edge.getTail());
+                addDependency(edge.getLabel());
+            }
+        }
+
+        private void addNodes(DAGNode<Component,Dependency> root) {
+            if (nodes.contains(root)) {
+                return;
+            }
+            for (DAGNode<Component,Dependency> node: root.getSortedNodes()) {
+                if (nodes.add(node)) {
+                    addSatisfaction(node.getLabel().getSatisfaction());
+                    for (DAGEdge<Component,Dependency> edge: node.getOutgoingEdges()) {
+                        addDependency(edge.getLabel());
+                    }
+                }
+            }
+        }
+
+        private void addDependency(Dependency dep) {
+            for (Desire d: dep.getDesireChain()) {
+                addDesire(d);
+            }
+        }
+
+        private void addDesire(Desire desire) {
+            if (!desires.contains(desire)) {
+                if (desire.getClass().equals(ReflectionDesire.class)) {
+                    addClass(desire.getDesiredType());
+                    addInjectionPoint(desire.getInjectionPoint());
+                    if (desire.getSatisfaction() != null) {
+                        addSatisfaction(desire.getSatisfaction());
+                    }
+                } else {
+                    objects.add(desire);
+                }
+                // add after its parts, so the table only refers to earlier entries
+                desires.add(desire);
+            }
+        }
+
+        private void addInjectionPoint(InjectionPoint ip) {
+            if (injectionPoints.contains(ip)) {
+                return;
+            }
+            Class<?> type = ip.getClass();
+            if (type.equals(ConstructorParameterInjectionPoint.class)
+                    || type.equals(SetterInjectionPoint.class)
+                    || type.equals(FieldInjectionPoint.class)
+                    || type.equals(NoArgumentInjectionPoint.class)) {
+                addMember(ip.getMember());
+            } else if (type.equals(SimpleInjectionPoint.class)) {
+                addClass(ip.getErasedType());
+                if (ip.getQualifier() != null) {
+                    objects.add(ip.getQualifier());
+                }
+            } else {
+                objects.add(ip);
+            }
+            injectionPoints.add(ip);
+        }
+
+        private void addSatisfaction(Satisfaction sat) {
+            if (satisfactions.contains(sat)) {
+                return;
+            }
+            Class<?> type = sat.getClass();
+            if (type.equals(ClassSatisfaction.class) || type.equals(NullSatisfaction.class)) {
+                addClass(sat.getErasedType());
+            } else if (type.equals(ProviderClassSatisfaction.class)) {
+                addClass(((ProviderClassSatisfaction) sat).getProviderType());
+            } else {
+                objects.add(sat);
+            }
+            satisfactions.add(sat);
+        }
+
+        private void addMember(Member member) {
+            if (members.contains(member)) {
+                return;
+            }
+            addClass(member.getDeclaringClass());
+            if (member instanceof Constructor) {
+                for (Class<?> param: ((Constructor<?>) member).getParameterTypes()) {
+                    addClass(param);
+                }
+            } else if (member instanceof Method) {
+                strings.add(member.getName());
+                for (Class<?> param: ((Method) member).getParameterTypes()) {
+                    addClass(param);
+                }
+            } else {
+                strings.add(member.getName());
+            }
+            members.add(member);
+        }
+
+        private void addClass(Class<?> cls) {
+            if (classes.add(cls)) {
+                strings.add(cls.getName());
+            }
+        }
+
+        void write(DataOutputStream out) throws IOException {
+            out.writeInt(MAGIC);
+            writeVarint(out, VERSION);
+
+            writeVarint(out, strings.size());
+            for (String str: strings.values()) {
+                out.writeUTF(str);
+            }
+
+            writeVarint(out, classes.size());
+            for (Class<?> cls: classes.values()) {
+                writeClass(out, cls);
+            }
+
+            writeVarint(out, objects.size());
+            if (objects.size() > 0) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                ObjectOutputStream oos = new ObjectOutputStream(bytes);
+                for (Object obj: objects.values()) {
+                    oos.writeObject(obj);
+                }
+                oos.close();
+                writeVarint(out, bytes.size());
+                bytes.writeTo(out);
+            }
+
+            writeVarint(out, members.size());
+            for (Member member: members.values()) {
+                writeMember(out, member);
+            }
+
+            writeVarint(out, injectionPoints.size());
+            for (InjectionPoint ip: injectionPoints.values()) {
+                writeInjectionPoint(out, ip);
+            }
+
+            writeVarint(out, satisfactions.size());
+            for (Satisfaction sat: satisfactions.values()) {
+                writeSatisfaction(out, sat);
+            }
+
+            writeVarint(out, desires.size());
+            for (Desire desire: desires.values()) {
+                writeDesire(out, desire);
+            }
+
+            writeVarint(out, nodes.size());
+            for (DAGNode<Component,Dependency> node: nodes.values()) {
+                writeNode(out, node);
+            }
+            writeVarint(out, nodes.indexOf(graph));
+
+            writeVarint(out, backEdges.size());
+            for (DAGEdge<Component,Dependency> edge: backEdges) {
+                writeBackEdge(out, edge);
+            }
+        }
+
+        void writeClass(DataOutput out, Class<?> cls) throws IOException {
+            writeVarint(out, strings.indexOf(cls.getName()));
+            out.writeLong(ClassProxy.of(cls).getChecksum());
+        }
+
+        void writeMember(DataOutput out, Member member) throws IOException {
+            Class<?>[] params;
+            if (member instanceof Constructor) {
+                out.writeByte(CONSTRUCTOR);
+                params = ((Constructor<?>) member).getParameterTypes();
+            } else if (member instanceof Method) {
+                out.writeByte(METHOD);
+                params = ((Method) member).getParameterTypes();
+            } else {
+                out.writeByte(FIELD);
+                params = null;
+            }
+            writeVarint(out, classes.indexOf(member.getDeclaringClass()));
+            if (!(member instanceof Constructor)) {
+                writeVarint(out, strings.indexOf(member.getName()));
+            }
+            if (params != null) {
+                writeVarint(out, params.length);
+                for (Class<?> param: params) {
+                    writeVarint(out, classes.indexOf(param));
+                }
+            }
+        }
+
+        void writeInjectionPoint(DataOutput out, InjectionPoint ip) throws IOException {
+            Class<?> type = ip.getClass();
+            if (type.equals(ConstructorParameterInjectionPoint.class)) {
+                out.writeByte(CONSTRUCTOR_PARAMETER);
+                writeVarint(out, members.indexOf(ip.getMember()));
+                writeVarint(out, ((ConstructorParameterInjectionPoint) ip).getParameterIndex());
+            } else if (type.equals(SetterInjectionPoint.class)) {
+                out.writeByte(SETTER);
+                writeVarint(out, members.indexOf(ip.getMember()));
+                writeVarint(out, ((SetterInjectionPoint) ip).getParameterIndex());
+            } else if (type.equals(FieldInjectionPoint.class)) {
+                out.writeByte(FIELD_INJECTION);
+                writeVarint(out, members.indexOf(ip.getMember()));
+            } else if (type.equals(NoArgumentInjectionPoint.class)) {
+                out.writeByte(NO_ARGUMENT);
+                writeVarint(out, members.indexOf(ip.getMember()));
+            } else if (type.equals(SimpleInjectionPoint.class)) {
+                out.writeByte(SIMPLE);
+                writeVarint(out, classes.indexOf(ip.getErasedType()));
+                out.writeBoolean(ip.isNullable());
+                Annotation qual = ip.getQualifier();
+                writeVarint(out, qual == null ? 0 : objects.indexOf(qual) + 1);
+            } else {
+                out.writeByte(OBJECT);
+                writeVarint(out, objects.indexOf(ip));
+            }
+        }
+
+        void writeSatisfaction(DataOutput out, Satisfaction sat) throws IOException {
+            Class<?> type = sat.getClass();
+            if (type.equals(ClassSatisfaction.class)) {
+                out.writeByte(CLASS_SATISFACTION);
+                writeVarint(out, classes.indexOf(sat.getErasedType()));
+            } else if (type.equals(NullSatisfaction.class)) {
+                out.writeByte(NULL_SATISFACTION);
+                writeVarint(out, classes.indexOf(sat.getErasedType()));
+            } else if (type.equals(ProviderClassSatisfaction.class)) {
+                out.writeByte(PROVIDER_CLASS_SATISFACTION);
+                writeVarint(out, classes.indexOf(((ProviderClassSatisfaction) sat).getProviderType()));
+            } else {
+                out.writeByte(OBJECT);
+                writeVarint(out, objects.indexOf(sat));
+            }
+        }
+
+        void writeDesire(DataOutput out, Desire desire) throws IOException {
+            if (desire.getClass().equals(ReflectionDesire.class)) {
+                out.writeByte(REFLECTION_DESIRE);
+                writeVarint(out, classes.indexOf(desire.getDesiredType()));
+                writeVarint(out, injectionPoints.indexOf(desire.getInjectionPoint()));
+                Satisfaction sat = desire.getSatisfaction();
+                writeVarint(out, sat == null ? 0 : satisfactions.indexOf(sat) + 1);
+            } else {
+                out.writeByte(OBJECT);
+                writeVarint(out, objects.indexOf(desire));
+            }
+        }
+
+        void writeNode(DataOutput out, DAGNode<Component,Dependency> node) throws IOException {
+            Component label = node.getLabel();
+            writeVarint(out, satisfactions.indexOf(label.getSatisfaction()));
+            out.writeByte(label.getCachePolicy().ordinal());
+            writeVarint(out, node.getOutgoingEdges().size());
+            for (DAGEdge<Component,Dependency> edge: node.getOutgoingEdges()) {
+                writeVarint(out, nodes.indexOf(edge.getTail()));
+                writeDependency(out, edge.getLabel());
+            }
+        }
+
+        void writeBackEdge(DataOutput out, DAGEdge<Component,Dependency> edge) throws IOException {
+            writeVarint(out, nodes.indexOf(edge.getHead()));
+            writeVarint(out, nodes.indexOf(edge.getTail()));
+            writeDependency(out, edge.getLabel());
+        }
+
+        private void writeDependency(DataOutput out, Dependency dep) throws IOException {
+            DesireChain chain = dep.getDesireChain();
+            writeVarint(out, chain.size());
+            for (Desire d: chain) {
+                writeVarint(out, desires.indexOf(d));
+            }
+            int flags = 0;
+            for (Dependency.Flag flag: dep.getFlags()) {
+                flags |= 1 << flag.ordinal();
+            }
+            writeVarint(out, flags);
+        }
+    }
+
+    /**
+     * Reads table entries.  Subclasses provide access to the tables, so entries can refer to
+     * entries that were read before them or that are read on demand.
+     */
+    abstract static class Decoder {
+        abstract String string(int i) throws IOException;
+        abstract Class<?> type(int i) throws IOException;
+        abstract Object object(int i) throws IOException;
+        abstract Member member(int i) throws IOException;
+        abstract InjectionPoint injectionPoint(int i) throws IOException;
+        abstract Satisfaction satisfaction(int i) throws IOException;
+        abstract Desire desire(int i) throws IOException;
+        abstract DAGNode<Component,Dependency> node(int i) throws IOException;
+
+        Class<?> readClass(DataInput in) throws IOException {
+            String name = string(readVarint(in));
+            long checksum = in.readLong();
+            try {
+                return ClassProxy.forName(name, checksum).resolve();
+            } catch (ClassNotFoundException e) {
+                throw invalid("cannot resolve class " + name, e);
+            }
+        }
+
+        Member readMember(DataInput in) throws IOException {
+            int tag = in.readByte();
+            Class<?> cls = type(readVarint(in));
+            String name = tag == CONSTRUCTOR ? null : string(readVarint(in));
+            Class<?>[] params = null;
+            if (tag != FIELD) {
+                params = new Class<?>[readCount(in, MAX_PARAMETERS)];
+                for (int i = 0; i < params.length; i++) {
+                    params[i] = type(readVarint(in));
+                }
+            }
+            try {
+                switch (tag) {
+                case CONSTRUCTOR:
+                    return cls.getDeclaredConstructor(params);
+                case METHOD:
+                    return cls.getDeclaredMethod(name, params);
+                case FIELD:
+                    return cls.getDeclaredField(name);
+                default:
+                    throw new StreamCorruptedException("invalid member tag " + tag);
+                }
+            } catch (NoSuchMethodException e) {
+                throw invalid("cannot resolve member of " + cls, e);
+            } catch (NoSuchFieldException e) {
+                throw invalid("cannot resolve field " + name + " of " + cls, e);
+            }
+        }
+
+        InjectionPoint readInjectionPoint(DataInput in) throws IOException {
+            int tag = in.readByte();
+            InjectionPoint ip;
+            switch (tag) {
+            case CONSTRUCTOR_PARAMETER:
+                Constructor<?> ctor = (Constructor<?>) member(readVarint(in));
+                int ctorParam = readVarint(in);
+                ip = findInjectionPoint(ctor, ctorParam);
+                return ip != null ? ip : new ConstructorParameterInjectionPoint(ctor, ctorParam);
+            case SETTER:
+                Method setter = (Method) member(readVarint(in));
+                int setterParam = readVarint(in);
+                ip = findInjectionPoint(setter, setterParam);
+                return ip != null ? ip : new SetterInjectionPoint(setter, setterParam);
+            case FIELD_INJECTION:
+                Field field = (Field) member(readVarint(in));
+                ip = findInjectionPoint(field, -1);
+                return ip != null ? ip : new FieldInjectionPoint(field);
+            case NO_ARGUMENT:
+                Method method = (Method) member(readVarint(in));
+                ip = findInjectionPoint(method, -1);
+                return ip != null ? ip : new NoArgumentInjectionPoint(method);
+            case SIMPLE:
+                Class<?> type = type(readVarint(in));
+                boolean nullable = in.readBoolean();
+                int qual = readVarint(in);
+                return Desires.createInjectionPoint(qual == 0 ? null : (Annotation) object(qual - 1),
+                                                    type, nullable);
+            default:
+                return (InjectionPoint) readObject(tag, in);
+            }
+        }
+
+        /**
+         * Find an injection point among the cached desires of its member's class.  Creating an
+         * injection point reads its member's annotations, which is the bulk of the cost of reading
+         * a graph, so we reuse the injection points the class's metadata already has.
+         *
+         * @param member The injection point's member.
+         * @param param The injection point's parameter index, or -1 for fields and no-argument methods.
+         * @return The cached injection point, or {@code null} if there is none.
+         */
+        @Nullable
+        private InjectionPoint findInjectionPoint(Member member, int param) {
+            List<Desire> cached;
+            try {
+                cached = ClassMetadata.forClass(member.getDeclaringClass()).getDesires();
+            } catch (RuntimeException e) {
+                // the class has injection points the solver would reject; build ours directly
+                return null;
+            }
+            for (Desire desire: cached) {
+                InjectionPoint ip = desire.getInjectionPoint();
+                if (member.equals(ip.getMember()) && param == getParameterIndex(ip)) {
+                    return ip;
+                }
+            }
+            return null;
+        }
+
+        private int getParameterIndex(InjectionPoint ip) {
+            if (ip instanceof ConstructorParameterInjectionPoint) {
+                return ((ConstructorParameterInjectionPoint) ip).getParameterIndex();
+            } else if (ip instanceof SetterInjectionPoint) {
+                return ((SetterInjectionPoint) ip).getParameterIndex();
+            } else {
+                return -1;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        Satisfaction readSatisfaction(DataInput in) throws IOException {
+            int tag = in.readByte();
+            switch (tag) {
+            case CLASS_SATISFACTION:
+                return new ClassSatisfaction(type(readVarint(in)));
+            case NULL_SATISFACTION:
+                return new NullSatisfaction(type(readVarint(in)));
+            case PROVIDER_CLASS_SATISFACTION:
+                return new ProviderClassSatisfaction((Class<? extends Provider<?>>) type(readVarint(in)));
+            default:
+                return (Satisfaction) readObject(tag, in);
+            }
+        }
+
+        Desire readDesire(DataInput in) throws IOException {
+            int tag = in.readByte();
+            if (tag == REFLECTION_DESIRE) {
+                Class<?> type = type(readVarint(in));
+                InjectionPoint ip = injectionPoint(readVarint(in));
+                int sat = readVarint(in);
+                try {
+                    return new ReflectionDesire(type, ip, sat == 0 ? null : satisfaction(sat - 1));
+                } catch (RuntimeException e) {
+                    // the classes have changed, so the desire is no longer valid
+                    throw invalid("invalid desire for " + type, e);
+                }
+            } else {
+                return (Desire) readObject(tag, in);
+            }
+        }
+
+        private Object readObject(int tag, DataInput in) throws IOException {
+            if (tag != OBJECT) {
+                throw new StreamCorruptedException("invalid tag " + tag);
+            }
+            return object(readVarint(in));
+        }
+
+        DAGNode<Component,Dependency> readNode(DataInput in) throws IOException {
+            Satisfaction sat = satisfaction(readVarint(in));
+            int policyIndex = in.readByte();
+            if (policyIndex < 0 || policyIndex >= POLICIES.length) {
+                throw new StreamCorruptedException("invalid cache policy " + policyIndex);
+            }
+            CachePolicy policy = POLICIES[policyIndex];
+            DAGNodeBuilder<Component,Dependency> bld = DAGNode.newBuilder(Component.create(sat, policy));
+            int edgeCount = readCount(in, MAX_COUNT);
+            for (int j = 0; j < edgeCount; j++) {
+                DAGNode<Component,Dependency> tail = node(readVarint(in));
+                bld.addEdge(tail, readDependency(in));
+            }
+            return bld.build();
+        }
+
+        DAGEdge<Component,Dependency> readBackEdge(DataInput in) throws IOException {
+            DAGNode<Component,Dependency> head = node(readVarint(in));
+            DAGNode<Component,Dependency> tail = node(readVarint(in));
+            return DAGEdge.create(head, tail, readDependency(in));
+        }
+
+        Dependency readDependency(DataInput in) throws IOException {
+            int length = readCount(in, MAX_COUNT);
+            DesireChain chain = DesireChain.singleton(desire(readVarint(in)));
+            for (int i = 1; i < length; i++) {
+                chain = chain.extend(desire(readVarint(in)));
+            }
+            int flagBits = readVarint(in);
+            EnumSet<Dependency.Flag> flags = Dependency.Flag.emptySet();
+            for (Dependency.Flag flag: FLAGS) {
+                if ((flagBits & (1 << flag.ordinal())) != 0) {
+                    flags.add(flag);
+                }
+            }
+            return Dependency.create(chain, flags);
+        }
+
+        /**
+         * Skip a dependency, which is written after each edge's tail.
+         */
+        static void skipDependency(DataInput in) throws IOException {
+            int length = readCount(in, MAX_COUNT);
+            for (int i = 0; i < length; i++) {
+                readVarint(in);
+            }
+            readVarint(in);
+        }
+    }
+
+    /**
+     * Reads all the tables of a graph in order.
+     */
+    private static class StreamDecoder extends Decoder {
+        private List<String> strings;
+        private List<Class<?>> classes;
+        private List<Object> objects;
+        private List<Member> members;
+        private List<InjectionPoint> injectionPoints;
+        private List<Satisfaction> satisfactions;
+        private List<Desire> desires;
+        private List<DAGNode<Component,Dependency>> nodes;
+
+        @Override
+        String string(int i) throws IOException {
+            return entry(strings, i);
+        }
+
+        @Override
+        Class<?> type(int i) throws IOException {
+            return entry(classes, i);
+        }
+
+        @Override
+        Object object(int i) throws IOException {
+            return entry(objects, i);
+        }
+
+        @Override
+        Member member(int i) throws IOException {
+            return entry(members, i);
+        }
+
+        @Override
+        InjectionPoint injectionPoint(int i) throws IOException {
+            return entry(injectionPoints, i);
+        }
+
+        @Override
+        Satisfaction satisfaction(int i) throws IOException {
+            return entry(satisfactions, i);
+        }
+
+        @Override
+        Desire desire(int i) throws IOException {
+            return entry(desires, i);
+        }
+
+        @Override
+        DAGNode<Component, Dependency> node(int i) throws IOException {
+            return entry(nodes, i);
+        }
+
+        Pair<DAGNode<Component,Dependency>,
+             SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> read(DataInputStream in) throws IOException {
+            if (in.readInt() != MAGIC) {
+                throw new StreamCorruptedException("not a graph file");
+            }
+            int version = readVarint(in);
+            if (version != VERSION) {
+                throw new StreamCorruptedException("unsupported graph format version " + version);
+            }
+
+            int n = readCount(in, MAX_COUNT);
+            strings = newTable(n);
+            for (int i = 0; i < n; i++) {
+                strings.add(in.readUTF());
+            }
+
+            n = readCount(in, MAX_COUNT);
+            classes = newTable(n);
+            for (int i = 0; i < n; i++) {
+                classes.add(readClass(in));
+            }
+
+            n = readCount(in, MAX_COUNT);
+            objects = newTable(n);
+            if (n > 0) {
+                int length = readCount(in, Integer.MAX_VALUE);
+                // read what is actually there, rather than trusting the length to allocate
+                byte[] bytes = ByteStreams.toByteArray(ByteStreams.limit(in, length));
+                if (bytes.length != length) {
+                    throw new StreamCorruptedException("truncated object table");
+                }
+                ObjectInputStream ois = new ObjectInputStream(new ByteArrayInputStream(bytes));
+                try {
+                    for (int i = 0; i < n; i++) {
+                        objects.add(ois.readObject());
+                    }
+                } catch (ClassNotFoundException e) {
+                    throw invalid("cannot resolve serialized object", e);
+                } finally {
+                    ois.close();
+                }
+            }
+
+            n = readCount(in, MAX_COUNT);
+            members = newTable(n);
+            for (int i = 0; i < n; i++) {
+                members.add(readMember(in));
+            }
+
+            n = readCount(in, MAX_COUNT);
+            injectionPoints = newTable(n);
+            for (int i = 0; i < n; i++) {
+                injectionPoints.add(readInjectionPoint(in));
+            }
+
+            n = readCount(in, MAX_COUNT);
+            satisfactions = newTable(n);
+            for (int i = 0; i < n; i++) {
+                satisfactions.add(readSatisfaction(in));
+            }
+
+            n = readCount(in, MAX_COUNT);
+            desires = newTable(n);
+            for (int i = 0; i < n; i++) {
+                desires.add(readDesire(in));
+            }
+
+            n = readCount(in, MAX_COUNT);
+            nodes = newTable(n);
+            for (int i = 0; i < n; i++) {
+                nodes.add(readNode(in));
+            }
+            DAGNode<Component,Dependency> graph = node(readVarint(in));
+
+            SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges =
+                    HashMultimap.create();
+            int backEdgeCount = readCount(in, MAX_COUNT);
+            for (int i = 0; i < backEdgeCount; i++) {
+                DAGEdge<Component,Dependency> edge = readBackEdge(in);
+                backEdges.put(edge.getHead(), edge);
+            }
+            return Pair.of(graph, backEdges);
+        }
+
+        /**
+         * Create a table for entries that have yet to be read.  The table grows as they are read,
+         * so a corrupt count cannot make us allocate more than the stream contains.
+         */
+        private static <T> List<T> newTable(int size) {
+            return Lists.newArrayListWithCapacity(Math.min(size, 1024));
+        }
+
+        private static <T> T entry(List<T> table, int i) throws StreamCorruptedException {
+            if (i < 0 || i >= table.size()) {
+                throw new StreamCorruptedException("invalid table index " + i);
+            }
+            return table.get(i);
+        }
+    }
+
+    static InvalidObjectException invalid(String message, Throwable cause) {
+        InvalidObjectException ex = new InvalidObjectException(message);
+        ex.initCause(cause);
+        return ex;
+    }
+
+    /**
+     * Write an unsigned variable-length integer, 7 bits per byte, low bits first.
+     */
+    static void writeVarint(DataOutput out, int value) throws IOException {
+        int v = value;
+        while ((v & ~0x7F) != 0) {
+            out.writeByte((v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte(v);
+    }
+
+    /**
+     * Read a count of entries or items, such as a table size.  Counts are checked before anything
+     * is allocated for them, so a corrupt file fails with an exception rather than exhausting
+     * memory.
+     *
+     * @param in The input.
+     * @param max The largest valid count.
+     * @return The count.
+     * @throws StreamCorruptedException if the count is negative or greater than {@code max}.
+     */
+    static int readCount(DataInput in, int max) throws IOException {
+        int count = readVarint(in);
+        if (count < 0 || count > max) {
+            throw new StreamCorruptedException("invalid count " + count);
+        }
+        return count;
+    }
+
+    /**
+     * Read an unsigned variable-length integer written by {@link #writeVarint(DataOutput, int)}.
+     */
+    static int readVarint(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            int b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new StreamCorruptedException("malformed variable-length integer");
+    }
+}
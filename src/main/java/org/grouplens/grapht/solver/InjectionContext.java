@@ -25,7 +25,10 @@ import org.grouplens.grapht.reflect.Satisfaction;
 import org.grouplens.grapht.reflect.internal.SimpleInjectionPoint;
 import org.grouplens.grapht.util.AbstractChain;
 
+import javax.annotation.Nonnull;
 import javax.annotation.Nullable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 /**
  * <p>
@@ -41,6 +44,11 @@ import javax.annotation.Nullable;
 public class InjectionContext extends AbstractChain<Pair<Satisfaction,InjectionPoint>> {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Cached state of context matchers for this context, created on demand.
+     */
+    private transient volatile ConcurrentMap<Object,Object> matcherStates;
+
     /**
      * Construct a singleton injection context.
      * @param satisfaction The satisfaction.
@@ -81,7 +89,7 @@ public class InjectionContext extends AbstractChain<Pair<Satisfaction,InjectionP
 
     /**
      * Create a new context that is updated to have the satisfaction and attribute pushed to the
-     * end of its type path. The value cache for the new context will be empty.
+     * end of its type path. The matcher state cache for the new context will be empty.
      * 
      * @param satisfaction The next satisfaction in the dependency graph
      * @param ip The injection point receiving the satisfaction
@@ -101,4 +109,39 @@ public class InjectionContext extends AbstractChain<Pair<Satisfaction,InjectionP
     public InjectionContext getLeading() {
         return (InjectionContext) previous;
     }
+
+    /**
+     * Get the cached state of a context matcher for this context.  Matchers that can match
+     * incrementally use this to remember their state after consuming this context, so matching an
+     * extension of the context only needs to process the new element.
+     *
+     * @param key The key identifying the matcher.
+     * @return The matcher's cached state, or {@code null} if no state is cached for it.
+     */
+    @Nullable
+    public Object getMatcherState(@Nonnull Object key) {
+        ConcurrentMap<Object,Object> states = matcherStates;
+        return states == null ? null : states.get(key);
+    }
+
+    /**
+     * Cache the state of a context matcher for this context.
+     *
+     * @param key The key identifying the matcher.
+     * @param state The matcher's state after consuming this context.
+     * @see #getMatcherState(Object)
+     */
+    public void putMatcherState(@Nonnull Object key, @Nonnull Object state) {
+        ConcurrentMap<Object,Object> states = matcherStates;
+        if (states == null) {
+            synchronized (this) {
+                states = matcherStates;
+                if (states == null) {
+                    states = new ConcurrentHashMap<Object, Object>();
+                    matcherStates = states;
+                }
+            }
+        }
+        states.put(key, state);
+    }
 }
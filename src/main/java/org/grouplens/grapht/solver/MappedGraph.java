@@ -0,0 +1,566 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.HashMultimap;
+import com.google.common.collect.Maps;
+import com.google.common.collect.SetMultimap;
+import com.google.common.collect.Sets;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.util.Preconditions;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.annotation.Nullable;
+import javax.annotation.concurrent.ThreadSafe;
+import java.io.*;
+import java.lang.reflect.Member;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * A dependency graph in a memory-mapped file, whose nodes are only read when they are used.
+ * Reading a graph with {@link GraphCodec} builds every node, component and dependency in it up
+ * front; for large graphs, of which a program often only instantiates a few components, this
+ * costs time and heap.  A mapped graph file instead holds indexed tables of the graph's classes,
+ * labels and nodes, and each entry is decoded the first time it is needed.
+ *
+ * <p>Since a {@link DAGNode} holds its outgoing edges, materializing a node materializes every
+ * node reachable from it.  The graph's root is therefore only materialized if {@link #getRoot()}
+ * is called; {@link #findDependency(Desire)} finds the dependencies of the root by reading only the
+ * root's edges, and materializes the dependency's subgraph.  Nodes are materialized once, so the
+ * subgraphs of different dependencies share their common nodes, as they do in the original graph.
+ * Parts of the graph that are never used are never decoded.
+ *
+ * <p>Mapped graphs are a standalone API: {@link GraphCache} and {@link DefaultInjector} still read
+ * whole graphs with {@link GraphCodec}, since the solver needs the full graph to extend it.  To
+ * instantiate components from a graph solved ahead of time, write the solved graph with
+ * {@link #write(DAGNode, SetMultimap, File)}, then look up each needed dependency and build it
+ * with an {@link org.grouplens.grapht.InjectionContainer}:
+ *
+ * <pre>{@code
+ * MappedGraph graph = MappedGraph.open(file);
+ * DAGNode<Component,Dependency> node = graph.findDependency(Desires.create(null, Foo.class, false));
+ * Foo foo = (Foo) container.makeInstantiator(node, graph.getBackEdges()).instantiate();
+ * }</pre>
+ *
+ * <p>The entries are written in the same form as by {@link GraphCodec}, except that objects written
+ * with Java serialization are serialized individually.  Graph files are limited to 2GB.
+ *
+ * @see org.grouplens.grapht.InjectionContainer
+ * @since 0.11
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+@ThreadSafe
+public final class MappedGraph {
+    private static final Logger logger = LoggerFactory.getLogger(MappedGraph.class);
+    private static final int MAGIC = 0x47524d50; // "GRMP"
+    private static final int VERSION = 1;
+
+    // the tables, in the order they are written
+    private static final int STRINGS = 0;
+    private static final int CLASSES = 1;
+    private static final int OBJECTS = 2;
+    private static final int MEMBERS = 3;
+    private static final int INJECTION_POINTS = 4;
+    private static final int SATISFACTIONS = 5;
+    private static final int DESIRES = 6;
+    private static final int NODES = 7;
+    private static final int BACK_EDGES = 8;
+    private static final int TABLE_COUNT = 9;
+
+    private final ByteBuffer buffer;
+    private final int rootIndex;
+    private final int[] tableSizes;
+    private final int[] tablePositions;
+    private final Tables tables = new Tables();
+    @Nullable
+    private SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges;
+
+    private MappedGraph(ByteBuffer buf) throws IOException {
+        buffer = buf;
+        int limit = buf.limit();
+        if (limit < 12 || buf.getInt(0) != MAGIC) {
+            throw new StreamCorruptedException("not a mapped graph file");
+        }
+        int version = buf.getInt(4);
+        if (version != VERSION) {
+            throw new StreamCorruptedException("unsupported mapped graph version " + version);
+        }
+
+        // the trailer holds the position of the index
+        int pos = buf.getInt(limit - 4);
+        if (pos < 8 || pos > limit - 8) {
+            throw new StreamCorruptedException("invalid index position " + pos);
+        }
+        rootIndex = buf.getInt(pos);
+        pos += 4;
+        tableSizes = new int[TABLE_COUNT];
+        tablePositions = new int[TABLE_COUNT];
+        for (int t = 0; t < TABLE_COUNT; t++) {
+            int size = buf.getInt(pos);
+            if (size < 0 || (long) pos + 4 + 4L * size > limit - 4) {
+                throw new StreamCorruptedException("invalid table size " + size);
+            }
+            tableSizes[t] = size;
+            tablePositions[t] = pos + 4;
+            pos += 4 + 4 * size;
+        }
+        if (rootIndex < 0 || rootIndex >= tableSizes[NODES]) {
+            throw new StreamCorruptedException("invalid root node " + rootIndex);
+        }
+    }
+
+    /**
+     * Write a graph to a mapped graph file.
+     *
+     * @param graph The graph to write.
+     * @param backEdges The graph's back edges.
+     * @param file The file to write.  It is replaced if it exists.  The graph is written to a
+     *             temporary file that then replaces it, so if writing fails, the file is left as
+     *             it was.
+     * @throws IOException if there is an error writing the graph, some object in it that must
+     *                     be written with Java serialization is not serializable, or the graph is
+     *                     too large for a mapped graph file.
+     */
+    public static void write(DAGNode<Component,Dependency> graph,
+                             SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges,
+                             File file) throws IOException {
+        Preconditions.notNull("graph", graph);
+        Preconditions.notNull("back edges", backEdges);
+        File dir = file.getAbsoluteFile().getParentFile();
+        File tmp = File.createTempFile(file.getName(), ".tmp", dir);
+        try {
+            writeTables(graph, backEdges, tmp);
+            try {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                Files.move(tmp.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING);
+            }
+        } finally {
+            if (tmp.exists() && !tmp.delete()) {
+                logger.warn("cannot delete temporary file {}", tmp);
+            }
+        }
+    }
+
+    private static void writeTables(DAGNode<Component,Dependency> graph,
+                                    SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges,
+                                    File file) throws IOException {
+        GraphCodec.Encoder encoder = new GraphCodec.Encoder(graph, backEdges);
+        int[][] offsets = new int[TABLE_COUNT][];
+
+        DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+        try {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+
+            List<String> strings = encoder.strings.values();
+            offsets[STRINGS] = new int[strings.size()];
+            for (int i = 0; i < offsets[STRINGS].length; i++) {
+                offsets[STRINGS][i] = position(out);
+                out.writeUTF(strings.get(i));
+            }
+
+            List<Class<?>> classes = encoder.classes.values();
+            offsets[CLASSES] = new int[classes.size()];
+            for (int i = 0; i < offsets[CLASSES].length; i++) {
+                offsets[CLASSES][i] = position(out);
+                encoder.writeClass(out, classes.get(i));
+            }
+
+            List<Object> objects = encoder.objects.values();
+            offsets[OBJECTS] = new int[objects.size()];
+            for (int i = 0; i < offsets[OBJECTS].length; i++) {
+                offsets[OBJECTS][i] = position(out);
+                // each object gets its own stream, so it can be read by itself
+                ObjectOutputStream oos = new ObjectOutputStream(new FilterOutputStream(out) {
+                    @Override
+                    public void write(byte[] bytes, int off, int len) throws IOException {
+                        out.write(bytes, off, len);
+                    }
+
+                    @Override
+                    public void close() throws IOException {
+                        flush();
+                    }
+                });
+                oos.writeObject(objects.get(i));
+                oos.close();
+            }
+
+            List<Member> members = encoder.members.values();
+            offsets[MEMBERS] = new int[members.size()];
+            for (int i = 0; i < offsets[MEMBERS].length; i++) {
+                offsets[MEMBERS][i] = position(out);
+                encoder.writeMember(out, members.get(i));
+            }
+
+            List<InjectionPoint> injectionPoints = encoder.injectionPoints.values();
+            offsets[INJECTION_POINTS] = new int[injectionPoints.size()];
+            for (int i = 0; i < offsets[INJECTION_POINTS].length; i++) {
+                offsets[INJECTION_POINTS][i] = position(out);
+                encoder.writeInjectionPoint(out, injectionPoints.get(i));
+            }
+
+            List<Satisfaction> satisfactions = encoder.satisfactions.values();
+            offsets[SATISFACTIONS] = new int[satisfactions.size()];
+            for (int i = 0; i < offsets[SATISFACTIONS].length; i++) {
+                offsets[SATISFACTIONS][i] = position(out);
+                encoder.writeSatisfaction(out, satisfactions.get(i));
+            }
+
+            List<Desire> desires = encoder.desires.values();
+            offsets[DESIRES] = new int[desires.size()];
+            for (int i = 0; i < offsets[DESIRES].length; i++) {
+                offsets[DESIRES][i] = position(out);
+                encoder.writeDesire(out, desires.get(i));
+            }
+
+            List<DAGNode<Component,Dependency>> nodes = encoder.nodes.values();
+            offsets[NODES] = new int[nodes.size()];
+            for (int i = 0; i < offsets[NODES].length; i++) {
+                offsets[NODES][i] = position(out);
+                encoder.writeNode(out, nodes.get(i));
+            }
+
+            offsets[BACK_EDGES] = new int[encoder.backEdges.size()];
+            for (int i = 0; i < offsets[BACK_EDGES].length; i++) {
+                offsets[BACK_EDGES][i] = position(out);
+                encoder.writeBackEdge(out, encoder.backEdges.get(i));
+            }
+
+            int indexPosition = position(out);
+            out.writeInt(encoder.nodes.indexOf(graph));
+            for (int[] table: offsets) {
+                out.writeInt(table.length);
+                for (int off: table) {
+                    out.writeInt(off);
+                }
+            }
+            out.writeInt(indexPosition);
+            position(out);
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * Get the position of the next entry written to a graph file.
+     *
+     * @throws IOException if the file has grown too large for positions to be recorded.
+     */
+    private static int position(DataOutputStream out) throws IOException {
+        int pos = out.size();
+        // DataOutputStream stops counting at Integer.MAX_VALUE
+        if (pos == Integer.MAX_VALUE) {
+            throw new IOException("graph is too large for a mapped graph file");
+        }
+        return pos;
+    }
+
+    /**
+     * Open a mapped graph file.  The file is mapped into memory, but none of the graph is read.
+     * The file must not be modified while the graph is in use.
+     *
+     * @param file The file to open.
+     * @return The mapped graph.
+     * @throws IOException if the file cannot be opened or is not a mapped graph file.
+     */
+    public static MappedGraph open(File file) throws IOException {
+        Preconditions.notNull("file", file);
+        RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            FileChannel channel = raf.getChannel();
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException(file + " is too large to be a mapped graph file");
+            }
+            // the mapping remains valid after the channel is closed
+            MappedByteBuffer buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new MappedGraph(buf);
+        } finally {
+            raf.close();
+        }
+    }
+
+    /**
+     * Get the number of nodes in the graph.
+     * @return The number of nodes in the graph file, including those only reachable by back edges.
+     */
+    public int getNodeCount() {
+        return tableSizes[NODES];
+    }
+
+    /**
+     * Get the number of nodes that have been materialized.
+     * @return The number of nodes that have been read from the file so far.
+     */
+    public synchronized int getMaterializedNodeCount() {
+        return tables.nodes.size();
+    }
+
+    /**
+     * Get the root of the graph.  This materializes the entire graph.
+     * @return The graph's root node.
+     * @throws IOException if there is an error reading the graph.
+     */
+    public synchronized DAGNode<Component,Dependency> getRoot() throws IOException {
+        return tables.node(rootIndex);
+    }
+
+    /**
+     * Find a dependency of the graph's root, as {@link DefaultInjector} does to instantiate a
+     * desire.  This reads the root's edges and materializes the subgraph of the matching edge's tail.
+     *
+     * @param desire The initial desire of the dependency.
+     * @return The node satisfying the dependency, or {@code null} if the root has no dependency
+     *         with the desire.
+     * @throws IOException if there is an error reading the graph.
+     */
+    @Nullable
+    public synchronized DAGNode<Component,Dependency> findDependency(Desire desire) throws IOException {
+        Preconditions.notNull("desire", desire);
+        DataInput in = tables.input(NODES, rootIndex);
+        GraphCodec.readVarint(in); // satisfaction
+        in.readByte(); // cache policy
+        int edgeCount = GraphCodec.readCount(in, GraphCodec.MAX_COUNT);
+        for (int i = 0; i < edgeCount; i++) {
+            int tail = GraphCodec.readVarint(in);
+            Dependency dep = tables.readDependency(in);
+            if (dep.getInitialDesire().equals(desire)) {
+                return tables.node(tail);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Get the back edges of the graph.  This materializes the heads and tails of the back edges;
+     * back edges are rare, as they only arise from cyclic dependencies through providers.
+     *
+     * @return The back edges, keyed by head, for {@link org.grouplens.grapht.InjectionContainer#makeInstantiator(DAGNode, SetMultimap)}.
+     * @throws IOException if there is an error reading the graph.
+     */
+    public synchronized SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> getBackEdges() throws IOException {
+        if (backEdges == null) {
+            SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> edges = HashMultimap.create();
+            for (int i = 0; i < tableSizes[BACK_EDGES]; i++) {
+                DAGEdge<Component,Dependency> edge = tables.readBackEdge(tables.input(BACK_EDGES, i));
+                edges.put(edge.getHead(), edge);
+            }
+            backEdges = edges;
+        }
+        return backEdges;
+    }
+
+    /**
+     * Decodes table entries on demand, remembering the ones it has decoded.  The caches are
+     * maps rather than arrays, so tables that are mostly unused cost no heap.  Accessed only
+     * with the graph's lock held.
+     */
+    private class Tables extends GraphCodec.Decoder {
+        private final Map<Integer,String> strings = Maps.newHashMap();
+        private final Map<Integer,Class<?>> classes = Maps.newHashMap();
+        private final Map<Integer,Object> objects = Maps.newHashMap();
+        private final Map<Integer,Member> members = Maps.newHashMap();
+        private final Map<Integer,InjectionPoint> injectionPoints = Maps.newHashMap();
+        private final Map<Integer,Satisfaction> satisfactions = Maps.newHashMap();
+        private final Map<Integer,Desire> desires = Maps.newHashMap();
+        private final Map<Integer,DAGNode<Component,Dependency>> nodes = Maps.newHashMap();
+
+        /**
+         * Open an entry of a table for reading.
+         */
+        DataInputStream input(int table, int i) throws IOException {
+            if (i < 0 || i >= tableSizes[table]) {
+                throw new StreamCorruptedException("invalid index " + i + " in table " + table);
+            }
+            int offset = buffer.getInt(tablePositions[table] + 4 * i);
+            if (offset < 0 || offset >= buffer.limit()) {
+                throw new StreamCorruptedException("invalid offset " + offset);
+            }
+            ByteBuffer entry = buffer.duplicate();
+            entry.position(offset);
+            return new DataInputStream(new BufferInputStream(entry));
+        }
+
+        @Override
+        String string(int i) throws IOException {
+            String str = strings.get(i);
+            if (str == null) {
+                str = input(STRINGS, i).readUTF();
+                strings.put(i, str);
+            }
+            return str;
+        }
+
+        @Override
+        Class<?> type(int i) throws IOException {
+            Class<?> cls = classes.get(i);
+            if (cls == null) {
+                cls = readClass(input(CLASSES, i));
+                classes.put(i, cls);
+            }
+            return cls;
+        }
+
+        @Override
+        Object object(int i) throws IOException {
+            Object obj = objects.get(i);
+            if (obj == null) {
+                ObjectInputStream in = new ObjectInputStream(input(OBJECTS, i));
+                try {
+                    obj = in.readObject();
+                } catch (ClassNotFoundException e) {
+                    throw GraphCodec.invalid("cannot resolve serialized object", e);
+                } finally {
+                    in.close();
+                }
+                objects.put(i, obj);
+            }
+            return obj;
+        }
+
+        @Override
+        Member member(int i) throws IOException {
+            Member member = members.get(i);
+            if (member == null) {
+                member = readMember(input(MEMBERS, i));
+                members.put(i, member);
+            }
+            return member;
+        }
+
+        @Override
+        InjectionPoint injectionPoint(int i) throws IOException {
+            InjectionPoint ip = injectionPoints.get(i);
+            if (ip == null) {
+                ip = readInjectionPoint(input(INJECTION_POINTS, i));
+                injectionPoints.put(i, ip);
+            }
+            return ip;
+        }
+
+        @Override
+        Satisfaction satisfaction(int i) throws IOException {
+            Satisfaction sat = satisfactions.get(i);
+            if (sat == null) {
+                sat = readSatisfaction(input(SATISFACTIONS, i));
+                satisfactions.put(i, sat);
+            }
+            return sat;
+        }
+
+        @Override
+        Desire desire(int i) throws IOException {
+            Desire desire = desires.get(i);
+            if (desire == null) {
+                desire = readDesire(input(DESIRES, i));
+                desires.put(i, desire);
+            }
+            return desire;
+        }
+
+        /**
+         * Materialize a node.  Its unmaterialized descendants are found with an explicit stack,
+         * reading only their tails, and then built in index order; since nodes are written in
+         * topological order, each node's tails are built before it.
+         */
+        @Override
+        DAGNode<Component,Dependency> node(int i) throws IOException {
+            DAGNode<Component,Dependency> node = nodes.get(i);
+            if (node != null) {
+                return node;
+            }
+
+            SortedSet<Integer> pending = Sets.newTreeSet();
+            Deque<Integer> stack = new ArrayDeque<Integer>();
+            stack.push(i);
+            while (!stack.isEmpty()) {
+                int idx = stack.pop();
+                if (nodes.containsKey(idx) || !pending.add(idx)) {
+                    continue;
+                }
+                DataInput in = input(NODES, idx);
+                GraphCodec.readVarint(in); // satisfaction
+                in.readByte(); // cache policy
+                int edgeCount = GraphCodec.readCount(in, GraphCodec.MAX_COUNT);
+                for (int j = 0; j < edgeCount; j++) {
+                    int tail = GraphCodec.readVarint(in);
+                    if (tail < 0 || tail >= idx) {
+                        throw new StreamCorruptedException("node " + idx + " is not in topological order");
+                    }
+                    stack.push(tail);
+                    skipDependency(in);
+                }
+            }
+
+            for (int idx: pending) {
+                node = readNode(input(NODES, idx));
+                nodes.put(idx, node);
+            }
+            return node;
+        }
+    }
+
+    /**
+     * An input stream reading a byte buffer from its position.
+     */
+    private static class BufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        BufferInputStream(ByteBuffer buf) {
+            buffer = buf;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int off, int len) {
+            if (len == 0) {
+                return 0;
+            } else if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(len, buffer.remaining());
+            buffer.get(bytes, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -20,6 +20,7 @@
 package org.grouplens.grapht.solver;
 
 import org.grouplens.grapht.*;
+import org.grouplens.grapht.context.ContextMatcher;
 import org.grouplens.grapht.reflect.*;
 import org.grouplens.grapht.util.InstanceProvider;
 import org.grouplens.grapht.util.Types;
@@ -28,6 +29,7 @@ import javax.inject.Provider;
 import java.io.*;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.util.Collection;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -45,10 +47,19 @@ import java.util.Map;
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
-public class ProviderBindingFunction implements BindingFunction {
+public class ProviderBindingFunction implements ContextAwareBindingFunction, ThreadSafeBindingFunction {
     public ProviderBindingFunction() {
     }
     
+    /**
+     * {@inheritDoc}
+     * <p>This function does not consult the context, so there are no matchers.</p>
+     */
+    @Override
+    public Collection<? extends ContextMatcher> getContextMatchers(DesireChain desire) {
+        return Collections.emptyList();
+    }
+
     @Override
     public BindingResult bind(InjectionContext context, DesireChain desires) throws ResolutionException {
         Desire desire = desires.getCurrentDesire();
@@ -26,6 +26,7 @@ import org.apache.commons.lang3.tuple.Pair;
 import org.grouplens.grapht.ResolutionException;
 import org.grouplens.grapht.context.ContextMatch;
 import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextPattern;
 import org.grouplens.grapht.reflect.QualifierMatcher;
 import org.grouplens.grapht.util.Preconditions;
 import org.slf4j.Logger;
@@ -56,18 +57,64 @@ import java.util.*;
  * 
  * @author <a href="http://grouplens.org">GroupLens Research</a>
  */
-public class RuleBasedBindingFunction implements BindingFunction {
-    private static final Map<Object,Set<BindRule>> bindRuleMemory
-            = new WeakHashMap<Object, Set<BindRule>>();
-
+public class RuleBasedBindingFunction implements ContextAwareBindingFunction, ThreadSafeBindingFunction {
     private static final Logger logger = LoggerFactory.getLogger(RuleBasedBindingFunction.class);
+    private static final ContextPattern ANY_CONTEXT = ContextPattern.any();
     
     private final ImmutableListMultimap<ContextMatcher, BindRule> rules;
-    
+    /**
+     * The rules that can match each dependency type.  Each entry has the rules that bind the type
+     * along with the rules whose type we cannot know in advance, in their original order.
+     */
+    private final Map<Class<?>, ImmutableListMultimap<ContextMatcher, BindRule>> typeIndex;
+    /**
+     * The rules whose matched type cannot be determined in advance, used for all other types.
+     */
+    private final ImmutableListMultimap<ContextMatcher, BindRule> untypedRules;
+
     public RuleBasedBindingFunction(Multimap<ContextMatcher, BindRule> rules) {
         Preconditions.notNull("rules", rules);
         
         this.rules = ImmutableListMultimap.copyOf(rules);
+
+        // Index the rules by dependency type, so we only check the contexts of rules that can
+        // possibly apply to a desire.  We preserve the original rule order within each entry so
+        // that the rules are considered (and reported) exactly as they would be by a full scan.
+        List<Map.Entry<ContextMatcher, BindRule>> untyped = new ArrayList<Map.Entry<ContextMatcher, BindRule>>();
+        Map<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>> builders =
+                new HashMap<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>>();
+        for (Map.Entry<ContextMatcher, BindRule> e: this.rules.entries()) {
+            BindRule rule = e.getValue();
+            if (rule instanceof BindRuleImpl) {
+                Class<?> type = ((BindRuleImpl) rule).getDependencyType();
+                ImmutableListMultimap.Builder<ContextMatcher, BindRule> bld = builders.get(type);
+                if (bld == null) {
+                    bld = ImmutableListMultimap.builder();
+                    // untyped rules seen so far precede this one
+                    for (Map.Entry<ContextMatcher, BindRule> ue: untyped) {
+                        bld.put(ue);
+                    }
+                    builders.put(type, bld);
+                }
+                bld.put(e);
+            } else {
+                // we do not know what this rule matches, so it is a candidate for every type
+                untyped.add(e);
+                for (ImmutableListMultimap.Builder<ContextMatcher, BindRule> bld: builders.values()) {
+                    bld.put(e);
+                }
+            }
+        }
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> untypedBuilder = ImmutableListMultimap.builder();
+        for (Map.Entry<ContextMatcher, BindRule> ue: untyped) {
+            untypedBuilder.put(ue);
+        }
+        untypedRules = untypedBuilder.build();
+
+        typeIndex = new HashMap<Class<?>, ImmutableListMultimap<ContextMatcher, BindRule>>();
+        for (Map.Entry<Class<?>, ImmutableListMultimap.Builder<ContextMatcher, BindRule>> e: builders.entrySet()) {
+            typeIndex.put(e.getKey(), e.getValue().build());
+        }
     }
     
     /**
@@ -78,27 +125,49 @@ public class RuleBasedBindingFunction implements BindingFunction {
         return rules;
     }
     
+    /**
+     * Get the rules that can possibly apply to a desire, based on its type.
+     * @param desire The desire chain.
+     * @return The candidate rules, indexed by context matcher.
+     */
+    private ImmutableListMultimap<ContextMatcher, BindRule> getCandidateRules(DesireChain desire) {
+        ImmutableListMultimap<ContextMatcher, BindRule> candidates =
+                typeIndex.get(desire.getCurrentDesire().getDesiredType());
+        if (candidates == null) {
+            candidates = untypedRules;
+        }
+        return candidates;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>This is the context matchers of the candidate rules for the desire's type, except for
+     * matchers that match every context.</p>
+     */
     @Override
-    public BindingResult bind(InjectionContext context, DesireChain desire) throws ResolutionException {
-        // FIXME Build a better way to remember the applied rules
-        Set<BindRule> appliedRules;
-        synchronized (bindRuleMemory) {
-            appliedRules = bindRuleMemory.get(desire.getKey());
-            if (appliedRules == null) {
-                appliedRules = new HashSet<BindRule>();
-                bindRuleMemory.put(desire.getKey(), appliedRules);
+    public Collection<? extends ContextMatcher> getContextMatchers(DesireChain desire) {
+        List<ContextMatcher> matchers = new ArrayList<ContextMatcher>();
+        for (ContextMatcher matcher: getCandidateRules(desire).keySet()) {
+            if (!matcher.equals(ANY_CONTEXT)) {
+                matchers.add(matcher);
             }
         }
+        return matchers;
+    }
 
+    @Override
+    public BindingResult bind(InjectionContext context, DesireChain desire) throws ResolutionException {
         // collect all bind rules that apply to this desire
         List<Pair<ContextMatch, BindRule>> validRules = new ArrayList<Pair<ContextMatch, BindRule>>();
-        for (ContextMatcher matcher: rules.keySet()) {
+        ImmutableListMultimap<ContextMatcher, BindRule> candidates = getCandidateRules(desire);
+        for (Map.Entry<ContextMatcher, Collection<BindRule>> entry: candidates.asMap().entrySet()) {
+            ContextMatcher matcher = entry.getKey();
             ContextMatch match = matcher.matches(context);
             if (match != null) {
                 // the context applies to the current context, so go through all
                 // bind rules within it and record those that match the desire
-                for (BindRule br: rules.get(matcher)) {
-                    if (br.matches(desire.getCurrentDesire()) && !appliedRules.contains(br)) {
+                for (BindRule br: entry.getValue()) {
+                    if (br.matches(desire.getCurrentDesire()) && !desire.hasAppliedRule(br)) {
                         validRules.add(Pair.of(match, br));
                         logger.trace("Matching rule, context: {}, rule: {}", matcher, br);
                     }
@@ -134,14 +203,15 @@ public class RuleBasedBindingFunction implements BindingFunction {
             }
 
             // apply the bind rule to get a new desire
+            // the solver records the rule in the desire chain, so it is not applied again
             BindRule selectedRule = validRules.get(0).getRight();
-            appliedRules.add(selectedRule);
             
             logger.debug("Applying rule: {} to desire: {}", selectedRule, desire);
             return BindingResult.newBuilder()
                                 .setDesire(selectedRule.apply(desire.getCurrentDesire()))
                                 .setCachePolicy(selectedRule.getCachePolicy())
                                 .setFlags(selectedRule.getFlags())
+                                .setBindRule(selectedRule)
                                 .build();
         }
         
@@ -79,6 +79,16 @@ public final class ClassProxy implements Serializable {
         return className;
     }
 
+    /**
+     * Get the checksum of the class's injection-sensitive members.  {@link #resolve()} fails if
+     * the class it finds does not have this checksum.
+     * @return The class checksum.
+     * @since 0.11
+     */
+    public long getChecksum() {
+        return checksum;
+    }
+
     @Override
     public String toString() {
         return "proxy of " + className;
@@ -116,7 +126,8 @@ public final class ClassProxy implements Serializable {
             } else {
                 cls = ClassUtils.getClass(classLoader, className);
             }
-            long check = checksumClass(cls);
+            // the cached proxy for the class has its checksum, so it is only computed once
+            long check = of(cls).checksum;
             if (!isSerializationPermissive() && checksum != check) {
                 throw new ClassNotFoundException("checksum mismatch for " + cls.getName());
             } else {
@@ -147,6 +158,20 @@ public final class ClassProxy implements Serializable {
         return proxy;
     }
 
+    /**
+     * Construct a class proxy for a class name and checksum, such as one read from a stored
+     * graph.  The proxy resolves like a deserialized proxy, using the default class loader.
+     *
+     * @param name The class name.
+     * @param checksum The checksum the class is expected to have.
+     * @return The class proxy.
+     * @see #getChecksum()
+     * @since 0.11
+     */
+    public static ClassProxy forName(String name, long checksum) {
+        return new ClassProxy(name, checksum);
+    }
+
     private static final Charset UTF8 = Charset.forName("UTF-8");
 
     public static boolean isSerializationPermissive() {
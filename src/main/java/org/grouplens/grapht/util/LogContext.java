@@ -21,24 +21,88 @@ package org.grouplens.grapht.util;
 
 import java.util.Collections;
 import java.util.Map;
+import javax.annotation.Nullable;
 import org.slf4j.MDC;
 
 /**
  * Utility class to manage log data with {@link MDC}.  This class allows MDC parameters
  * to be set, and popped back off when the context is finished.
+ *
+ * <p>Grapht can record the class, injection point and provider being instantiated in the MDC.  Since this
+ * costs time on every instantiation, it is off by default; it is enabled by setting the
+ * {@code grapht.log.mdc} system property to {@code true} or calling {@link #setEnabled(boolean)}.
+ * The instantiators use {@link #push(String, String)} and {@link #pop(String, String)}, which
+ * save and restore a single key rather than copying the whole context map.</p>
  */
 
 public class LogContext {
+    /**
+     * The system property controlling whether instantiation details are recorded in the MDC.
+     */
+    public static final String ENABLED_PROPERTY = "grapht.log.mdc";
+
+    private static volatile boolean enabled = Boolean.getBoolean(ENABLED_PROPERTY);
+
     @SuppressWarnings("rawtypes")
 
     private final Map memory = MDC.getCopyOfContextMap();
 
     private  LogContext() {}
 
+    /**
+     * Query whether Grapht records instantiation details in the MDC.
+     * @return {@code true} if instantiators should push MDC data.
+     * @since 0.11
+     */
+    public static boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Enable or disable recording instantiation details in the MDC.  This is a global setting.
+     * @param on Whether instantiators should push MDC data.
+     * @since 0.11
+     */
+    public static void setEnabled(boolean on) {
+        enabled = on;
+    }
+
+    /**
+     * Set a key in the MDC, remembering its previous value.  Every call must be paired with a
+     * call to {@link #pop(String, String)} on the same thread, usually in a {@code finally} block.
+     *
+     * @param key The key to set.
+     * @param value The key's new value.
+     * @return The key's previous value, to pass to {@link #pop(String, String)}.
+     * @since 0.11
+     */
+    @Nullable
+    public static String push(String key, String value) {
+        String previous = MDC.get(key);
+        MDC.put(key, value);
+        return previous;
+    }
+
+    /**
+     * Restore a key set with {@link #push(String, String)}.
+     *
+     * @param key The key to restore.
+     * @param previous The value returned by the matching {@link #push(String, String)}.
+     * @since 0.11
+     */
+    public static void pop(String key, @Nullable String previous) {
+        if (previous == null) {
+            MDC.remove(key);
+        } else {
+            MDC.put(key, previous);
+        }
+    }
+
     /**
      * Method creates a new log context,
      * capturing the MDC's current data to be
-     * restored when finish() is called.
+     * restored when finish() is called.  This copies the context map; prefer
+     * {@link #push(String, String)} when setting a single key.
      */
     static public  LogContext create() {
         return new LogContext();
@@ -19,13 +19,20 @@
  */
 package org.grouplens.grapht.util;
 
+import com.google.common.base.Throwables;
+import com.google.common.util.concurrent.Uninterruptibles;
+
 import javax.annotation.Nonnull;
 import javax.annotation.concurrent.ThreadSafe;
 import javax.inject.Provider;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * MemoizingProvider is a Provider that enforces memoization or caching on
- * another Provider that it wraps.
+ * another Provider that it wraps.  The first thread to call {@link #get()} invokes the wrapped
+ * provider; concurrent callers park until its result is ready.  If the wrapped provider fails,
+ * the threads waiting on it see the same failure and the next call tries again.
  *
  * @param <T>
  * @author <a href="http://grouplens.org">GroupLens Research</a>
@@ -34,17 +41,14 @@ import javax.inject.Provider;
 public class MemoizingProvider<T> implements TypedProvider<T> {
     private final Provider<T> wrapped;
 
-    // We track a boolean because this supports providing null instances, in
-    // which case we can't just check against null to see if we've already
+    // We track the invocation rather than the value because this supports providing null
+    // instances, in which case we can't just check against null to see if we've already
     // queried the base provider
-    private volatile T cached;
-    private volatile boolean invoked;
+    private final AtomicReference<Invocation> invocation = new AtomicReference<Invocation>();
 
     public MemoizingProvider(@Nonnull Provider<T> provider) {
         Preconditions.notNull("provider", provider);
         wrapped = provider;
-        cached = null;
-        invoked = false;
     }
 
     @Override
@@ -54,14 +58,46 @@ public class MemoizingProvider<T> implements TypedProvider<T> {
 
     @Override
     public T get() {
-        if (!invoked) {
-            synchronized (this) {
-                if (!invoked) {
-                    cached = wrapped.get();
-                    invoked = true;
+        Invocation inv = invocation.get();
+        if (inv == null) {
+            Invocation mine = new Invocation();
+            if (invocation.compareAndSet(null, mine)) {
+                try {
+                    mine.value = wrapped.get();
+                } catch (Throwable th) {
+                    mine.error = th;
+                    // let a later call try again
+                    invocation.compareAndSet(mine, null);
+                    throw Throwables.propagate(th);
+                } finally {
+                    mine.builder = null;
+                    mine.done.countDown();
                 }
+                return mine.value;
+            }
+            inv = invocation.get();
+            if (inv == null) {
+                // the invocation we lost to failed; try again
+                return get();
             }
+        } else if (inv.builder == Thread.currentThread()) {
+            // a cyclic request from the invoking thread; waiting would deadlock
+            return wrapped.get();
+        }
+
+        if (inv.done.getCount() > 0) {
+            Uninterruptibles.awaitUninterruptibly(inv.done);
         }
-        return cached;
+        if (inv.error != null) {
+            throw Throwables.propagate(inv.error);
+        }
+        return inv.value;
+    }
+
+    private class Invocation {
+        final CountDownLatch done = new CountDownLatch(1);
+        volatile Thread builder = Thread.currentThread();
+        T value;
+        Throwable error;
     }
 }
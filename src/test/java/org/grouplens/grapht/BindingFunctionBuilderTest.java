@@ -366,6 +366,32 @@ public class BindingFunctionBuilderTest {
         }
     }
     
+    @Test
+    public void testFingerprint() throws Exception {
+        BindingFunctionBuilder b1 = new BindingFunctionBuilder();
+        b1.getRootContext().bind(InterfaceA.class).to(TypeA.class);
+        b1.getRootContext().bind(InterfaceB.class).to(TypeB.class);
+        BindingFunctionBuilder b2 = new BindingFunctionBuilder();
+        b2.getRootContext().bind(InterfaceB.class).to(TypeB.class);
+        b2.getRootContext().bind(InterfaceA.class).to(TypeA.class);
+        BindingFunctionBuilder b3 = new BindingFunctionBuilder();
+        b3.getRootContext().bind(InterfaceA.class).to(TypeA.class);
+        b3.getRootContext().within(TypeC.class).bind(InterfaceB.class).to(TypeB.class);
+
+        Assert.assertNotNull(b1.getFingerprint());
+        // the order of rules does not matter, but their contexts do
+        assertEquals(b1.getFingerprint(), b2.getFingerprint());
+        Assert.assertNotEquals(b1.getFingerprint(), b3.getFingerprint());
+        Assert.assertNotEquals(b1.getFingerprint(), new BindingFunctionBuilder().getFingerprint());
+    }
+
+    @Test
+    public void testFingerprintUnserializable() throws Exception {
+        BindingFunctionBuilder builder = new BindingFunctionBuilder();
+        builder.getRootContext().bind(InterfaceA.class).to(new TypeA());
+        Assert.assertNull(builder.getFingerprint());
+    }
+
     private void assertEqualBindings(ListMultimap<ContextMatcher, BindRule> expected, ListMultimap<ContextMatcher, BindRule> actual) {
         // This special assert is needed because the collection interface doesn't specify
         // equality, but we want it to behave like set equality
@@ -0,0 +1,123 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.junit.Before;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class InjectionContainerTest {
+    private DAGNode<Component, Dependency> node;
+
+    @Before
+    public void solve() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, Root.class, false));
+        node = solver.getGraph().getOutgoingEdges().iterator().next().getTail();
+    }
+
+    @Test
+    public void testNewInstances() throws Exception {
+        InjectionContainer container = InjectionContainer.create(CachePolicy.NEW_INSTANCE);
+        Instantiator inst = container.makeInstantiator(node);
+        assertThat(container.makeInstantiator(node), sameInstance(inst));
+        Root first = (Root) inst.instantiate();
+        Root second = (Root) inst.instantiate();
+        assertThat(second, not(sameInstance(first)));
+        assertThat(second.left, not(sameInstance(first.left)));
+        assertThat(second.left.leaf, not(sameInstance(first.left.leaf)));
+        assertThat(second.right.leaf, notNullValue());
+    }
+
+    @Test
+    public void testSharedInstances() throws Exception {
+        Root root = (Root) InjectionContainer.create(CachePolicy.MEMOIZE)
+                                             .makeInstantiator(node)
+                                             .instantiate();
+        // the leaf node is shared, so it has one instantiator and one instance
+        assertThat(root.right.leaf, sameInstance(root.left.leaf));
+    }
+
+    @Test
+    public void testConcurrentMakeInstantiator() throws Exception {
+        final InjectionContainer container = InjectionContainer.create(CachePolicy.MEMOIZE);
+        final CyclicBarrier barrier = new CyclicBarrier(4);
+        ExecutorService exec = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<Object>> results = exec.invokeAll(Collections.nCopies(4, new Callable<Object>() {
+                @Override
+                public Object call() throws Exception {
+                    barrier.await();
+                    return container.makeInstantiator(node).instantiate();
+                }
+            }));
+            Object first = results.get(0).get();
+            for (Future<Object> result: results) {
+                assertThat(result.get(), sameInstance(first));
+            }
+        } finally {
+            exec.shutdown();
+        }
+    }
+
+    public static class Leaf { }
+
+    public static class Left {
+        private final Leaf leaf;
+
+        @Inject
+        public Left(Leaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    public static class Right {
+        private final Leaf leaf;
+
+        @Inject
+        public Right(Leaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    public static class Root {
+        private final Left left;
+        private final Right right;
+
+        @Inject
+        public Root(Left left, Right right) {
+            this.left = left;
+            this.right = right;
+        }
+    }
+}
@@ -19,14 +19,38 @@
  */
 package org.grouplens.grapht;
 
+import com.google.common.util.concurrent.UncheckedTimeoutException;
 import org.grouplens.grapht.annotation.AnnotationBuilder;
 import org.grouplens.grapht.reflect.internal.types.*;
+import org.grouplens.grapht.solver.DefaultInjector;
+import org.hamcrest.Matchers;
 import org.junit.Assert;
+import org.junit.Rule;
 import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
 
+import javax.inject.Inject;
 import javax.inject.Named;
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class InjectorBuilderTest {
+    @Rule
+    public TemporaryFolder cacheDir = new TemporaryFolder();
+
     @Test
     public void testNewInstanceProviderCachePolicy() throws Exception {
         // Test that injecting a new-instance provider creates
@@ -260,6 +284,325 @@ public class InjectorBuilderTest {
         i.getInstance(TypeN2.class);
     }
     
+    @Test
+    public void testConcurrentGetInstance() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(InterfaceA.class).shared().to(TypeB.class);
+        final Injector i = b.build();
+
+        ExecutorService pool = Executors.newFixedThreadPool(8);
+        try {
+            List<Future<InterfaceA>> results = new ArrayList<Future<InterfaceA>>();
+            for (int n = 0; n < 64; n++) {
+                results.add(pool.submit(new Callable<InterfaceA>() {
+                    @Override
+                    public InterfaceA call() throws Exception {
+                        return i.getInstance(InterfaceA.class);
+                    }
+                }));
+            }
+            InterfaceA first = results.get(0).get();
+            Assert.assertTrue(first instanceof TypeB);
+            for (Future<InterfaceA> result: results) {
+                Assert.assertSame(first, result.get());
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    public void testSharedHandle() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(InterfaceA.class).shared().to(TypeB.class);
+        Injector i = b.build();
+        InjectionHandle<InterfaceA> h = i.getHandle(InterfaceA.class);
+        Assert.assertEquals(InterfaceA.class, h.getType());
+        Assert.assertTrue(h.get() instanceof TypeB);
+        Assert.assertSame(h.get(), h.get());
+        Assert.assertSame(i.getInstance(InterfaceA.class), h.get());
+    }
+
+    @Test
+    public void testUnsharedHandle() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(InterfaceA.class).unshared().to(TypeB.class);
+        Injector i = b.build();
+        InjectionHandle<InterfaceA> h = i.getHandle(InterfaceA.class);
+        Assert.assertTrue(h.get() instanceof TypeB);
+        Assert.assertNotSame(h.get(), h.get());
+    }
+
+    @Test
+    public void testQualifiedHandle() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create();
+        b.bind(String.class).withQualifier(Names.named("foo")).to("hello");
+        Injector i = b.build();
+        InjectionHandle<String> h = i.getHandle(Names.named("foo"), String.class);
+        Assert.assertEquals("hello", h.get());
+    }
+
+    @Test(expected=ResolutionException.class)
+    public void testUnresolvableHandle() throws InjectionException {
+        Injector i = InjectorBuilder.create().build();
+        i.getHandle(ShouldWork.class);
+    }
+
+    @Test
+    public void testMethodHandleBackend() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .setInstantiatorBackend(InstantiatorBackend.METHOD_HANDLE);
+        Injector i = b.build();
+        TypeC c = i.getInstance(TypeC.class);
+        Assert.assertEquals(5, c.getIntValue());
+        Assert.assertTrue(c.getInterfaceA() instanceof TypeB);
+        Assert.assertTrue(c.getTypeA() instanceof TypeB);
+        Assert.assertTrue(c.getInterfaceB() instanceof TypeB);
+        Assert.assertTrue(c.getTypeB() instanceof TypeB);
+    }
+
+    @Test
+    public void testMethodHandleBackendUnshared() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .setInstantiatorBackend(InstantiatorBackend.METHOD_HANDLE);
+        b.bind(InterfaceA.class).unshared().to(TypeA.class);
+        Injector i = b.build();
+        InjectionHandle<InterfaceA> h = i.getHandle(InterfaceA.class);
+        Assert.assertTrue(h.get() instanceof TypeA);
+        Assert.assertNotSame(h.get(), h.get());
+    }
+
+    @Test
+    public void testMethodHandleProviderCycle() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .setProviderInjectionEnabled(true)
+                                           .setInstantiatorBackend(InstantiatorBackend.METHOD_HANDLE);
+        Injector i = b.build();
+        CycleA cycleA = i.getInstance(CycleA.class);
+        Assert.assertNotNull(cycleA.b);
+        Assert.assertSame(cycleA, cycleA.b.pa.get());
+    }
+
+    @Test(expected=ConstructionException.class)
+    public void testMethodHandleBadNullBinding() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .setInstantiatorBackend(InstantiatorBackend.METHOD_HANDLE);
+        b.bind(InterfaceA.class).toNull();
+        Injector i = b.build();
+        i.getInstance(TypeN2.class);
+    }
+
+    @Test
+    public void testEagerInitialization() throws InjectionException {
+        InjectorBuilder b = InjectorBuilder.create()
+                                           .setEagerInitialization(true)
+                                           .setInitializationThreads(4);
+        b.bind(InterfaceA.class).unshared().to(TypeA.class);
+        DefaultInjector i = (DefaultInjector) b.build();
+        try {
+            Counted.count.set(0);
+            InjectionHandle<Wide> h = i.getHandle(Wide.class);
+            // all four leaves and the root are built before any instance is requested
+            Assert.assertEquals(4, Counted.count.get());
+            List<ComponentBuildTime> times = i.getBuildTimes();
+            Assert.assertEquals(5, times.size());
+            for (ComponentBuildTime time: times.subList(0, 4)) {
+                Assert.assertEquals(0, time.getLevel());
+            }
+            Assert.assertEquals(1, times.get(4).getLevel());
+            Assert.assertTrue(times.get(4).getDuration(TimeUnit.NANOSECONDS) >= 0);
+
+            Wide w = h.get();
+            Assert.assertSame(w, i.getInstance(Wide.class));
+            Assert.assertSame(w.c1, i.getInstance(Counted1.class));
+            Assert.assertEquals(4, Counted.count.get());
+        } finally {
+            i.close();
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testEagerInitializationDoesNotBlockResolution() throws Exception {
+        final DefaultInjector i = (DefaultInjector) InjectorBuilder.create()
+                                                                   .setEagerInitialization(true)
+                                                                   .setInitializationThreads(1)
+                                                                   .build();
+        ExecutorService exec = Executors.newSingleThreadExecutor();
+        Blocking.started = new CountDownLatch(1);
+        Blocking.release = new CountDownLatch(1);
+        try {
+            Future<Blocking> slow = exec.submit(new Callable<Blocking>() {
+                @Override
+                public Blocking call() throws Exception {
+                    return i.getInstance(Blocking.class);
+                }
+            });
+            Assert.assertTrue(Blocking.started.await(10, TimeUnit.SECONDS));
+            // an unrelated desire resolves while the slow component is being built
+            Assert.assertThat(i.getInstance(Counted1.class), Matchers.notNullValue());
+            Blocking.release.countDown();
+            Assert.assertThat(slow.get(10, TimeUnit.SECONDS), Matchers.notNullValue());
+        } finally {
+            Blocking.release.countDown();
+            exec.shutdown();
+            i.close();
+        }
+    }
+
+    @Test
+    public void testGraphCache() throws InjectionException {
+        File dir = cacheDir.getRoot();
+        InjectorBuilder b = InjectorBuilder.create().setGraphCacheDirectory(dir);
+        b.bind(InterfaceA.class).to(TypeA.class);
+        DefaultInjector i1 = (DefaultInjector) b.build();
+        Assert.assertThat(i1.getSolver().getGraph().getOutgoingEdges(), Matchers.<Object>empty());
+        i1.getInstance(Wide.class);
+        // the graph is not written until the injector is flushed or closed
+        Assert.assertThat(dir.listFiles(), Matchers.arrayWithSize(0));
+        Assert.assertTrue(i1.flushGraphCache());
+        Assert.assertThat(dir.listFiles(), Matchers.arrayWithSize(1));
+        // nothing new to write
+        Assert.assertFalse(i1.flushGraphCache());
+        i1.getInstance(Counted1.class);
+        i1.close();
+        Assert.assertThat(dir.listFiles(), Matchers.arrayWithSize(1));
+
+        // the second injector starts with the cached graph
+        DefaultInjector i2 = (DefaultInjector) b.build();
+        Assert.assertThat(i2.getSolver().getGraph().getOutgoingEdges(), Matchers.hasSize(2));
+        Assert.assertThat(i2.getInstance(Wide.class), Matchers.instanceOf(Wide.class));
+
+        // a different configuration does not
+        InjectorBuilder b2 = InjectorBuilder.create().setGraphCacheDirectory(dir);
+        b2.bind(InterfaceA.class).to(TypeA.class);
+        b2.bind(InterfaceB.class).to(TypeB.class);
+        DefaultInjector i3 = (DefaultInjector) b2.build();
+        Assert.assertThat(i3.getSolver().getGraph().getOutgoingEdges(), Matchers.<Object>empty());
+    }
+
+    @Test
+    public void testGraphCacheRetriesFailedStore() throws Exception {
+        File dir = new File(cacheDir.getRoot(), "graphs");
+        // a file in the way of the cache directory
+        Assert.assertTrue(dir.createNewFile());
+        DefaultInjector inj = (DefaultInjector) InjectorBuilder.create().setGraphCacheDirectory(dir).build();
+        inj.getInstance(Wide.class);
+        Assert.assertFalse(inj.flushGraphCache());
+        Assert.assertTrue(dir.delete());
+        Assert.assertTrue(inj.flushGraphCache());
+        Assert.assertThat(dir.listFiles(), Matchers.arrayWithSize(1));
+        inj.close();
+    }
+
+    @Test
+    public void testCloseAfterFailedStore() throws Exception {
+        InjectorBuilder b = InjectorBuilder.create().setGraphCacheDirectory(cacheDir.getRoot());
+        b.bind(Unwritable.class).to(new Unwritable());
+        Injector inj = b.build();
+        // fail only when the graph is stored, not when the configuration is fingerprinted
+        Unwritable.fail = true;
+        Closing.closed.set(false);
+        inj.getInstance(Closing.class);
+        try {
+            inj.close();
+        } finally {
+            Unwritable.fail = false;
+        }
+        Assert.assertTrue(Closing.closed.get());
+        Assert.assertThat(cacheDir.getRoot().listFiles(), Matchers.arrayWithSize(0));
+    }
+
+    public static class Unwritable implements Serializable {
+        private static final long serialVersionUID = 1L;
+        static volatile boolean fail;
+
+        private void writeObject(ObjectOutputStream out) throws IOException {
+            if (fail) {
+                throw new UnsupportedOperationException("cannot be written");
+            }
+            out.defaultWriteObject();
+        }
+    }
+
+    public static class Closing implements Closeable {
+        static final AtomicBoolean closed = new AtomicBoolean();
+
+        @Inject
+        public Closing(Unwritable dep) { }
+
+        @Override
+        public void close() {
+            closed.set(true);
+        }
+    }
+
+    @Test(timeout = 20000)
+    public void testSubMillisecondShutdownTimeout() throws Exception {
+        Injector inj = InjectorBuilder.create()
+                                      .setShutdownTimeout(1, TimeUnit.MICROSECONDS)
+                                      .build();
+        inj.getInstance(SlowClosing.class);
+        try {
+            inj.close();
+            Assert.fail("close should time out");
+        } catch (UncheckedTimeoutException e) {
+            /* expected */
+        }
+    }
+
+    public static class SlowClosing implements Closeable {
+        @Override
+        public void close() {
+            try {
+                Thread.sleep(5000);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    @Test
+    public void testLazyInitialization() throws InjectionException {
+        DefaultInjector i = (DefaultInjector) InjectorBuilder.create().build();
+        Counted.count.set(0);
+        InjectionHandle<Wide> h = i.getHandle(Wide.class);
+        Assert.assertEquals(0, Counted.count.get());
+        Assert.assertThat(i.getBuildTimes(), Matchers.<ComponentBuildTime>empty());
+        h.get();
+        Assert.assertEquals(4, Counted.count.get());
+    }
+
+    public static class Counted {
+        static final AtomicInteger count = new AtomicInteger();
+
+        public Counted() {
+            count.incrementAndGet();
+        }
+    }
+    public static class Counted1 extends Counted { }
+    public static class Counted2 extends Counted { }
+    public static class Counted3 extends Counted { }
+    public static class Counted4 extends Counted { }
+
+    public static class Wide {
+        final Counted1 c1;
+
+        @Inject
+        public Wide(Counted1 c1, Counted2 c2, Counted3 c3, Counted4 c4) {
+            this.c1 = c1;
+        }
+    }
+
+    public static class Blocking {
+        static CountDownLatch started;
+        static CountDownLatch release;
+
+        public Blocking() throws InterruptedException {
+            started.countDown();
+            release.await();
+        }
+    }
+
     public static interface ShouldWork { }
     
     public static class NotInjectable implements ShouldWork {
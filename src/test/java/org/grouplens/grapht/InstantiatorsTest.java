@@ -0,0 +1,187 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import org.grouplens.grapht.util.MemoizingProvider;
+import org.junit.Test;
+
+import javax.inject.Inject;
+import javax.inject.Provider;
+import javax.inject.Singleton;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class InstantiatorsTest {
+    private static final int THREADS = 4000;
+
+    @Test
+    public void testMemoizeFailure() throws Exception {
+        final AtomicInteger calls = new AtomicInteger();
+        Instantiator inst = Instantiators.memoize(new Instantiator() {
+            @Override
+            public Object instantiate() throws ConstructionException {
+                calls.incrementAndGet();
+                throw new ConstructionException(String.class, "failed", null);
+            }
+
+            @Override
+            public Class getType() {
+                return String.class;
+            }
+        });
+        for (int i = 0; i < 2; i++) {
+            try {
+                inst.instantiate();
+                fail("instantiation should fail");
+            } catch (ConstructionException e) {
+                assertThat(e.getMessage(), containsString("failed"));
+            }
+        }
+        // failures are memoized too
+        assertThat(calls.get(), equalTo(1));
+    }
+
+    @Test
+    public void testMemoizeReentrant() throws Exception {
+        final AtomicReference<Instantiator> self = new AtomicReference<Instantiator>();
+        final AtomicInteger calls = new AtomicInteger();
+        self.set(Instantiators.memoize(new Instantiator() {
+            @Override
+            public Object instantiate() throws ConstructionException {
+                if (calls.incrementAndGet() == 1) {
+                    // a cyclic request must not wait on itself
+                    assertThat(self.get().instantiate(), notNullValue());
+                }
+                return new Object();
+            }
+
+            @Override
+            public Class getType() {
+                return Object.class;
+            }
+        }));
+        Object obj = self.get().instantiate();
+        assertThat(self.get().instantiate(), sameInstance(obj));
+        assertThat(calls.get(), equalTo(2));
+    }
+
+    @Test
+    public void testMemoizingProviderRetriesFailure() {
+        final AtomicInteger calls = new AtomicInteger();
+        MemoizingProvider<String> prov = new MemoizingProvider<String>(new Provider<String>() {
+            @Override
+            public String get() {
+                if (calls.incrementAndGet() == 1) {
+                    throw new IllegalStateException("not yet");
+                }
+                return "hello";
+            }
+        });
+        try {
+            prov.get();
+            fail("provider should fail");
+        } catch (IllegalStateException e) {
+            /* expected */
+        }
+        assertThat(prov.get(), equalTo("hello"));
+        assertThat(prov.get(), equalTo("hello"));
+        assertThat(calls.get(), equalTo(2));
+    }
+
+    /**
+     * Many threads request cold singletons whose constructors block; each singleton must be
+     * built exactly once, and every thread must get it.
+     */
+    @Test
+    public void testManyThreadsRequestColdSingletons() throws Exception {
+        SlowA.builds.set(0);
+        SlowB.builds.set(0);
+        final Injector injector = InjectorBuilder.create().build();
+        final CountDownLatch start = new CountDownLatch(1);
+        final ConcurrentLinkedQueue<Object> results = new ConcurrentLinkedQueue<Object>();
+        final ConcurrentLinkedQueue<Throwable> errors = new ConcurrentLinkedQueue<Throwable>();
+        List<Thread> threads = new ArrayList<Thread>(THREADS);
+        for (int i = 0; i < THREADS; i++) {
+            final boolean wantA = i % 2 == 0;
+            // small stacks, so we can afford thousands of threads
+            Thread thread = new Thread(null, new Runnable() {
+                @Override
+                public void run() {
+                    try {
+                        start.await();
+                        results.add(wantA ? injector.getInstance(SlowA.class)
+                                          : injector.getInstance(SlowB.class));
+                    } catch (Throwable th) {
+                        errors.add(th);
+                    }
+                }
+            }, "cold-singleton-" + i, 256 * 1024);
+            thread.start();
+            threads.add(thread);
+        }
+        start.countDown();
+        for (Thread thread: threads) {
+            thread.join();
+        }
+
+        assertThat(errors, empty());
+        assertThat(results, hasSize(THREADS));
+        assertThat(SlowA.builds.get(), equalTo(1));
+        assertThat(SlowB.builds.get(), equalTo(1));
+        SlowA a = injector.getInstance(SlowA.class);
+        SlowB b = injector.getInstance(SlowB.class);
+        assertThat(b.a, sameInstance(a));
+        for (Object obj: results) {
+            assertThat(obj, anyOf(sameInstance((Object) a), sameInstance((Object) b)));
+        }
+    }
+
+    @Singleton
+    public static class SlowA {
+        static final AtomicInteger builds = new AtomicInteger();
+
+        @Inject
+        public SlowA() throws InterruptedException {
+            builds.incrementAndGet();
+            Thread.sleep(50);
+        }
+    }
+
+    @Singleton
+    public static class SlowB {
+        static final AtomicInteger builds = new AtomicInteger();
+        final SlowA a;
+
+        @Inject
+        public SlowB(SlowA a) throws InterruptedException {
+            builds.incrementAndGet();
+            this.a = a;
+            Thread.sleep(50);
+        }
+    }
+}
@@ -0,0 +1,181 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht;
+
+import com.google.common.util.concurrent.UncheckedExecutionException;
+import com.google.common.util.concurrent.UncheckedTimeoutException;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LifecycleManagerTest {
+    private final List<String> closed = Collections.synchronizedList(new ArrayList<String>());
+
+    @Test
+    public void testReverseRegistrationOrder() {
+        LifecycleManager mgr = new LifecycleManager();
+        mgr.registerComponent(new Component("a"));
+        mgr.registerComponent(new Object());
+        mgr.registerComponent(new Component("b"));
+        mgr.close();
+        assertThat(closed, contains("b", "a"));
+        assertThat(mgr.getTeardownTimes(), hasSize(2));
+        assertThat(mgr.getTeardownTimes().get(0).getLevel(), equalTo(LifecycleManager.NO_LEVEL));
+
+        // closing again does nothing
+        mgr.close();
+        assertThat(closed, hasSize(2));
+    }
+
+    @Test
+    public void testLevelOrder() {
+        LifecycleManager mgr = new LifecycleManager();
+        mgr.atLevel(0).registerComponent(new Component("leaf"));
+        mgr.atLevel(1).registerComponent(new Component("middle"));
+        mgr.registerComponent(new Component("unleveled"));
+        mgr.atLevel(2).registerComponent(new Component("top"));
+        mgr.close();
+        assertThat(closed, contains("unleveled", "top", "middle", "leaf"));
+    }
+
+    @Test
+    public void testLevelTornDownConcurrently() {
+        LifecycleManager mgr = new LifecycleManager(2, 10, TimeUnit.SECONDS);
+        // each component waits for the other to start closing
+        CountDownLatch latch = new CountDownLatch(2);
+        mgr.atLevel(0).registerComponent(new Component("leaf"));
+        mgr.atLevel(1).registerComponent(new Rendezvous("a", latch));
+        mgr.atLevel(1).registerComponent(new Rendezvous("b", latch));
+        mgr.close();
+        assertThat(closed, hasSize(3));
+        assertThat(closed.subList(0, 2), containsInAnyOrder("a", "b"));
+        assertThat(closed.get(2), equalTo("leaf"));
+        for (ComponentTeardownTime time: mgr.getTeardownTimes()) {
+            assertThat(time.isTimedOut(), equalTo(false));
+        }
+    }
+
+    @Test
+    public void testTimeout() {
+        LifecycleManager mgr = new LifecycleManager(1, 100, TimeUnit.MILLISECONDS);
+        mgr.atLevel(0).registerComponent(new Component("leaf"));
+        mgr.atLevel(1).registerComponent(new Rendezvous("stuck", new CountDownLatch(2)));
+        try {
+            mgr.close();
+            fail("close should time out");
+        } catch (UncheckedTimeoutException e) {
+            /* expected */
+        }
+        // the dependency is still torn down
+        assertThat(closed, contains("leaf"));
+        List<ComponentTeardownTime> times = mgr.getTeardownTimes();
+        assertThat(times, hasSize(2));
+        assertThat(times.get(0).getType(), equalTo((Class) Rendezvous.class));
+        assertThat(times.get(0).isTimedOut(), equalTo(true));
+        assertThat(times.get(0).getDuration(TimeUnit.MILLISECONDS), greaterThanOrEqualTo(100L));
+        assertThat(times.get(1).isTimedOut(), equalTo(false));
+    }
+
+    @Test
+    public void testFailureDoesNotStopTeardown() {
+        LifecycleManager mgr = new LifecycleManager(2, 0, TimeUnit.MILLISECONDS);
+        mgr.atLevel(0).registerComponent(new Component("leaf"));
+        mgr.atLevel(1).registerComponent(new Failing());
+        try {
+            mgr.close();
+            fail("close should fail");
+        } catch (UncheckedExecutionException e) {
+            assertThat(e.getCause().getMessage(), equalTo("close failed"));
+        }
+        assertThat(closed, contains("leaf"));
+    }
+
+    @Test
+    public void testConcurrentRegistration() throws Exception {
+        final LifecycleManager mgr = new LifecycleManager(4, 0, TimeUnit.MILLISECONDS);
+        List<Thread> threads = new ArrayList<Thread>();
+        for (int i = 0; i < 8; i++) {
+            final int t = i;
+            threads.add(new Thread() {
+                @Override
+                public void run() {
+                    for (int j = 0; j < 500; j++) {
+                        mgr.atLevel(j % 3).registerComponent(new Component(t + "-" + j));
+                    }
+                }
+            });
+        }
+        for (Thread t: threads) {
+            t.start();
+        }
+        for (Thread t: threads) {
+            t.join();
+        }
+        mgr.close();
+        assertThat(closed, hasSize(4000));
+        assertThat(mgr.getTeardownTimes(), hasSize(4000));
+    }
+
+    private class Component implements AutoCloseable {
+        private final String name;
+
+        Component(String name) {
+            this.name = name;
+        }
+
+        @Override
+        public void close() {
+            closed.add(name);
+        }
+    }
+
+    private class Rendezvous implements AutoCloseable {
+        private final String name;
+        private final CountDownLatch latch;
+
+        Rendezvous(String name, CountDownLatch latch) {
+            this.name = name;
+            this.latch = latch;
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            latch.countDown();
+            if (latch.await(5, TimeUnit.SECONDS)) {
+                closed.add(name);
+            }
+        }
+    }
+
+    private static class Failing implements AutoCloseable {
+        @Override
+        public void close() throws Exception {
+            throw new Exception("close failed");
+        }
+    }
+}
@@ -25,9 +25,15 @@ import org.grouplens.grapht.solver.InjectionContext;
 import org.grouplens.grapht.reflect.Desire;
 import org.grouplens.grapht.reflect.Desires;
 import org.grouplens.grapht.reflect.MockSatisfaction;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.reflect.InjectionPoint;
+import org.grouplens.grapht.reflect.Satisfaction;
 import org.junit.Test;
 
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
 
 import static org.hamcrest.CoreMatchers.notNullValue;
 import static org.hamcrest.CoreMatchers.nullValue;
@@ -275,6 +281,84 @@ public class ContextPatternTest {
         assertThat(patLimited.matches(ctx1), lessThan(patAny.matches(ctx1)));
     }
 
+    @Test
+    public void testIncrementalMatchOfExtendedContext() {
+        ContextPattern pat = ContextPattern.subsequence(A.class, B.class);
+        InjectionContext ctx1 = makeContext(A.class);
+        assertThat(pat.matches(ctx1), nullValue());
+        InjectionContext ctx2 = ctx1.extend(new MockSatisfaction(Bp.class, new ArrayList<Desire>()),
+                                            new MockInjectionPoint(Bp.class, null, false));
+        assertThat(pat.matches(ctx2), notNullValue());
+        assertThat(pat.matches(ctx2), equalTo(pat.matches(makeContext(A.class, Bp.class))));
+        assertThat(pat.matches(ctx1), nullValue());
+    }
+
+    @Test
+    public void testMatchesBacktrackingSearch() {
+        // compare the automaton with a straightforward backtracking search on random patterns
+        Class<?>[] types = {A.class, B.class, C.class, Ap.class, Bp.class, Cp.class};
+        Random rng = new Random(42);
+        for (int iter = 0; iter < 2000; iter++) {
+            ContextPattern pat = ContextPattern.empty();
+            List<ContextPattern.Element> elements = new ArrayList<ContextPattern.Element>();
+            int plen = rng.nextInt(6);
+            for (int i = 0; i < plen; i++) {
+                ContextElementMatcher m;
+                switch (rng.nextInt(4)) {
+                case 0:
+                    m = ContextElements.matchAny();
+                    break;
+                case 1:
+                    m = ContextElements.invertMatch(ContextElements.matchType(types[rng.nextInt(3)]));
+                    break;
+                default:
+                    m = ContextElements.matchType(types[rng.nextInt(types.length)]);
+                }
+                Multiplicity mult = rng.nextBoolean() ? Multiplicity.ONE : Multiplicity.ZERO_OR_MORE;
+                pat = pat.append(m, mult);
+                elements.add(new ContextPattern.Element(m, mult));
+            }
+            Class<?>[] ctxTypes = new Class<?>[rng.nextInt(6)];
+            for (int i = 0; i < ctxTypes.length; i++) {
+                ctxTypes[i] = types[rng.nextInt(types.length)];
+            }
+            InjectionContext ctx = makeContext(ctxTypes);
+            List<MatchElement> result = backtrack(elements, new ArrayList<Pair<Satisfaction,InjectionPoint>>(ctx));
+            ContextMatch expected = result == null ? null : ContextMatch.create(result);
+            assertThat(pat + " on " + ctx, pat.matches(ctx), equalTo(expected));
+        }
+    }
+
+    /**
+     * Reference implementation of pattern matching by backtracking, trying to consume a context
+     * element before skipping an optional pattern element.
+     */
+    private static List<MatchElement> backtrack(List<ContextPattern.Element> pattern,
+                                                List<Pair<Satisfaction,InjectionPoint>> context) {
+        if (pattern.isEmpty()) {
+            return context.isEmpty() ? Collections.<MatchElement>emptyList() : null;
+        }
+        ContextPattern.Element element = pattern.get(0);
+        List<ContextPattern.Element> rest = pattern.subList(1, pattern.size());
+        boolean optional = element.getMultiplicity().isOptional();
+        if (context.isEmpty()) {
+            return optional ? backtrack(rest, context) : null;
+        }
+        MatchElement match = element.getMatcher().apply(context.get(0));
+        if (match == null) {
+            return optional ? backtrack(rest, context) : null;
+        }
+        List<MatchElement> result = backtrack(element.getMultiplicity().isConsumed() ? rest : pattern,
+                                              context.subList(1, context.size()));
+        if (result == null) {
+            return optional ? backtrack(rest, context) : null;
+        }
+        List<MatchElement> full = new ArrayList<MatchElement>();
+        full.add(match);
+        full.addAll(result);
+        return full;
+    }
+
     private InjectionContext makeContext(Class<?>... types) {
         InjectionContext context = DependencySolver.initialContext();
         for (Class<?> type: types) {
@@ -0,0 +1,116 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.context;
+
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.MockInjectionPoint;
+import org.grouplens.grapht.reflect.MockSatisfaction;
+import org.grouplens.grapht.reflect.Satisfaction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.InjectionContext;
+import org.junit.Test;
+
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ContextSignatureTest {
+    private final Map<Class<?>, Satisfaction> satisfactions = new HashMap<Class<?>, Satisfaction>();
+
+    @Test
+    public void testNoMatchers() {
+        ContextSignature sig = ContextSignature.create(makeContext(A.class, B.class),
+                                                       Collections.<ContextMatcher>emptyList());
+        assertThat(sig, notNullValue());
+        assertThat(sig.isEmpty(), equalTo(true));
+        assertThat(sig, equalTo(ContextSignature.create(makeContext(),
+                                                        Collections.<ContextMatcher>emptyList())));
+    }
+
+    @Test
+    public void testIrrelevantContext() {
+        // contexts without the type a pattern looks for cannot be told apart
+        List<ContextPattern> pats = Collections.singletonList(ContextPattern.subsequence(B.class));
+        ContextSignature sig = ContextSignature.create(makeContext(A.class, C.class), pats);
+        assertThat(sig, notNullValue());
+        assertThat(sig.isEmpty(), equalTo(true));
+        assertThat(ContextSignature.create(makeContext(C.class), pats),
+                   equalTo(sig));
+    }
+
+    @Test
+    public void testRelevantSuffix() {
+        List<ContextPattern> pats = Collections.singletonList(ContextPattern.subsequence(B.class));
+        ContextSignature sig = ContextSignature.create(makeContext(A.class, B.class, C.class), pats);
+        assertThat(sig, notNullValue());
+        assertThat(sig.isEmpty(), equalTo(false));
+        // elements before the first relevant one, and irrelevant elements after it, do not matter
+        assertThat(ContextSignature.create(makeContext(C.class, C.class, B.class, A.class), pats),
+                   equalTo(sig));
+        // but the position of the relevant element does
+        assertThat(ContextSignature.create(makeContext(A.class, B.class), pats),
+                   not(equalTo(sig)));
+        assertThat(ContextSignature.create(makeContext(B.class, C.class, C.class), pats),
+                   not(equalTo(sig)));
+    }
+
+    @Test
+    public void testMultiplePatterns() {
+        List<ContextPattern> pats = Arrays.asList(ContextPattern.subsequence(A.class),
+                                                  ContextPattern.subsequence(B.class));
+        ContextSignature sig = ContextSignature.create(makeContext(A.class, C.class, B.class), pats);
+        assertThat(ContextSignature.create(makeContext(C.class, A.class, C.class, B.class), pats),
+                   equalTo(sig));
+        assertThat(ContextSignature.create(makeContext(C.class, C.class, B.class), pats),
+                   not(equalTo(sig)));
+    }
+
+    @Test
+    public void testAnchoredPattern() {
+        // a pattern anchored at the root can see the whole context
+        List<ContextPattern> pats = Collections.singletonList(ContextPattern.empty().append(A.class));
+        assertThat(ContextSignature.create(makeContext(A.class), pats),
+                   nullValue());
+        // so can a pattern with a single-element wildcard
+        pats = Collections.singletonList(ContextPattern.any()
+                                                       .append(ContextElements.matchAny())
+                                                       .append(A.class));
+        assertThat(ContextSignature.create(makeContext(A.class), pats),
+                   nullValue());
+    }
+
+    private InjectionContext makeContext(Class<?>... types) {
+        InjectionContext context = DependencySolver.initialContext();
+        for (Class<?> type: types) {
+            Satisfaction sat = satisfactions.get(type);
+            if (sat == null) {
+                sat = new MockSatisfaction(type, new ArrayList<Desire>());
+                satisfactions.put(type, sat);
+            }
+            context = context.extend(sat, new MockInjectionPoint(type, null, false));
+        }
+        return context;
+    }
+
+    private static class A {}
+    private static class B {}
+    private static class C {}
+}
@@ -140,4 +140,61 @@ public class MergePoolTest {
         assertThat(pool.merge(p2), isIn(merged.getReachableNodes()));
         assertThat(pool.merge(p1), isIn(merged.getReachableNodes()));
     }
+
+    @Test
+    public void testMergeAcrossGraphs() {
+        DAGNode<String,String> leaf = pool.merge(DAGNode.<String,String>singleton("leaf"));
+        DAGNode<String,String> p1 =
+                pool.merge(DAGNode.<String,String>newBuilder("parent")
+                                  .addEdge(DAGNode.<String,String>singleton("leaf"), "k1")
+                                  .build());
+        // the new parent points at the pooled leaf
+        assertThat(p1.getAdjacentNodes(), contains(sameInstance(leaf)));
+
+        // a graph built on pooled nodes keeps them
+        DAGNode<String,String> root =
+                DAGNode.<String,String>newBuilder("root")
+                       .addEdge(p1, "a")
+                       .addEdge(leaf, "b")
+                       .build();
+        assertThat(pool.merge(root), sameInstance(root));
+
+        // an equivalent parent from a separate graph merges to the first one
+        DAGNode<String,String> p2 =
+                DAGNode.<String,String>newBuilder("parent")
+                       .addEdge(DAGNode.<String,String>singleton("leaf"), "k2")
+                       .build();
+        assertThat(pool.merge(p2), sameInstance(p1));
+        // and so does an equivalent root
+        DAGNode<String,String> root2 =
+                DAGNode.<String,String>newBuilder("root")
+                       .addEdge(p2, "a")
+                       .addEdge(DAGNode.<String,String>singleton("leaf"), "b")
+                       .build();
+        assertThat(pool.merge(root2), sameInstance(root));
+    }
+
+    @Test
+    public void testMergeAll() {
+        DAGNode<String,String> p1 =
+                DAGNode.<String,String>newBuilder("parent")
+                       .addEdge(DAGNode.<String,String>singleton("leaf"), "k1")
+                       .build();
+        DAGNode<String,String> p2 =
+                DAGNode.<String,String>newBuilder("parent")
+                       .addEdge(DAGNode.<String,String>singleton("leaf"), "k2")
+                       .build();
+        DAGNode<String,String> other =
+                DAGNode.<String,String>newBuilder("other")
+                       .addEdge(p2, "k3")
+                       .build();
+
+        List<DAGNode<String,String>> merged = pool.mergeAll(Lists.newArrayList(p1, other, p2));
+        assertThat(merged, hasSize(3));
+        assertThat(merged.get(0), sameInstance(p1));
+        assertThat(merged.get(2), sameInstance(p1));
+        assertThat(merged.get(1).getAdjacentNodes(), contains(sameInstance(p1)));
+        // later merges see the batch's nodes
+        assertThat(pool.merge(p2), sameInstance(p1));
+    }
 }
@@ -335,4 +335,35 @@ public class TestDAGNode {
         assertThat(edge.getLabel(),
                    equalTo("goodbye"));
     }
+
+    @Test
+    public void testDeepGraphTraversals() {
+        // traversals of very deep graphs must not exhaust the call stack
+        int depth = 50000;
+        final DAGNode<String,String> leaf = DAGNode.singleton("leaf");
+        DAGNode<String,String> node = leaf;
+        for (int i = 1; i < depth; i++) {
+            node = DAGNode.<String,String>newBuilder("node " + i)
+                          .addEdge(node, "edge " + i)
+                          .build();
+        }
+        assertThat(node.getSortedNodes(), hasSize(depth));
+        assertThat(node.getSortedNodes().get(0), equalTo(leaf));
+        assertThat(node.getIncomingEdges(leaf), hasSize(1));
+
+        final DAGNode<String,String> newLeaf = DAGNode.singleton("new leaf");
+        DAGNode<String,String> replaced =
+                node.replaceNode(leaf, newLeaf, Maps.<DAGNode<String,String>,DAGNode<String,String>>newHashMap());
+        assertThat(replaced.getSortedNodes().get(0), equalTo(newLeaf));
+
+        DAGNode<String,String> transformed = node.transformEdges(new Function<DAGEdge<String, String>, DAGEdge<String, String>>() {
+            @Nullable
+            @Override
+            public DAGEdge<String, String> apply(@Nullable DAGEdge<String, String> input) {
+                return input != null && input.getTail() == leaf ? DAGEdge.create(input.getHead(), newLeaf, "new") : null;
+            }
+        });
+        assertThat(transformed.getReachableNodes(), hasSize(depth));
+        assertThat(transformed.getReachableNodes(), hasItem(newLeaf));
+    }
 }
@@ -0,0 +1,92 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.reflect.internal.types.TypeC;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import javax.inject.Inject;
+import java.lang.reflect.Constructor;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class ClassMetadataTest {
+    @Test
+    public void testMetadataIsCached() {
+        ClassMetadata md = ClassMetadata.forClass(TypeC.class);
+        assertThat(md.getType(), equalTo((Class) TypeC.class));
+        assertThat(ClassMetadata.forClass(TypeC.class), sameInstance(md));
+        assertThat(ReflectionDesire.getDesires(TypeC.class), sameInstance(md.getDesires()));
+        assertThat(md.getDesires(), equalTo(ReflectionDesire.computeDesires(TypeC.class)));
+    }
+
+    @Test
+    public void testInjectConstructor() throws Exception {
+        ClassMetadata md = ClassMetadata.forClass(Lifecycle.class);
+        Constructor<?> ctor = md.getConstructor();
+        assertThat(ctor, notNullValue());
+        assertThat(ctor, equalTo((Constructor) Lifecycle.class.getConstructor(String.class)));
+        assertThat(md.getDesires(), hasSize(1));
+    }
+
+    @Test
+    public void testDefaultConstructor() throws Exception {
+        ClassMetadata md = ClassMetadata.forClass(Plain.class);
+        assertThat(md.getConstructor(), equalTo((Constructor) Plain.class.getDeclaredConstructor()));
+        assertThat(md.getDesires(), hasSize(0));
+        assertThat(md.getPostConstructMethods(), hasSize(0));
+        assertThat(md.getPreDestroyMethods(), hasSize(0));
+    }
+
+    @Test
+    public void testNoConstructor() {
+        assertThat(ClassMetadata.forClass(NoDefault.class).getConstructor(),
+                   nullValue());
+    }
+
+    @Test
+    public void testLifecycleMethods() throws Exception {
+        ClassMetadata md = ClassMetadata.forClass(Lifecycle.class);
+        assertThat(md.getPostConstructMethods(),
+                   contains(Lifecycle.class.getMethod("setUp")));
+        assertThat(md.getPreDestroyMethods(),
+                   contains(Lifecycle.class.getMethod("tearDown")));
+    }
+
+    public static class Plain {}
+
+    public static class NoDefault {
+        public NoDefault(int x) {}
+    }
+
+    public static class Lifecycle {
+        @Inject
+        public Lifecycle(String name) {}
+
+        @PostConstruct
+        public void setUp() {}
+
+        @PreDestroy
+        public void tearDown() {}
+    }
+}
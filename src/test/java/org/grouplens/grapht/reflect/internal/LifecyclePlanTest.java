@@ -0,0 +1,159 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.reflect.internal;
+
+import org.grouplens.grapht.ConstructionException;
+import org.junit.Test;
+
+import javax.annotation.PostConstruct;
+import javax.annotation.PreDestroy;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class LifecyclePlanTest {
+    @Test
+    public void testPlanIsCached() {
+        LifecyclePlan plan = LifecyclePlan.forClass(Child.class);
+        assertThat(LifecyclePlan.forClass(Child.class), sameInstance(plan));
+        assertThat(ClassMetadata.forClass(Child.class).getLifecyclePlan(), sameInstance(plan));
+        assertThat(plan.getType(), equalTo((Class) Child.class));
+    }
+
+    @Test
+    public void testNoCallbacks() {
+        LifecyclePlan plan = LifecyclePlan.forClass(Object.class);
+        assertThat(plan.getPostConstructMethods(), hasSize(0));
+        assertThat(plan.getPreDestroyMethods(), hasSize(0));
+        assertThat(plan.isAutoCloseable(), equalTo(false));
+        assertThat(plan.hasTeardown(), equalTo(false));
+    }
+
+    @Test
+    public void testCallbackOrder() throws Exception {
+        LifecyclePlan plan = LifecyclePlan.forClass(Child.class);
+        assertThat(plan.getPostConstructMethods(),
+                   contains(Parent.class.getMethod("parentSetUp"),
+                            Child.class.getMethod("childSetUpA"),
+                            Child.class.getMethod("childSetUpB")));
+        assertThat(plan.getPreDestroyMethods(),
+                   contains(Child.class.getMethod("childTearDown"),
+                            Parent.class.getMethod("parentTearDown")));
+
+        Child child = new Child();
+        plan.postConstruct(child);
+        assertThat(child.calls, contains("parentSetUp", "childSetUpA", "childSetUpB"));
+        child.calls.clear();
+        plan.tearDown(child);
+        assertThat(child.calls, contains("close", "childTearDown", "parentTearDown"));
+    }
+
+    @Test
+    public void testCloseable() {
+        LifecyclePlan plan = LifecyclePlan.forClass(Child.class);
+        assertThat(plan.isAutoCloseable(), equalTo(true));
+        assertThat(plan.hasTeardown(), equalTo(true));
+        assertThat(LifecyclePlan.forClass(Parent.class).isAutoCloseable(), equalTo(false));
+        assertThat(LifecyclePlan.forClass(Parent.class).hasTeardown(), equalTo(true));
+    }
+
+    @Test
+    public void testTearDownContinuesAfterFailure() throws Exception {
+        Failing failing = new Failing();
+        try {
+            LifecyclePlan.forClass(Failing.class).tearDown(failing);
+            fail("teardown should fail");
+        } catch (Exception e) {
+            assertThat(e.getMessage(), equalTo("close failed"));
+            assertThat(e.getSuppressed(), arrayWithSize(1));
+        }
+        assertThat(failing.calls, contains("close", "tearDown"));
+    }
+
+    @Test
+    public void testPostConstructFailure() {
+        try {
+            LifecyclePlan.forClass(Failing.class).postConstruct(new Failing());
+            fail("post-construct should fail");
+        } catch (ConstructionException e) {
+            assertThat(e.getCause(), instanceOf(IllegalStateException.class));
+        }
+    }
+
+    public static class Parent {
+        final List<String> calls = new ArrayList<String>();
+
+        @PostConstruct
+        public void parentSetUp() {
+            calls.add("parentSetUp");
+        }
+
+        @PreDestroy
+        public void parentTearDown() {
+            calls.add("parentTearDown");
+        }
+    }
+
+    public static class Child extends Parent implements AutoCloseable {
+        @PostConstruct
+        public void childSetUpB() {
+            calls.add("childSetUpB");
+        }
+
+        @PostConstruct
+        public void childSetUpA() {
+            calls.add("childSetUpA");
+        }
+
+        @PreDestroy
+        public void childTearDown() {
+            calls.add("childTearDown");
+        }
+
+        @Override
+        public void close() {
+            calls.add("close");
+        }
+    }
+
+    public static class Failing implements AutoCloseable {
+        final List<String> calls = new ArrayList<String>();
+
+        @PostConstruct
+        public void setUp() {
+            throw new IllegalStateException("setup failed");
+        }
+
+        @PreDestroy
+        public void tearDown() {
+            calls.add("tearDown");
+            throw new IllegalStateException("teardown failed");
+        }
+
+        @Override
+        public void close() throws Exception {
+            calls.add("close");
+            throw new Exception("close failed");
+        }
+    }
+}
@@ -40,6 +40,8 @@ import java.lang.annotation.Retention;
 import java.lang.annotation.RetentionPolicy;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.HashSet;
 import java.util.Set;
 
@@ -115,6 +117,208 @@ public class DependencySolverTest {
         Assert.assertTrue(r.getGraph().getReachableNodes().contains(node));
     }
 
+    @Test
+    public void testResolveAll() throws Exception {
+        // Test that resolving several desires at once shares their common dependencies
+        Satisfaction shared = new MockSatisfaction(C.class);
+        Desire sharedDesire = new MockDesire(shared);
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(sharedDesire));
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(sharedDesire));
+        Desire da = new MockDesire(sa);
+        Desire db = new MockDesire(sb);
+
+        DependencySolver r = createSolver(ArrayListMultimap.<ContextMatcher, BindRule>create());
+        r.resolveAll(Arrays.asList(da, db, sharedDesire));
+
+        // root, A, B, and one shared C
+        assertThat(r.getGraph().getReachableNodes(), hasSize(4));
+        assertThat(r.getGraph().getOutgoingEdges(), hasSize(3));
+        DAGNode<Component, Dependency> anode = getRoot(r, da);
+        DAGNode<Component, Dependency> bnode = getRoot(r, db);
+        DAGNode<Component, Dependency> cnode = getRoot(r, sharedDesire);
+        Assert.assertEquals(sa, anode.getLabel().getSatisfaction());
+        Assert.assertEquals(sb, bnode.getLabel().getSatisfaction());
+        Assert.assertSame(cnode, anode.getOutgoingEdges().iterator().next().getTail());
+        Assert.assertSame(cnode, bnode.getOutgoingEdges().iterator().next().getTail());
+
+        // resolving another desire afterwards reuses the merged nodes
+        Satisfaction sd = new MockSatisfaction(D.class, Arrays.asList(sharedDesire));
+        Desire dd = new MockDesire(sd);
+        r.resolve(dd);
+        assertThat(r.getGraph().getReachableNodes(), hasSize(5));
+        Assert.assertSame(cnode, getRoot(r, dd).getOutgoingEdges().iterator().next().getTail());
+    }
+
+    @Test
+    public void testResolveAllEquivalentToResolve() throws Exception {
+        Satisfaction shared = new MockSatisfaction(C.class);
+        Desire sharedDesire = new MockDesire(shared);
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(sharedDesire));
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(sharedDesire));
+        Desire da = new MockDesire(sa);
+        Desire db = new MockDesire(sb);
+
+        DependencySolver batch = createSolver(ArrayListMultimap.<ContextMatcher, BindRule>create());
+        batch.resolveAll(Arrays.asList(da, db));
+        DependencySolver single = createSolver(ArrayListMultimap.<ContextMatcher, BindRule>create());
+        single.resolve(da);
+        single.resolve(db);
+
+        assertThat(batch.getGraph().getReachableNodes(),
+                   hasSize(single.getGraph().getReachableNodes().size()));
+        Assert.assertEquals(single.getGraph().getOutgoingEdges().size(),
+                            batch.getGraph().getOutgoingEdges().size());
+    }
+
+    @Test
+    public void testContextFreeSubtreeReused() throws Exception {
+        // Test that a subtree no context rule can distinguish is only resolved once
+        Satisfaction se = new MockSatisfaction(E.class);
+        Desire de = new MockDesire(se);
+        Satisfaction sd = new MockSatisfaction(D.class, Arrays.asList(de));
+        Desire dd = new MockDesire(sd);
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(dd));
+        Satisfaction sc = new MockSatisfaction(C.class, Arrays.asList(dd));
+        Desire db = new MockDesire(sb);
+        Desire dc = new MockDesire(sc);
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(db, dc));
+        Desire da = new MockDesire(sa);
+
+        // a rule for a type that never appears in the context does not distinguish contexts
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.put(ContextPattern.subsequence(F.class),
+                     new MockBindRule(dd, new MockDesire(new MockSatisfaction(Ap.class))));
+        CountingBindingFunction counter = new CountingBindingFunction();
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .addBindingFunction(counter)
+                                             .addBindingFunction(new RuleBasedBindingFunction(bindings.build()))
+                                             .build();
+        r.resolve(da);
+
+        // root, A, B, C, and one shared D and E
+        assertThat(r.getGraph().getReachableNodes(), hasSize(6));
+        assertThat(counter.counts.count(dd), equalTo(1));
+        assertThat(counter.counts.count(de), equalTo(1));
+        DAGNode<Component, Dependency> anode = getRoot(r, da);
+        DAGNode<Component, Dependency> dnode = getNode(getNode(anode, sb, db), sd, dd);
+        Assert.assertNotNull(dnode);
+        Assert.assertSame(dnode, getNode(getNode(anode, sc, dc), sd, dd));
+    }
+
+    @Test
+    public void testContextSensitiveSubtreeNotReused() throws Exception {
+        // Test that a subtree is resolved again in a context that a rule can distinguish
+        Satisfaction sd = new MockSatisfaction(D.class);
+        Satisfaction sdp = new MockSatisfaction(D.class);
+        Desire dd = new MockDesire(sd);
+        Desire ddp = new MockDesire(sdp);
+        Satisfaction sb = new MockSatisfaction(B.class, Arrays.asList(dd));
+        Satisfaction sc = new MockSatisfaction(C.class, Arrays.asList(dd));
+        Desire db = new MockDesire(sb);
+        Desire dc = new MockDesire(sc);
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(db, dc));
+        Desire da = new MockDesire(sa);
+
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.put(ContextPattern.subsequence(C.class), new MockBindRule(dd, ddp));
+        CountingBindingFunction counter = new CountingBindingFunction();
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .addBindingFunction(counter)
+                                             .addBindingFunction(new RuleBasedBindingFunction(bindings.build()))
+                                             .build();
+        r.resolve(da);
+
+        DAGNode<Component, Dependency> anode = getRoot(r, da);
+        Assert.assertNotNull(getNode(getNode(anode, sb, db), sd, dd));
+        Assert.assertNotNull(getNode(getNode(anode, sc, dc), sdp, dd));
+        assertThat(counter.counts.count(dd), equalTo(2));
+    }
+
+    @Test(expected=CyclicDependencyException.class)
+    public void testReusedSubtreeRespectsMaxDepth() throws Exception {
+        // Test that reusing a subtree deeper in the graph still enforces the maximum depth
+        Satisfaction st = new MockSatisfaction(E.class);
+        Desire dt = new MockDesire(st);
+        Satisfaction ss = new MockSatisfaction(D.class, Arrays.asList(dt));
+        Desire ds = new MockDesire(ss);
+        Satisfaction sz = new MockSatisfaction(C.class, Arrays.asList(ds));
+        Desire dz = new MockDesire(sz);
+        Satisfaction sy = new MockSatisfaction(B.class, Arrays.asList(dz));
+        Satisfaction sx = new MockSatisfaction(Bp.class, Arrays.asList(ds));
+        Desire dy = new MockDesire(sy);
+        Desire dx = new MockDesire(sx);
+        Satisfaction sr = new MockSatisfaction(A.class, Arrays.asList(dx, dy));
+
+        // D's subtree fits below X, but not below Y and Z
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .setMaxDepth(4)
+                                             .build();
+        r.resolve(new MockDesire(sr));
+    }
+
+    @Test
+    public void testDeepChainSuccess() throws Exception {
+        // Test that a very deep dependency chain does not exhaust the call stack
+        int depth = 20000;
+        Satisfaction sat = new MockSatisfaction(A.class);
+        for (int i = 1; i < depth; i++) {
+            sat = new MockSatisfaction(A.class, Arrays.<Desire>asList(new MockDesire(sat)));
+        }
+        Desire root = new MockDesire(sat);
+
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .setMaxDepth(depth + 1)
+                                             .build();
+        r.resolve(root);
+        DAGNode<Component, Dependency> node = getRoot(r, root);
+        assertThat(node.getReachableNodes(), hasSize(depth));
+        assertThat(node.getSortedNodes().get(depth - 1), equalTo(node));
+    }
+
+    @Test
+    public void testParallelFailureMatchesSequential() throws Exception {
+        // Test that parallel resolution reports the same failure as sequential resolution
+        Desire ok = new MockDesire(new MockSatisfaction(B.class));
+        Desire bad1 = new MockDesire();
+        Desire bad2 = new MockDesire();
+        Satisfaction sa = new MockSatisfaction(A.class, Arrays.asList(ok, bad1, bad2));
+        Desire da = new MockDesire(sa);
+
+        for (int threads: new int[]{1, 4}) {
+            DependencySolver r = DependencySolver.newBuilder()
+                                                 .addBindingFunction(new RuleBasedBindingFunction(ArrayListMultimap.<ContextMatcher, BindRule>create()))
+                                                 .setParallelism(threads)
+                                                 .build();
+            try {
+                r.resolve(da);
+                Assert.fail("resolution should fail");
+            } catch (UnresolvableDependencyException e) {
+                assertThat(e.getDesireChain().getInitialDesire(), equalTo(bad1));
+            } finally {
+                r.close();
+            }
+        }
+    }
+
+    @Test
+    public void testResolveAfterClose() throws Exception {
+        // Test that a closed parallel solver still resolves, sequentially
+        Desire b = new MockDesire(new MockSatisfaction(B.class));
+        Desire c = new MockDesire(new MockSatisfaction(C.class));
+        Desire da = new MockDesire(new MockSatisfaction(A.class, Arrays.asList(b, c)));
+
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .addBindingFunction(new RuleBasedBindingFunction(ArrayListMultimap.<ContextMatcher, BindRule>create()))
+                                             .setParallelism(4)
+                                             .build();
+        r.close();
+        r.resolve(da);
+        DAGNode<Component, Dependency> node = r.getGraph().getOutgoingEdges().iterator().next().getTail();
+        assertThat(node.getOutgoingEdges(), hasSize(2));
+        // closing twice is harmless
+        r.close();
+    }
+
     @Test
     public void testSingleDependencySuccess() throws Exception {
         // Test resolving a satisfaction with a single dependency that is already satisfiable
@@ -1104,6 +1308,33 @@ public class DependencySolverTest {
         r.resolve(rootDesire);
     }
     
+    @Test
+    public void testCyclicDependenciesFailFast() throws Exception {
+        // Test that a cycle no context can break is detected without exhausting the max depth
+        Desire d1 = new MockDesire();
+        Desire d2 = new MockDesire();
+
+        Satisfaction s1 = new MockSatisfaction(A.class, Arrays.asList(d1));
+        Satisfaction s2 = new MockSatisfaction(B.class, Arrays.asList(d2));
+
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> bindings = ImmutableListMultimap.builder();
+        bindings.putAll(ContextPattern.any(),
+                        new MockBindRule(d1, new MockDesire(s2)),
+                        new MockBindRule(d2, new MockDesire(s1)));
+
+        // deep enough that exhausting it would overflow the stack
+        DependencySolver r = DependencySolver.newBuilder()
+                                             .addBindingFunction(new RuleBasedBindingFunction(bindings.build()))
+                                             .setMaxDepth(1000000)
+                                             .build();
+        try {
+            r.resolve(new MockDesire(s1));
+            Assert.fail("cyclic dependency not detected");
+        } catch (CyclicDependencyException e) {
+            assertThat(e.getDesire(), equalTo(d1));
+        }
+    }
+
     @Test(expected=MultipleBindingsException.class)
     public void testTooManyBindRulesFail() throws Exception {
         // Test that providing too many choices for bind rules throws an exception
@@ -1197,6 +1428,26 @@ public class DependencySolverTest {
         return Iterables.find(g.getReachableNodes(), pred, null);
     }
     
+    /**
+     * A binding function that binds nothing, but counts the desires it is asked to resolve.
+     */
+    private static class CountingBindingFunction implements ContextAwareBindingFunction {
+        private final Multiset<Desire> counts = HashMultiset.create();
+
+        @Override
+        public Collection<? extends ContextMatcher> getContextMatchers(DesireChain desire) {
+            return Collections.emptyList();
+        }
+
+        @Override
+        public BindingResult bind(InjectionContext context, DesireChain desire) {
+            if (desire.getPreviousDesires().isEmpty()) {
+                counts.add(desire.getInitialDesire());
+            }
+            return null;
+        }
+    }
+
     @Qualifier
     @Retention(RetentionPolicy.RUNTIME)
     public static @interface Qual {
@@ -59,4 +59,41 @@ public class DesireChainTest {
                    equalTo((List<Desire>) DesireChain.singleton(d1)));
         assertThat(chain, contains(d1, d2));
     }
+
+    @Test
+    public void testKeys() {
+        Desire d1 = new MockDesire(InputStream.class, null, null);
+        Desire d2 = new MockDesire(FileInputStream.class, null, null);
+        DesireChain c1 = DesireChain.singleton(d1);
+        DesireChain c2 = DesireChain.singleton(d1);
+        assertThat(c1, equalTo(c2));
+        assertThat(c1.getKey(), notNullValue());
+        assertThat(c1.getKey(), not(equalTo(c2.getKey())));
+        assertThat(c1.getKey(), sameInstance(c1.getKey()));
+        assertThat(c1.extend(d2).getKey(), sameInstance(c1.getKey()));
+        // keys requested from an extension are shared with the root
+        DesireChain ext = c2.extend(d2);
+        assertThat(ext.getKey(), sameInstance(c2.getKey()));
+    }
+
+    @Test
+    public void testAppliedRules() {
+        Desire d1 = new MockDesire(InputStream.class, null, null);
+        Desire d2 = new MockDesire(FileInputStream.class, null, null);
+        BindRule r1 = new MockBindRule(d1, d2);
+        BindRule r2 = new MockBindRule(d2, d1);
+        DesireChain single = DesireChain.singleton(d1);
+        DesireChain chain = single.extend(d2, r1);
+        assertThat(single.hasAppliedRule(r1), equalTo(false));
+        assertThat(chain.hasAppliedRule(r1), equalTo(true));
+        assertThat(chain.hasAppliedRule(r2), equalTo(false));
+        assertThat(chain.extend(d1).hasAppliedRule(r1), equalTo(true));
+
+        DesireChain marked = chain.withAppliedRule(r2);
+        assertThat(marked, contains(d1, d2));
+        assertThat(marked.getKey(), equalTo(chain.getKey()));
+        assertThat(marked.hasAppliedRule(r1), equalTo(true));
+        assertThat(marked.hasAppliedRule(r2), equalTo(true));
+        assertThat(chain.hasAppliedRule(r2), equalTo(false));
+    }
 }
@@ -0,0 +1,124 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.SetMultimap;
+import com.google.common.io.Files;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desires;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.net.URL;
+import java.net.URLClassLoader;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class GraphCacheTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void testLoadMissing() throws Exception {
+        GraphCache cache = GraphCache.create(new File(folder.getRoot(), "missing"), "abc");
+        assertThat(cache.load(), nullValue());
+    }
+
+    @Test
+    public void testStoreAndLoad() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, Root.class, false));
+        GraphCache cache = GraphCache.create(new File(folder.getRoot(), "cache"), "abc");
+        assertThat(cache.store(solver.getGraph(), solver.getBackEdges()), equalTo(true));
+        assertThat(cache.getFile().exists(), equalTo(true));
+
+        Pair<DAGNode<Component,Dependency>,
+             SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> loaded = cache.load();
+        assertThat(loaded, notNullValue());
+        DAGNode<Component,Dependency> graph = loaded.getLeft();
+        assertThat(graph.getReachableNodes(), hasSize(solver.getGraph().getReachableNodes().size()));
+        assertThat(graph.getOutgoingEdges().iterator().next().getTail().getLabel(),
+                   equalTo(solver.getGraph().getOutgoingEdges().iterator().next().getTail().getLabel()));
+
+        // a solver seeded with the graph does not need to resolve it again
+        DependencySolver seeded = DependencySolver.newBuilder()
+                                                  .setInitialGraph(graph, loaded.getRight())
+                                                  .build();
+        assertThat(seeded.getGraph(), sameInstance(graph));
+    }
+
+    @Test
+    public void testIgnoreWrongFingerprint() throws Exception {
+        File dir = folder.getRoot();
+        GraphCache cache = GraphCache.create(dir, "abc");
+        cache.store(DependencySolver.rootNode(), solverBackEdges());
+        assertThat(cache.getFile().renameTo(new File(dir, "def.graph")), equalTo(true));
+        assertThat(GraphCache.create(dir, "def").load(), nullValue());
+    }
+
+    @Test
+    public void testIgnoreChangedDefaults() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, Root.class, false));
+        File dir = new File(folder.getRoot(), "cache");
+        GraphCache cache = GraphCache.create(dir, "abc", getClass().getClassLoader());
+        assertThat(cache.store(solver.getGraph(), solver.getBackEdges()), equalTo(true));
+        assertThat(GraphCache.create(dir, "abc", getClass().getClassLoader()).load(), notNullValue());
+
+        // a jar now supplies a default implementation for one of the graph's dependencies
+        File resources = folder.newFolder("resources");
+        File defaults = new File(resources, "META-INF/grapht/defaults/" + Leaf.class.getCanonicalName() + ".properties");
+        assertThat(defaults.getParentFile().mkdirs(), equalTo(true));
+        Files.write("implementation=" + SubLeaf.class.getName() + "\n", defaults, Charsets.UTF_8);
+        URLClassLoader loader = new URLClassLoader(new URL[]{resources.toURI().toURL()},
+                                                   getClass().getClassLoader());
+        try {
+            assertThat(GraphCache.create(dir, "abc", loader).load(), nullValue());
+        } finally {
+            loader.close();
+        }
+    }
+
+    public static class Leaf { }
+
+    public static class SubLeaf extends Leaf { }
+
+    public static class Root {
+        @Inject
+        public Root(Leaf leaf) { }
+    }
+
+    private static SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> solverBackEdges() {
+        return DependencySolver.newBuilder().build().getBackEdges();
+    }
+}
@@ -0,0 +1,210 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.SetMultimap;
+import org.apache.commons.lang3.tuple.Pair;
+import org.grouplens.grapht.BindingFunctionBuilder;
+import org.grouplens.grapht.BindingFunctionBuilder.RuleSet;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.annotation.AnnotationBuilder;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.internal.types.CycleA;
+import org.grouplens.grapht.reflect.internal.types.NamedType;
+import org.grouplens.grapht.reflect.internal.types.TypeC;
+import org.junit.Test;
+
+import javax.inject.Named;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.io.StreamCorruptedException;
+import java.util.IdentityHashMap;
+import java.util.Map;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class GraphCodecTest {
+    @Test
+    public void testVarint() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        int[] values = {0, 1, 127, 128, 16383, 16384, Integer.MAX_VALUE, -1};
+        for (int v: values) {
+            GraphCodec.writeVarint(out, v);
+        }
+        // small values take a single byte
+        assertThat(bytes.toByteArray()[0], equalTo((byte) 0));
+        assertThat(bytes.toByteArray()[2], equalTo((byte) 127));
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        for (int v: values) {
+            assertThat(GraphCodec.readVarint(in), equalTo(v));
+        }
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        BindingFunctionBuilder b = new BindingFunctionBuilder();
+        b.getRootContext()
+         .bind(String.class)
+         .withQualifier(AnnotationBuilder.of(Named.class).setValue("test1").build())
+         .to("hello world");
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(b.build(RuleSet.EXPLICIT))
+                                                  .addBindingFunction(b.build(RuleSet.INTERMEDIATE_TYPES))
+                                                  .addBindingFunction(b.build(RuleSet.SUPER_TYPES))
+                                                  .addBindingFunction(new ProviderBindingFunction())
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, TypeC.class, false));
+        solver.resolve(Desires.create(null, NamedType.class, false));
+        solver.resolve(Desires.create(null, CycleA.class, false));
+        assertThat(solver.getBackEdges().entries(), hasSize(1));
+
+        Pair<DAGNode<Component,Dependency>,
+             SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>> read =
+                roundTrip(solver.getGraph(), solver.getBackEdges());
+        DAGNode<Component,Dependency> graph = read.getLeft();
+        assertSameGraph(graph, solver.getGraph());
+
+        // back edges point to nodes of the graph that was read
+        assertThat(read.getRight().entries(), hasSize(1));
+        DAGEdge<Component,Dependency> back = read.getRight().values().iterator().next();
+        DAGEdge<Component,Dependency> origBack = solver.getBackEdges().values().iterator().next();
+        assertThat(graph.getReachableNodes(), hasItem(sameInstance(back.getHead())));
+        assertThat(graph.getReachableNodes(), hasItem(sameInstance(back.getTail())));
+        assertThat(back.getLabel(), equalTo(origBack.getLabel()));
+        assertThat(back.getTail().getLabel(), equalTo(origBack.getTail().getLabel()));
+    }
+
+    @Test
+    public void testSmallerThanSerialization() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, TypeC.class, false));
+        ByteArrayOutputStream coded = new ByteArrayOutputStream();
+        GraphCodec.write(solver.getGraph(), solver.getBackEdges(), coded);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(solver.getGraph());
+        out.close();
+        assertThat(coded.size() * 3, lessThan(serialized.size()));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testRejectOtherData() throws Exception {
+        GraphCodec.read(new ByteArrayInputStream(new byte[]{1, 2, 3, 4, 5}));
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testRejectHugeTable() throws Exception {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.write(encode().toByteArray(), 0, 5); // the magic number and version
+        GraphCodec.writeVarint(out, Integer.MAX_VALUE);
+        out.close();
+        GraphCodec.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    @Test
+    public void testRejectTruncated() throws Exception {
+        byte[] bytes = encode().toByteArray();
+        for (int n = 0; n < bytes.length; n++) {
+            try {
+                GraphCodec.read(new ByteArrayInputStream(bytes, 0, n));
+                fail("read truncated graph of " + n + " bytes");
+            } catch (IOException e) {
+                /* expected */
+            }
+        }
+    }
+
+    @Test
+    public void testCorruptedFailsCleanly() throws Exception {
+        byte[] bytes = encode().toByteArray();
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] corrupt = bytes.clone();
+            corrupt[i] = (byte) 0xFF;
+            try {
+                GraphCodec.read(new ByteArrayInputStream(corrupt));
+            } catch (IOException e) {
+                /* fine, the cache will solve the graph instead */
+            } catch (RuntimeException e) {
+                /* likewise */
+            }
+        }
+    }
+
+    private static ByteArrayOutputStream encode() throws Exception {
+        DependencySolver solver = DependencySolver.newBuilder()
+                                                  .addBindingFunction(new ProviderBindingFunction())
+                                                  .addBindingFunction(DefaultDesireBindingFunction.create())
+                                                  .build();
+        solver.resolve(Desires.create(null, TypeC.class, false));
+        solver.resolve(Desires.create(null, CycleA.class, false));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphCodec.write(solver.getGraph(), solver.getBackEdges(), bytes);
+        return bytes;
+    }
+
+    private static Pair<DAGNode<Component,Dependency>,
+                        SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>>>
+    roundTrip(DAGNode<Component,Dependency> graph,
+              SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        GraphCodec.write(graph, backEdges, bytes);
+        return GraphCodec.read(new ByteArrayInputStream(bytes.toByteArray()));
+    }
+
+    /**
+     * Check that two graphs have the same structure and equal labels.  Edges are matched by
+     * label, and each node of the expected graph must correspond to a single node of the actual one.
+     */
+    static void assertSameGraph(DAGNode<Component,Dependency> actual, DAGNode<Component,Dependency> expected) {
+        assertSameGraph(actual, expected, new IdentityHashMap<DAGNode<Component,Dependency>, DAGNode<Component,Dependency>>());
+        assertThat(actual.getReachableNodes(), hasSize(expected.getReachableNodes().size()));
+    }
+
+    private static void assertSameGraph(DAGNode<Component,Dependency> actual, DAGNode<Component,Dependency> expected,
+                                        Map<DAGNode<Component,Dependency>, DAGNode<Component,Dependency>> matched) {
+        DAGNode<Component,Dependency> previous = matched.get(expected);
+        if (previous != null) {
+            assertThat(actual, sameInstance(previous));
+            return;
+        }
+        matched.put(expected, actual);
+        assertThat(actual.getLabel(), equalTo(expected.getLabel()));
+        assertThat(actual.getOutgoingEdges(), hasSize(expected.getOutgoingEdges().size()));
+        for (DAGEdge<Component,Dependency> edge: expected.getOutgoingEdges()) {
+            DAGEdge<Component,Dependency> match = actual.getOutgoingEdgeWithLabel(edge.getLabel());
+            assertThat(match, notNullValue());
+            assertSameGraph(match.getTail(), edge.getTail(), matched);
+        }
+    }
+}
@@ -0,0 +1,198 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.SetMultimap;
+import com.google.common.io.Files;
+import org.grouplens.grapht.BindingFunctionBuilder;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.InjectionContainer;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.internal.types.CycleA;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import javax.inject.Inject;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.NotSerializableException;
+import java.io.StreamCorruptedException;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+import static org.junit.Assert.fail;
+
+public class MappedGraphTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private DependencySolver solver;
+    private File file;
+
+    @Before
+    public void writeGraph() throws Exception {
+        solver = DependencySolver.newBuilder()
+                                 .addBindingFunction(new ProviderBindingFunction())
+                                 .addBindingFunction(DefaultDesireBindingFunction.create())
+                                 .build();
+        solver.resolve(Desires.create(null, Root.class, false));
+        solver.resolve(Desires.create(null, Other.class, false));
+        solver.resolve(Desires.create(null, CycleA.class, false));
+        file = folder.newFile("graph.bin");
+        MappedGraph.write(solver.getGraph(), solver.getBackEdges(), file);
+    }
+
+    @Test
+    public void testRoundTrip() throws Exception {
+        MappedGraph graph = MappedGraph.open(file);
+        assertThat(graph.getMaterializedNodeCount(), equalTo(0));
+        DAGNode<Component,Dependency> root = graph.getRoot();
+        GraphCodecTest.assertSameGraph(root, solver.getGraph());
+        assertThat(graph.getMaterializedNodeCount(), equalTo(graph.getNodeCount()));
+        assertThat(graph.getRoot(), sameInstance(root));
+
+        SetMultimap<DAGNode<Component,Dependency>,DAGEdge<Component,Dependency>> backEdges = graph.getBackEdges();
+        assertThat(backEdges.entries(), hasSize(1));
+        DAGEdge<Component,Dependency> back = backEdges.values().iterator().next();
+        assertThat(root.getReachableNodes(), hasItem(sameInstance(back.getHead())));
+        assertThat(root.getReachableNodes(), hasItem(sameInstance(back.getTail())));
+    }
+
+    @Test
+    public void testMaterializeOnlyDependency() throws Exception {
+        MappedGraph graph = MappedGraph.open(file);
+        Desire desire = Desires.create(null, Root.class, false);
+        DAGNode<Component,Dependency> node = graph.findDependency(desire);
+        assertThat(node, notNullValue());
+        DAGNode<Component,Dependency> expected =
+                solver.getGraph().getOutgoingEdgeWithLabel(Dependency.hasInitialDesire(desire)).getTail();
+        GraphCodecTest.assertSameGraph(node, expected);
+        // Root, Middle and Leaf
+        assertThat(graph.getMaterializedNodeCount(), equalTo(3));
+        assertThat(graph.getMaterializedNodeCount(), lessThan(graph.getNodeCount()));
+
+        // a second dependency shares the nodes already materialized
+        DAGNode<Component,Dependency> other = graph.findDependency(Desires.create(null, Other.class, false));
+        assertThat(other, notNullValue());
+        assertThat(graph.getMaterializedNodeCount(), equalTo(4));
+        DAGNode<Component,Dependency> leaf = other.getOutgoingEdges().iterator().next().getTail();
+        assertThat(node.getReachableNodes(), hasItem(sameInstance(leaf)));
+
+        assertThat(graph.findDependency(Desires.create(null, Leaf.class, false)), nullValue());
+        assertThat(graph.findDependency(desire), sameInstance(node));
+    }
+
+    @Test
+    public void testInstantiate() throws Exception {
+        MappedGraph graph = MappedGraph.open(file);
+        DAGNode<Component,Dependency> node = graph.findDependency(Desires.create(null, Root.class, false));
+        Object obj = InjectionContainer.create()
+                                       .makeInstantiator(node, graph.getBackEdges())
+                                       .instantiate();
+        assertThat(obj, instanceOf(Root.class));
+        assertThat(((Root) obj).middle.leaf, notNullValue());
+    }
+
+    @Test
+    public void testCorruptedFailsCleanly() throws Exception {
+        byte[] bytes = Files.toByteArray(file);
+        for (int i = 0; i < bytes.length; i++) {
+            byte[] corrupt = bytes.clone();
+            corrupt[i] = (byte) 0xFF;
+            File cf = folder.newFile("corrupt" + i + ".bin");
+            Files.write(corrupt, cf);
+            try {
+                MappedGraph graph = MappedGraph.open(cf);
+                graph.getRoot();
+                graph.getBackEdges();
+            } catch (IOException e) {
+                /* fine, the graph must be solved instead */
+            } catch (RuntimeException e) {
+                /* likewise */
+            }
+        }
+    }
+
+    @Test
+    public void testFailedWriteKeepsFile() throws Exception {
+        byte[] bytes = Files.toByteArray(file);
+        BindingFunctionBuilder bindings = new BindingFunctionBuilder();
+        // Leaf is not serializable
+        bindings.getRootContext().bind(Leaf.class).to(new Leaf());
+        DependencySolver bad = DependencySolver.newBuilder()
+                                               .addBindingFunction(bindings.build(BindingFunctionBuilder.RuleSet.EXPLICIT))
+                                               .addBindingFunction(DefaultDesireBindingFunction.create())
+                                               .build();
+        bad.resolve(Desires.create(null, Root.class, false));
+        try {
+            MappedGraph.write(bad.getGraph(), bad.getBackEdges(), file);
+            fail("wrote a graph with an unserializable instance");
+        } catch (NotSerializableException e) {
+            /* expected */
+        }
+        assertThat(Files.toByteArray(file), equalTo(bytes));
+        assertThat(folder.getRoot().list(), arrayContaining(file.getName()));
+        GraphCodecTest.assertSameGraph(MappedGraph.open(file).getRoot(), solver.getGraph());
+    }
+
+    @Test(expected = StreamCorruptedException.class)
+    public void testRejectOtherFile() throws Exception {
+        File other = folder.newFile("other.bin");
+        FileOutputStream out = new FileOutputStream(other);
+        try {
+            out.write(new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16});
+        } finally {
+            out.close();
+        }
+        MappedGraph.open(other);
+    }
+
+    public static class Leaf { }
+
+    public static class Middle {
+        private final Leaf leaf;
+
+        @Inject
+        public Middle(Leaf leaf) {
+            this.leaf = leaf;
+        }
+    }
+
+    public static class Root {
+        private final Middle middle;
+
+        @Inject
+        public Root(Middle middle) {
+            this.middle = middle;
+        }
+    }
+
+    public static class Other {
+        @Inject
+        public Other(Leaf leaf) { }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.solver;
+
+import com.google.common.collect.ImmutableListMultimap;
+import org.grouplens.grapht.CachePolicy;
+import org.grouplens.grapht.context.ContextMatcher;
+import org.grouplens.grapht.context.ContextPattern;
+import org.grouplens.grapht.reflect.Desire;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.reflect.Qualifiers;
+import org.grouplens.grapht.reflect.internal.types.*;
+import org.junit.Test;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.*;
+
+public class RuleBasedBindingFunctionTest {
+    private static BindRule rule(Class<?> dep, Class<?> impl) {
+        return BindRuleBuilder.create()
+                              .setDependencyType(dep)
+                              .setImplementation(impl)
+                              .setCachePolicy(CachePolicy.NO_PREFERENCE)
+                              .setQualifierMatcher(Qualifiers.matchDefault())
+                              .setTerminal(false)
+                              .build();
+    }
+
+    private static BindingResult bind(RuleBasedBindingFunction fn, Desire desire) throws Exception {
+        return fn.bind(DependencySolver.initialContext(), DesireChain.singleton(desire));
+    }
+
+    @Test
+    public void testSelectRuleByType() throws Exception {
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> rules = ImmutableListMultimap.builder();
+        rules.put(ContextPattern.any(), rule(InterfaceA.class, TypeA.class));
+        rules.put(ContextPattern.any(), rule(InterfaceB.class, TypeB.class));
+        RuleBasedBindingFunction fn = new RuleBasedBindingFunction(rules.build());
+
+        BindingResult result = bind(fn, Desires.create(null, InterfaceA.class, false));
+        assertThat(result, notNullValue());
+        assertThat(result.getDesire().getDesiredType(), equalTo((Class) TypeA.class));
+
+        result = bind(fn, Desires.create(null, InterfaceB.class, false));
+        assertThat(result, notNullValue());
+        assertThat(result.getDesire().getDesiredType(), equalTo((Class) TypeB.class));
+
+        assertThat(bind(fn, Desires.create(null, TypeC.class, false)),
+                   nullValue());
+    }
+
+    @Test
+    public void testUntypedRulesApplyToAllTypes() throws Exception {
+        Desire in = Desires.create(null, TypeC.class, false);
+        Desire out = in.restrict(TypeC.class);
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> rules = ImmutableListMultimap.builder();
+        rules.put(ContextPattern.any(), rule(InterfaceA.class, TypeA.class));
+        rules.put(ContextPattern.any(), new MockBindRule(in, out));
+        RuleBasedBindingFunction fn = new RuleBasedBindingFunction(rules.build());
+
+        BindingResult result = bind(fn, in);
+        assertThat(result, notNullValue());
+        assertThat(result.getDesire(), equalTo(out));
+    }
+
+    @Test
+    public void testAppliedRuleSkipped() throws Exception {
+        BindRule rule = rule(InterfaceA.class, TypeA.class);
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> rules = ImmutableListMultimap.builder();
+        rules.put(ContextPattern.any(), rule);
+        RuleBasedBindingFunction fn = new RuleBasedBindingFunction(rules.build());
+
+        DesireChain chain = DesireChain.singleton(Desires.create(null, InterfaceA.class, false));
+        BindingResult result = fn.bind(DependencySolver.initialContext(), chain);
+        assertThat(result, notNullValue());
+        assertThat(result.getBindRule(), sameInstance(rule));
+        assertThat(fn.bind(DependencySolver.initialContext(), chain.withAppliedRule(rule)),
+                   nullValue());
+    }
+
+    @Test(expected=MultipleBindingsException.class)
+    public void testMultipleBindingsDetected() throws Exception {
+        ImmutableListMultimap.Builder<ContextMatcher, BindRule> rules = ImmutableListMultimap.builder();
+        rules.put(ContextPattern.any(), rule(InterfaceA.class, TypeA.class));
+        rules.put(ContextPattern.any(), rule(InterfaceB.class, TypeB.class));
+        rules.put(ContextPattern.any(), rule(InterfaceA.class, TypeB.class));
+        RuleBasedBindingFunction fn = new RuleBasedBindingFunction(rules.build());
+
+        bind(fn, Desires.create(null, InterfaceA.class, false));
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.synthetic;
+
+import com.google.common.base.Charsets;
+import com.google.common.io.Files;
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.graph.MergePool;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.DependencySolverBuilder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Reports how configuration, resolution, and merging scale with the size of a
+ * {@linkplain SyntheticConfiguration synthetic configuration}.  For each size it reports the time
+ * to build the binding functions, to resolve every root, and to merge the resolved graph into an
+ * empty pool, along with the heap retained by the solver.  Between consecutive sizes it reports the
+ * empirical growth exponent of each time; an exponent well above 1 indicates superlinear scaling.
+ *
+ * <p>Usage: {@code ScalingReport [--csv=FILE] [SIZE...]}.  The exit status is 1 if any stage
+ * scales superlinearly.</p>
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public class ScalingReport {
+    private static final int[] DEFAULT_SIZES = {500, 1000, 2000, 4000, 8000};
+    private static final int REPETITIONS = 3;
+    /**
+     * Growth exponent above which a stage is reported as superlinear.
+     */
+    private static final double MAX_EXPONENT = 1.5;
+    /**
+     * Times below this many milliseconds are too noisy to judge scaling.
+     */
+    private static final double MIN_TIME = 20;
+
+    private static class Row {
+        int size;
+        int nodes;
+        double rulesMs;
+        double solveMs;
+        double mergeMs;
+        double heapMB;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File csv = null;
+        List<Integer> sizes = new ArrayList<Integer>();
+        for (String arg: args) {
+            if (arg.startsWith("--csv=")) {
+                csv = new File(arg.substring("--csv=".length()));
+            } else {
+                sizes.add(Integer.parseInt(arg));
+            }
+        }
+        if (sizes.isEmpty()) {
+            for (int size: DEFAULT_SIZES) {
+                sizes.add(size);
+            }
+        }
+
+        // warm up the solver so the first size is not dominated by JIT compilation
+        measure(SyntheticConfiguration.generate(sizes.get(0), 1));
+
+        List<Row> rows = new ArrayList<Row>();
+        StringBuilder report = new StringBuilder();
+        report.append("size,nodes,rules_ms,solve_ms,merge_ms,heap_mb,rules_exp,solve_exp,merge_exp\n");
+        System.out.format("%8s %8s %10s %10s %10s %9s %6s %6s %6s%n",
+                          "size", "nodes", "rules ms", "solve ms", "merge ms", "heap MB",
+                          "r-exp", "s-exp", "m-exp");
+        boolean superlinear = false;
+        for (int size: sizes) {
+            Row row = measure(SyntheticConfiguration.generate(size, 42));
+            Row prev = rows.isEmpty() ? null : rows.get(rows.size() - 1);
+            rows.add(row);
+            double rexp = exponent(prev, row, prev == null ? 0 : prev.rulesMs, row.rulesMs);
+            double sexp = exponent(prev, row, prev == null ? 0 : prev.solveMs, row.solveMs);
+            double mexp = exponent(prev, row, prev == null ? 0 : prev.mergeMs, row.mergeMs);
+            boolean flagged = isSuperlinear(rexp, row.rulesMs)
+                              || isSuperlinear(sexp, row.solveMs)
+                              || isSuperlinear(mexp, row.mergeMs);
+            superlinear |= flagged;
+            System.out.format("%8d %8d %10.1f %10.1f %10.1f %9.1f %6.2f %6.2f %6.2f%s%n",
+                              row.size, row.nodes, row.rulesMs, row.solveMs, row.mergeMs, row.heapMB,
+                              rexp, sexp, mexp, flagged ? "  SUPERLINEAR" : "");
+            report.append(String.format("%d,%d,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f,%.3f\n",
+                                        row.size, row.nodes, row.rulesMs, row.solveMs, row.mergeMs,
+                                        row.heapMB, rexp, sexp, mexp));
+        }
+        if (csv != null) {
+            Files.write(report, csv, Charsets.UTF_8);
+        }
+        System.exit(superlinear ? 1 : 0);
+    }
+
+    private static double exponent(Row prev, Row row, double prevTime, double time) {
+        if (prev == null || prevTime <= 0 || time <= 0) {
+            return Double.NaN;
+        }
+        return Math.log(time / prevTime) / Math.log((double) row.size / prev.size);
+    }
+
+    private static boolean isSuperlinear(double exp, double time) {
+        return !Double.isNaN(exp) && exp > MAX_EXPONENT && time >= MIN_TIME;
+    }
+
+    private static Row measure(SyntheticConfiguration config) throws Exception {
+        Row row = new Row();
+        row.size = config.size();
+        row.rulesMs = Double.MAX_VALUE;
+        row.solveMs = Double.MAX_VALUE;
+        row.mergeMs = Double.MAX_VALUE;
+        for (int rep = 0; rep < REPETITIONS; rep++) {
+            long baseline = usedHeap();
+
+            long start = System.nanoTime();
+            DependencySolverBuilder bld = config.newSolverBuilder();
+            DependencySolver solver = bld.build();
+            long rulesDone = System.nanoTime();
+            for (Class<?> root: config.getRoots()) {
+                solver.resolve(Desires.create(null, root, false));
+            }
+            long solveDone = System.nanoTime();
+            DAGNode<Component, Dependency> graph = solver.getGraph();
+            MergePool<Component, Dependency> pool = MergePool.create();
+            pool.merge(graph);
+            long mergeDone = System.nanoTime();
+
+            row.rulesMs = Math.min(row.rulesMs, (rulesDone - start) / 1.0e6);
+            row.solveMs = Math.min(row.solveMs, (solveDone - rulesDone) / 1.0e6);
+            row.mergeMs = Math.min(row.mergeMs, (mergeDone - solveDone) / 1.0e6);
+            row.nodes = graph.getReachableNodes().size();
+            row.heapMB = (usedHeap() - baseline) / (1024.0 * 1024.0);
+            // keep the solver live through the heap measurement
+            if (solver.getGraph() != graph) {
+                throw new AssertionError("solver graph changed");
+            }
+        }
+        return row;
+    }
+
+    private static long usedHeap() {
+        Runtime rt = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return rt.totalMemory() - rt.freeMemory();
+    }
+}
@@ -0,0 +1,415 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.synthetic;
+
+import com.google.common.base.Charsets;
+import com.google.common.collect.ImmutableList;
+import com.google.common.io.Files;
+import org.grouplens.grapht.BindingFunctionBuilder;
+import org.grouplens.grapht.Context;
+import org.grouplens.grapht.Module;
+import org.grouplens.grapht.solver.BindingFunction;
+import org.grouplens.grapht.solver.DefaultDesireBindingFunction;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.DependencySolverBuilder;
+
+import javax.inject.Provider;
+import javax.tools.JavaCompiler;
+import javax.tools.StandardJavaFileManager;
+import javax.tools.ToolProvider;
+import java.io.File;
+import java.io.IOException;
+import java.lang.annotation.Annotation;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+
+/**
+ * A large synthetic configuration, with its classes generated and compiled at run time.  This is
+ * used to test how the solver and binding functions scale with configuration size.
+ *
+ * <p>Each component has an interface {@code I<i>} and an implementation {@code C<i>}.  Components
+ * are arranged in layers, and each implementation depends on a few interfaces from the layer below
+ * it, some of them qualified.  Each interface is bound in one of several ways:</p>
+ * <ul>
+ *     <li>with a {@link org.grouplens.grapht.annotation.DefaultImplementation} annotation;</li>
+ *     <li>with an explicit bind rule;</li>
+ *     <li>to a provider class {@code P<i>};</li>
+ *     <li>explicitly, but to an alternate implementation {@code A<i>} within the context of a
+ *     component in the layer above (using {@code within} or {@code at}).</li>
+ * </ul>
+ * <p>The interfaces of the top layer are the roots of the configuration.</p>
+ *
+ * @author <a href="http://grouplens.org">GroupLens Research</a>
+ */
+public final class SyntheticConfiguration implements Module {
+    private static final String PACKAGE = "grapht.synthetic";
+    private static final int LAYERS = 6;
+    private static final int FAN_OUT = 2;
+    private static final int QUALIFIERS = 8;
+
+    enum Kind {
+        DEFAULT, EXPLICIT, PROVIDER, WITHIN, AT
+    }
+
+    /**
+     * A qualified dependency, which gets its own bind rule.
+     */
+    private static class QualifiedDep {
+        final int component;
+        final int qualifier;
+
+        QualifiedDep(int component, int qualifier) {
+            this.component = component;
+            this.qualifier = qualifier;
+        }
+    }
+
+    private final int size;
+    private final ClassLoader classLoader;
+    /**
+     * The generated classes, by simple name.  They are all loaded up front, so the generated
+     * files can be deleted.
+     */
+    private final Map<String, Class<?>> classes;
+    private final Kind[] kinds;
+    /**
+     * For context bindings, the component in whose context the alternate is used, or -1 if no
+     * component depends on the interface.
+     */
+    private final int[] contexts;
+    private final List<QualifiedDep> qualifiedDeps;
+    private final List<Class<?>> roots;
+
+    private SyntheticConfiguration(int size, ClassLoader loader, Map<String, Class<?>> classes,
+                                   Kind[] kinds, int[] contexts,
+                                   List<QualifiedDep> qdeps, List<Class<?>> roots) {
+        this.size = size;
+        classLoader = loader;
+        this.classes = classes;
+        this.kinds = kinds;
+        this.contexts = contexts;
+        qualifiedDeps = qdeps;
+        this.roots = roots;
+    }
+
+    /**
+     * Generate and compile a synthetic configuration.  The sources and class files are written to
+     * a temporary directory, which is deleted once the generated classes are loaded.
+     *
+     * @param size The number of components.
+     * @param seed The random seed.
+     * @return The configuration.
+     * @throws IOException if there is an error writing or compiling the generated sources.
+     */
+    public static SyntheticConfiguration generate(int size, long seed) throws IOException {
+        if (size < LAYERS) {
+            throw new IllegalArgumentException("need at least " + LAYERS + " components");
+        }
+        File dir = Files.createTempDir();
+        try {
+            return generate(size, seed, dir);
+        } finally {
+            deleteRecursively(dir);
+        }
+    }
+
+    private static SyntheticConfiguration generate(int size, long seed, File dir) throws IOException {
+        Random rng = new Random(seed);
+        File classDir = new File(dir, "classes");
+        File pkgDir = new File(new File(dir, "src"), PACKAGE.replace('.', File.separatorChar));
+        if (!pkgDir.mkdirs() || !classDir.mkdirs()) {
+            throw new IOException("cannot create " + dir);
+        }
+        List<File> sources = new ArrayList<File>();
+
+        for (int q = 0; q < QUALIFIERS; q++) {
+            String src = "package " + PACKAGE + ";\n"
+                         + "@javax.inject.Qualifier\n"
+                         + "@java.lang.annotation.Retention(java.lang.annotation.RetentionPolicy.RUNTIME)\n"
+                         + "public @interface Q" + q + " {}\n";
+            sources.add(write(pkgDir, "Q" + q, src));
+        }
+
+        int layerSize = size / LAYERS;
+        Kind[] kinds = new Kind[size];
+        int[] contexts = new int[size];
+        List<QualifiedDep> qdeps = new ArrayList<QualifiedDep>();
+        Set<Integer> qualified = new HashSet<Integer>();
+        List<String> rootNames = new ArrayList<String>();
+        for (int i = 0; i < size; i++) {
+            int layer = Math.min(i / layerSize, LAYERS - 1);
+            kinds[i] = pickKind(rng, layer);
+            contexts[i] = -1;
+
+            // pick dependencies from the layer below
+            List<String> params = new ArrayList<String>();
+            List<String> args = new ArrayList<String>();
+            if (layer > 0) {
+                for (int j = 0; j < FAN_OUT; j++) {
+                    int dep = (layer - 1) * layerSize + rng.nextInt(layerSize);
+                    if ((kinds[dep] == Kind.WITHIN || kinds[dep] == Kind.AT) && contexts[dep] < 0) {
+                        // use the alternate implementation of the dependency below this component
+                        contexts[dep] = i;
+                    }
+                    String qual = "";
+                    if (rng.nextInt(5) == 0) {
+                        int q = rng.nextInt(QUALIFIERS);
+                        if (qualified.add(dep * QUALIFIERS + q)) {
+                            qdeps.add(new QualifiedDep(dep, q));
+                        }
+                        qual = "@Q" + q + " ";
+                    }
+                    params.add(qual + "I" + dep + " d" + j);
+                    args.add("d" + j);
+                }
+            }
+            String paramList = join(params);
+            String argList = join(args);
+
+            StringBuilder iface = new StringBuilder();
+            iface.append("package ").append(PACKAGE).append(";\n");
+            if (kinds[i] == Kind.DEFAULT) {
+                iface.append("@org.grouplens.grapht.annotation.DefaultImplementation(C")
+                     .append(i).append(".class)\n");
+            }
+            iface.append("public interface I").append(i).append(" {}\n");
+            sources.add(write(pkgDir, "I" + i, iface.toString()));
+
+            sources.add(write(pkgDir, "C" + i,
+                              "package " + PACKAGE + ";\n"
+                              + "public class C" + i + " implements I" + i + " {\n"
+                              + "  @javax.inject.Inject public C" + i + "(" + paramList + ") {}\n"
+                              + "}\n"));
+            if (kinds[i] == Kind.PROVIDER) {
+                sources.add(write(pkgDir, "P" + i,
+                                  "package " + PACKAGE + ";\n"
+                                  + "public class P" + i + " implements javax.inject.Provider<I" + i + "> {\n"
+                                  + "  private final C" + i + " instance;\n"
+                                  + "  @javax.inject.Inject public P" + i + "(" + paramList + ") {\n"
+                                  + "    instance = new C" + i + "(" + argList + ");\n"
+                                  + "  }\n"
+                                  + "  public I" + i + " get() { return instance; }\n"
+                                  + "}\n"));
+            } else if (kinds[i] == Kind.WITHIN || kinds[i] == Kind.AT) {
+                sources.add(write(pkgDir, "A" + i,
+                                  "package " + PACKAGE + ";\n"
+                                  + "public class A" + i + " implements I" + i + " {}\n"));
+            }
+            if (layer == LAYERS - 1) {
+                rootNames.add("I" + i);
+            }
+        }
+
+        compile(sources, classDir);
+
+        URLClassLoader loader = new URLClassLoader(new URL[]{classDir.toURI().toURL()},
+                                                   SyntheticConfiguration.class.getClassLoader());
+        Map<String, Class<?>> classes = new HashMap<String, Class<?>>();
+        try {
+            for (File src: sources) {
+                String name = src.getName().replaceFirst("\\.java$", "");
+                classes.put(name, load(loader, PACKAGE + "." + name));
+            }
+        } finally {
+            // the classes are loaded; the loader no longer needs its files
+            loader.close();
+        }
+        ImmutableList.Builder<Class<?>> roots = ImmutableList.builder();
+        for (String name: rootNames) {
+            roots.add(classes.get(name));
+        }
+        return new SyntheticConfiguration(size, loader, classes, kinds, contexts, qdeps, roots.build());
+    }
+
+    private static Kind pickKind(Random rng, int layer) {
+        int r = rng.nextInt(20);
+        if (r < 7) {
+            return Kind.DEFAULT;
+        } else if (r < 14) {
+            return Kind.EXPLICIT;
+        } else if (r < 17) {
+            return Kind.PROVIDER;
+        } else if (layer == LAYERS - 1) {
+            // nothing above the top layer to provide a context
+            return Kind.EXPLICIT;
+        } else if (r < 19) {
+            return Kind.WITHIN;
+        } else {
+            return Kind.AT;
+        }
+    }
+
+    private static String join(List<String> parts) {
+        StringBuilder sb = new StringBuilder();
+        for (String part: parts) {
+            if (sb.length() > 0) {
+                sb.append(", ");
+            }
+            sb.append(part);
+        }
+        return sb.toString();
+    }
+
+    private static File write(File dir, String name, String source) throws IOException {
+        File file = new File(dir, name + ".java");
+        Files.write(source, file, Charsets.UTF_8);
+        return file;
+    }
+
+    private static void compile(List<File> sources, File classDir) throws IOException {
+        JavaCompiler compiler = ToolProvider.getSystemJavaCompiler();
+        if (compiler == null) {
+            throw new IOException("no Java compiler available");
+        }
+        StandardJavaFileManager files = compiler.getStandardFileManager(null, null, Charsets.UTF_8);
+        try {
+            List<String> options = Arrays.asList("-classpath", System.getProperty("java.class.path"),
+                                                 "-d", classDir.getAbsolutePath(),
+                                                 "-proc:none", "-nowarn");
+            if (!compiler.getTask(null, files, null, options, null,
+                                  files.getJavaFileObjectsFromFiles(sources)).call()) {
+                throw new IOException("compilation of synthetic configuration failed");
+            }
+        } finally {
+            files.close();
+        }
+    }
+
+    private static Class<?> load(ClassLoader loader, String name) {
+        try {
+            return loader.loadClass(name);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalStateException("cannot load generated class " + name, e);
+        }
+    }
+
+    private static void deleteRecursively(File file) throws IOException {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File child: children) {
+                deleteRecursively(child);
+            }
+        }
+        if (file.exists() && !file.delete()) {
+            throw new IOException("cannot delete " + file);
+        }
+    }
+
+    private Class<?> generated(String name) {
+        Class<?> cls = classes.get(name);
+        if (cls == null) {
+            throw new IllegalStateException("no generated class " + name);
+        }
+        return cls;
+    }
+
+    /**
+     * Add this configuration's bind rules to a context.
+     *
+     * @param ctx The context to configure.
+     */
+    @Override
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public void configure(Context ctx) {
+        for (int i = 0; i < size; i++) {
+            Class iface = generated("I" + i);
+            switch (kinds[i]) {
+            case DEFAULT:
+                break;
+            case EXPLICIT:
+                ctx.bind(iface).to(generated("C" + i));
+                break;
+            case PROVIDER:
+                ctx.bind(iface).toProvider((Class<? extends Provider>) generated("P" + i));
+                break;
+            case WITHIN:
+                ctx.bind(iface).to(generated("C" + i));
+                if (contexts[i] >= 0) {
+                    ctx.within(generated("C" + contexts[i])).bind(iface).to(generated("A" + i));
+                }
+                break;
+            case AT:
+                ctx.bind(iface).to(generated("C" + i));
+                if (contexts[i] >= 0) {
+                    ctx.at(generated("C" + contexts[i])).bind(iface).to(generated("A" + i));
+                }
+                break;
+            default:
+                throw new IllegalStateException("unknown kind " + kinds[i]);
+            }
+        }
+        for (QualifiedDep dep: qualifiedDeps) {
+            Class iface = generated("I" + dep.component);
+            Class<? extends Annotation> qual = (Class<? extends Annotation>) generated("Q" + dep.qualifier);
+            ctx.bind(iface).withQualifier(qual).to(generated("C" + dep.component));
+        }
+    }
+
+    /**
+     * Create a dependency solver for this configuration, with binding functions set up as they are
+     * by {@link org.grouplens.grapht.InjectorBuilder}.
+     *
+     * @return A solver builder with this configuration's binding functions.
+     */
+    public DependencySolverBuilder newSolverBuilder() {
+        BindingFunctionBuilder bld = new BindingFunctionBuilder(true);
+        configure(bld.getRootContext());
+        BindingFunction[] functions = {
+                bld.build(BindingFunctionBuilder.RuleSet.EXPLICIT),
+                bld.build(BindingFunctionBuilder.RuleSet.INTERMEDIATE_TYPES),
+                bld.build(BindingFunctionBuilder.RuleSet.SUPER_TYPES)
+        };
+        return DependencySolver.newBuilder()
+                               .addBindingFunctions(functions)
+                               .addBindingFunction(DefaultDesireBindingFunction.create(classLoader), false);
+    }
+
+    /**
+     * Get the number of components in the configuration.
+     * @return The number of components.
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Get the class loader for the generated classes.
+     * @return The class loader.
+     */
+    public ClassLoader getClassLoader() {
+        return classLoader;
+    }
+
+    /**
+     * Get the root interfaces of the configuration.
+     * @return The interfaces that no component depends on.
+     */
+    public List<Class<?>> getRoots() {
+        return roots;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.synthetic;
+
+import org.grouplens.grapht.Component;
+import org.grouplens.grapht.Dependency;
+import org.grouplens.grapht.Injector;
+import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.graph.DAGEdge;
+import org.grouplens.grapht.graph.DAGNode;
+import org.grouplens.grapht.reflect.Desires;
+import org.grouplens.grapht.solver.DependencySolver;
+import org.grouplens.grapht.solver.GraphCodec;
+import org.grouplens.grapht.util.ClassLoaderContext;
+import org.grouplens.grapht.util.ClassLoaders;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectOutputStream;
+import java.util.*;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class SyntheticConfigurationTest {
+    private static SyntheticConfiguration config;
+
+    @BeforeClass
+    public static void generate() throws Exception {
+        config = SyntheticConfiguration.generate(60, 42);
+    }
+
+    @Test
+    public void testRoots() {
+        assertThat(config.size(), equalTo(60));
+        assertThat(config.getRoots(), hasSize(10));
+        for (Class<?> root: config.getRoots()) {
+            assertThat(root.isInterface(), equalTo(true));
+        }
+    }
+
+    @Test
+    public void testResolve() throws Exception {
+        DependencySolver solver = config.newSolverBuilder().build();
+        for (Class<?> root: config.getRoots()) {
+            solver.resolve(Desires.create(null, root, false));
+        }
+        DAGNode<Component, Dependency> graph = solver.getGraph();
+        assertThat(graph.getAdjacentNodes(), hasSize(10));
+        // the graph uses each kind of binding
+        Set<Character> prefixes = new HashSet<Character>();
+        for (DAGNode<Component, Dependency> node: graph.getReachableNodes()) {
+            Class<?> type = node.getLabel().getSatisfaction().getErasedType();
+            if (type.getName().startsWith("grapht.synthetic.")) {
+                prefixes.add(type.getSimpleName().charAt(0));
+            }
+        }
+        // provider satisfactions have the interface as their type
+        assertThat(prefixes, containsInAnyOrder('A', 'C', 'I'));
+    }
+
+    @Test
+    public void testParallelResolve() throws Exception {
+        DependencySolver sequential = config.newSolverBuilder().build();
+        DependencySolver parallel = config.newSolverBuilder().setParallelism(4).build();
+        try {
+            for (Class<?> root: config.getRoots()) {
+                sequential.resolve(Desires.create(null, root, false));
+                parallel.resolve(Desires.create(null, root, false));
+            }
+        } finally {
+            parallel.close();
+        }
+        assertThat(describe(parallel.getGraph()),
+                   equalTo(describe(sequential.getGraph())));
+    }
+
+    @Test
+    public void testGraphCodec() throws Exception {
+        DependencySolver solver = config.newSolverBuilder().build();
+        for (Class<?> root: config.getRoots()) {
+            solver.resolve(Desires.create(null, root, false));
+        }
+        ByteArrayOutputStream coded = new ByteArrayOutputStream();
+        GraphCodec.write(solver.getGraph(), solver.getBackEdges(), coded);
+        ByteArrayOutputStream serialized = new ByteArrayOutputStream();
+        ObjectOutputStream out = new ObjectOutputStream(serialized);
+        out.writeObject(solver.getGraph());
+        out.close();
+        assertThat(coded.size() * 3, lessThan(serialized.size()));
+
+        // the synthetic classes are only visible to the configuration's class loader
+        ClassLoaderContext ctx = ClassLoaders.pushContext(config.getClassLoader());
+        try {
+            DAGNode<Component, Dependency> read =
+                    GraphCodec.read(new ByteArrayInputStream(coded.toByteArray())).getLeft();
+            assertThat(describe(read), equalTo(describe(solver.getGraph())));
+        } finally {
+            ctx.pop();
+        }
+    }
+
+    /**
+     * Describe a graph by the labels of its nodes and their outgoing edges.
+     */
+    private static List<String> describe(DAGNode<Component, Dependency> graph) {
+        List<String> nodes = new ArrayList<String>();
+        for (DAGNode<Component, Dependency> node: graph.getReachableNodes()) {
+            List<String> edges = new ArrayList<String>();
+            for (DAGEdge<Component, Dependency> edge: node.getOutgoingEdges()) {
+                edges.add(edge.getLabel().getInitialDesire() + " -> " + edge.getTail().getLabel());
+            }
+            Collections.sort(edges);
+            nodes.add(node.getLabel() + ": " + edges);
+        }
+        Collections.sort(nodes);
+        return nodes;
+    }
+
+    @Test
+    public void testInstantiate() throws Exception {
+        InjectorBuilder bld = InjectorBuilder.create(config.getClassLoader(), config);
+        Injector inj = bld.build();
+        for (Class<?> root: config.getRoots()) {
+            assertThat(inj.getInstance(root), instanceOf(root));
+        }
+    }
+}
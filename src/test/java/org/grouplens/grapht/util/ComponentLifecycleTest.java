@@ -22,12 +22,16 @@ package org.grouplens.grapht.util;
 import org.grouplens.grapht.InjectionException;
 import org.grouplens.grapht.Injector;
 import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.solver.DefaultInjector;
 import org.junit.Ignore;
 import org.junit.Test;
 
 import javax.annotation.PostConstruct;
 import javax.annotation.PreDestroy;
 import javax.inject.Inject;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import static org.hamcrest.Matchers.*;
 import static org.junit.Assert.*;
@@ -148,6 +152,27 @@ public class ComponentLifecycleTest {
         assertTrue("close was called", setup.isSet());
     }
 
+    /**
+     * Test that components are torn down before their dependencies.
+     */
+    @Test
+    public void testTearDownInReverseDependencyOrder() throws Exception {
+        InjectorBuilder bld = InjectorBuilder.create();
+        bld.setShutdownThreads(4);
+        TeardownLog log = new TeardownLog();
+        bld.bind(TeardownLog.class).to(log);
+        Injector injector = bld.build();
+        try {
+            assertThat(injector.getInstance(TopComponent.class), notNullValue());
+        } finally {
+            injector.close();
+        }
+        assertThat(log.closed, hasSize(3));
+        assertThat(log.closed.get(0), equalTo((Object) TopComponent.class));
+        assertThat(log.closed.get(2), equalTo((Object) CloseableLeaf.class));
+        assertThat(((DefaultInjector) injector).getTeardownTimes(), hasSize(3));
+    }
+
     /**
      * Flag component for detecting closure.
      */
@@ -197,6 +222,55 @@ public class ComponentLifecycleTest {
         }
     }
 
+    /**
+     * Records the order in which components are closed.
+     */
+    public static class TeardownLog {
+        final List<Class<?>> closed = Collections.synchronizedList(new ArrayList<Class<?>>());
+    }
+
+    public static class CloseableLeaf implements AutoCloseable {
+        private final TeardownLog log;
+
+        @Inject
+        public CloseableLeaf(TeardownLog log) {
+            this.log = log;
+        }
+
+        @Override
+        public void close() {
+            log.closed.add(getClass());
+        }
+    }
+
+    public static class MiddleComponent {
+        private final TeardownLog log;
+
+        @Inject
+        public MiddleComponent(TeardownLog log, CloseableLeaf leaf) {
+            this.log = log;
+        }
+
+        @PreDestroy
+        public void shutdown() {
+            log.closed.add(getClass());
+        }
+    }
+
+    public static class TopComponent implements AutoCloseable {
+        private final TeardownLog log;
+
+        @Inject
+        public TopComponent(TeardownLog log, MiddleComponent middle, CloseableLeaf leaf) {
+            this.log = log;
+        }
+
+        @Override
+        public void close() {
+            log.closed.add(getClass());
+        }
+    }
+
     /**
      * component with post-construct methods
      */
@@ -0,0 +1,101 @@
+/*
+ * Grapht, an open source dependency injector.
+ * Copyright 2014-2015 various contributors (see CONTRIBUTORS.txt)
+ * Copyright 2010-2014 Regents of the University of Minnesota
+ *
+ * This program is free software; you can redistribute it and/or modify
+ * it under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of the
+ * License, or (at your option) any later version.
+ *
+ * This program is distributed in the hope that it will be useful, but WITHOUT
+ * ANY WARRANTY; without even the implied warranty of MERCHANTABILITY or FITNESS
+ * FOR A PARTICULAR PURPOSE. See the GNU General Public License for more
+ * details.
+ *
+ * You should have received a copy of the GNU General Public License along with
+ * this program; if not, write to the Free Software Foundation, Inc., 51
+ * Franklin Street, Fifth Floor, Boston, MA 02110-1301, USA.
+ */
+package org.grouplens.grapht.util;
+
+import org.grouplens.grapht.Injector;
+import org.grouplens.grapht.InjectorBuilder;
+import org.grouplens.grapht.InstantiatorBackend;
+import org.junit.After;
+import org.junit.Test;
+import org.slf4j.MDC;
+
+import javax.inject.Inject;
+
+import static org.hamcrest.Matchers.*;
+import static org.junit.Assert.assertThat;
+
+public class LogContextTest {
+    private static final String CLASS_KEY = "org.grouplens.grapht.class";
+
+    @After
+    public void reset() {
+        LogContext.setEnabled(false);
+        MDC.clear();
+    }
+
+    @Test
+    public void testPushPop() {
+        String saved = LogContext.push("key", "outer");
+        assertThat(saved, nullValue());
+        String inner = LogContext.push("key", "inner");
+        assertThat(inner, equalTo("outer"));
+        assertThat(MDC.get("key"), equalTo("inner"));
+        LogContext.pop("key", inner);
+        assertThat(MDC.get("key"), equalTo("outer"));
+        LogContext.pop("key", saved);
+        assertThat(MDC.get("key"), nullValue());
+    }
+
+    @Test
+    public void testDisabledByDefault() throws Exception {
+        Injector inj = InjectorBuilder.create().build();
+        Outer outer = inj.getInstance(Outer.class);
+        assertThat(outer.className, nullValue());
+        assertThat(outer.inner.className, nullValue());
+    }
+
+    @Test
+    public void testEnabled() throws Exception {
+        checkEnabled(InstantiatorBackend.REFLECTION);
+    }
+
+    @Test
+    public void testEnabledMethodHandles() throws Exception {
+        checkEnabled(InstantiatorBackend.METHOD_HANDLE);
+    }
+
+    private void checkEnabled(InstantiatorBackend backend) throws Exception {
+        LogContext.setEnabled(true);
+        MDC.put(CLASS_KEY, "caller");
+        Injector inj = InjectorBuilder.create().setInstantiatorBackend(backend).build();
+        Outer outer = inj.getInstance(Outer.class);
+        assertThat(outer.className, equalTo(Outer.class.getName()));
+        assertThat(outer.inner.className, equalTo(Inner.class.getName()));
+        assertThat(outer.inner.injectionPoint, containsString("Outer"));
+        // the caller's context is restored
+        assertThat(MDC.get(CLASS_KEY), equalTo("caller"));
+        assertThat(MDC.get("org.grouplens.grapht.injectionPoint"), nullValue());
+    }
+
+    public static class Inner {
+        final String className = MDC.get(CLASS_KEY);
+        final String injectionPoint = MDC.get("org.grouplens.grapht.injectionPoint");
+    }
+
+    public static class Outer {
+        final String className = MDC.get(CLASS_KEY);
+        final Inner inner;
+
+        @Inject
+        public Outer(Inner in) {
+            inner = in;
+        }
+    }
+}